@@ -0,0 +1,27 @@
+#!/bin/sh
+# Compiles and runs the ACRA crash handling benchmark on a plain JVM. ACRA is
+# compiled against the Android SDK, and the classes of benchmarks/stubs are put
+# before it on the class path in place of the framework classes it runs. The
+# SDK and org.json jars are given by the environment:
+#   ANDROID_JAR  default $ANDROID_HOME/platforms/android-19/android.jar
+#   JSON_JAR     org.json implementation, required as the SDK only has stubs
+#   EXTRA_JARS   other jars, such as Apache HttpClient if the SDK has not it
+#   MAIN_CLASS   class to run, org.acra.CrashHandlingBenchmark by default, or
+#                org.acra.BatchSendingCheck to check the batch sending
+# The arguments are passed to the class, for example:
+#   JSON_JAR=json.jar benchmarks/run-crash.sh -i 20 -l 100,5000
+set -e
+cd "$(dirname "$0")/.."
+android=${ANDROID_JAR:-$ANDROID_HOME/platforms/android-19/android.jar}
+json=${JSON_JAR:?JSON_JAR must be set to an org.json jar}
+android=$android${EXTRA_JARS:+:$EXTRA_JARS}
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+mkdir "$out/acra" "$out/stubs" "$out/bench"
+javac -nowarn -encoding UTF-8 -d "$out/acra" -cp "$android:$json" \
+    $(find externals/acra/src -name '*.java')
+javac -nowarn -encoding UTF-8 -d "$out/stubs" -cp "$android:$json" \
+    $(find benchmarks/stubs -name '*.java')
+javac -nowarn -encoding UTF-8 -d "$out/bench" -cp "$out/stubs:$out/acra:$android:$json" \
+    $(find benchmarks/src/org -name '*.java')
+java -cp "$out/stubs:$out/bench:$out/acra:$json:$android" ${MAIN_CLASS:-org.acra.CrashHandlingBenchmark} "$@"
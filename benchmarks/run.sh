@@ -0,0 +1,13 @@
+#!/bin/sh
+# Compiles and runs the logger benchmarks on a plain JVM, with a stand-in for
+# android.util.Log. The arguments are passed to BenchmarkRunner, for example:
+#   benchmarks/run.sh -t 1,4 -i 10 logger
+set -e
+cd "$(dirname "$0")/.."
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+# Only the classes used by the benchmarks are compiled from the source path.
+javac -nowarn -encoding UTF-8 -d "$out" \
+    -sourcepath benchmarks/stubs:src:externals/acra/src \
+    $(find benchmarks/src/com -name '*.java')
+java -cp "$out" com.util.log.bench.BenchmarkRunner "$@"
@@ -0,0 +1,41 @@
+package com.util.log.bench;
+
+/**
+ * A measured operation. The runner calls {@link #setUp()} once, then
+ * {@link #op()} repeatedly from one or more threads, then {@link #tearDown()}.
+ */
+abstract class Benchmark {
+
+    private final String name;
+    private final boolean threaded;
+
+    /**
+     * @param name Name of the benchmark, with its parameters.
+     * @param threaded True if the operation is run with each thread count,
+     *            false if it is only run by a single thread.
+     */
+    Benchmark(String name, boolean threaded) {
+        this.name = name;
+        this.threaded = threaded;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isThreaded() {
+        return threaded;
+    }
+
+    void setUp() throws Exception {
+    }
+
+    /**
+     * The measured operation. It may be called by several threads at once if
+     * the benchmark is threaded.
+     */
+    abstract void op() throws Exception;
+
+    void tearDown() throws Exception {
+    }
+}
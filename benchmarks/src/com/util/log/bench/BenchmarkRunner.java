@@ -0,0 +1,275 @@
+package com.util.log.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the logger benchmarks on a plain JVM and prints, for each benchmark
+ * and thread count, the throughput, the time per operation, the allocation
+ * rate and the garbage collections of the measured iterations.
+ * <p>
+ * Usage (see benchmarks/run.sh):
+ * </p>
+ * 
+ * <pre>
+ * BenchmarkRunner [-t 1,2,4] [-wi 3] [-i 5] [-r 1000] [regex]
+ * </pre>
+ * <ul>
+ * <li>-t: thread counts of the threaded benchmarks, 1 up to the number of
+ * processors by default.</li>
+ * <li>-wi: warmup iterations, not reported.</li>
+ * <li>-i: measured iterations.</li>
+ * <li>-r: duration of an iteration, in milliseconds.</li>
+ * <li>regex: only the benchmarks whose name contains a match are run.</li>
+ * </ul>
+ * The allocated bytes are read from the HotSpot thread MXBean, they are only
+ * reported when the JVM supports it.
+ */
+public final class BenchmarkRunner {
+
+    private int[] threadCounts = defaultThreadCounts();
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationMillis = 1000;
+    private Pattern filter;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final boolean allocationSupported;
+
+    private BenchmarkRunner() {
+        boolean supported = false;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                supported = bean.isThreadAllocatedMemoryEnabled();
+            }
+        }
+        allocationSupported = supported;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("-t".equals(arg)) {
+                final String[] counts = args[++i].split(",");
+                runner.threadCounts = new int[counts.length];
+                for (int j = 0; j < counts.length; j++) {
+                    runner.threadCounts[j] = Integer.parseInt(counts[j].trim());
+                }
+            } else if ("-wi".equals(arg)) {
+                runner.warmupIterations = Integer.parseInt(args[++i]);
+            } else if ("-i".equals(arg)) {
+                runner.iterations = Integer.parseInt(args[++i]);
+            } else if ("-r".equals(arg)) {
+                runner.iterationMillis = Long.parseLong(args[++i]);
+            } else {
+                runner.filter = Pattern.compile(arg);
+            }
+        }
+        runner.run(LoggerBenchmarks.all());
+    }
+
+    private static int[] defaultThreadCounts() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final Vector counts = new Vector();
+        for (int count = 1; count < processors; count *= 2) {
+            counts.addElement(Integer.valueOf(count));
+        }
+        counts.addElement(Integer.valueOf(processors));
+        final int[] result = new int[counts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((Integer) counts.elementAt(i)).intValue();
+        }
+        return result;
+    }
+
+    private void run(List<Benchmark> benchmarks) throws Exception {
+        System.out.println(String.format(Locale.US, "%-40s %7s %14s %12s %10s %10s %6s %8s", "Benchmark",
+                "Threads", "ops/s", "ns/op", "B/op", "MB/s", "GCs", "GC ms"));
+        for (Benchmark benchmark : benchmarks) {
+            if (filter != null && !filter.matcher(benchmark.getName()).find()) {
+                continue;
+            }
+            if (benchmark.isThreaded()) {
+                for (int threads : threadCounts) {
+                    run(benchmark, threads);
+                }
+            } else {
+                run(benchmark, 1);
+            }
+        }
+    }
+
+    private void run(Benchmark benchmark, int threads) throws Exception {
+        benchmark.setUp();
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(benchmark, threads);
+            }
+            final Result total = new Result();
+            final double[] throughputs = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                final Result result = iteration(benchmark, threads);
+                throughputs[i] = result.throughput;
+                total.add(result);
+            }
+            print(benchmark, threads, total, throughputs);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private Result iteration(final Benchmark benchmark, int threads) throws Exception {
+        final Result result = new Result();
+        final Worker[] workers = new Worker[threads];
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(benchmark, start);
+            workers[i].start();
+        }
+
+        final long gcCount = gcCount();
+        final long gcTime = gcTime();
+        start.countDown();
+        Thread.sleep(iterationMillis);
+        for (int i = 0; i < threads; i++) {
+            workers[i].stop = true;
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            if (workers[i].failure != null) {
+                throw new Exception("Benchmark " + benchmark.getName() + " failed", workers[i].failure);
+            }
+            result.ops += workers[i].ops;
+            result.nanos += workers[i].nanos;
+            result.allocatedBytes += workers[i].allocatedBytes;
+            result.throughput += workers[i].ops * 1e9 / Math.max(1, workers[i].nanos);
+        }
+        result.gcCount = gcCount() - gcCount;
+        result.gcTime = gcTime() - gcTime;
+        return result;
+    }
+
+    private void print(Benchmark benchmark, int threads, Result total, double[] throughputs) {
+        double mean = 0;
+        for (double throughput : throughputs) {
+            mean += throughput;
+        }
+        mean /= throughputs.length;
+        double variance = 0;
+        for (double throughput : throughputs) {
+            variance += (throughput - mean) * (throughput - mean);
+        }
+        final double deviation = throughputs.length > 1 ? Math.sqrt(variance / (throughputs.length - 1)) : 0;
+
+        final String opsPerSecond = String.format(Locale.US, "%.0f+-%.0f", mean, deviation);
+        final double nanosPerOp = (double) total.nanos / Math.max(1, total.ops);
+        final String bytesPerOp;
+        final String allocationRate;
+        if (allocationSupported) {
+            bytesPerOp = String.format(Locale.US, "%.1f", (double) total.allocatedBytes / Math.max(1, total.ops));
+            // The threads allocate concurrently, the rate is per wall clock
+            // second.
+            allocationRate = String.format(Locale.US, "%.1f", total.allocatedBytes * 1e9 * threads
+                    / Math.max(1, total.nanos) / (1024 * 1024));
+        } else {
+            bytesPerOp = "n/a";
+            allocationRate = "n/a";
+        }
+        System.out.println(String.format(Locale.US, "%-40s %7d %14s %12.1f %10s %10s %6d %8d", benchmark.getName(),
+                threads, opsPerSecond, nanosPerOp, bytesPerOp, allocationRate, total.gcCount, total.gcTime));
+    }
+
+    private long allocatedBytes() {
+        if (!allocationSupported) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread()
+                .getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Calls the operation until stopped, and measures its own time and
+     * allocations.
+     */
+    private final class Worker extends Thread {
+
+        private final Benchmark benchmark;
+        private final CountDownLatch start;
+        volatile boolean stop;
+        long ops;
+        long nanos;
+        long allocatedBytes;
+        Throwable failure;
+
+        Worker(Benchmark benchmark, CountDownLatch start) {
+            super("Benchmark-" + benchmark.getName());
+            this.benchmark = benchmark;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                final long allocatedBefore = allocatedBytes();
+                final long startTime = System.nanoTime();
+                long count = 0;
+                while (!stop) {
+                    benchmark.op();
+                    count++;
+                }
+                nanos = System.nanoTime() - startTime;
+                allocatedBytes = allocatedBytes() - allocatedBefore;
+                ops = count;
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    /**
+     * Measures of an iteration, or of all the measured iterations.
+     */
+    private static final class Result {
+        long ops;
+        long nanos;
+        long allocatedBytes;
+        double throughput;
+        long gcCount;
+        long gcTime;
+
+        void add(Result result) {
+            ops += result.ops;
+            nanos += result.nanos;
+            allocatedBytes += result.allocatedBytes;
+            throughput += result.throughput;
+            gcCount += result.gcCount;
+            gcTime += result.gcTime;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.util.log.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.util.log.FileAppender;
+import com.util.log.LogContent;
+import com.util.log.Logger;
+import com.util.log.MultipleAppender;
+
+/**
+ * The benchmarks of the logging pipeline.
+ * <ul>
+ * <li>logger.*: cost of a Logger call, at a disabled and an enabled level,
+ * with an appender doing no I/O, run with each thread count.</li>
+ * <li>fileAppender.*: FileAppender write throughput, with a maximum size that
+ * is never reached and with one that makes it rotate every few hundred
+ * messages.</li>
+ * <li>multipleAppender.fanOut.*: MultipleAppender write cost against the
+ * number of appenders.</li>
+ * <li>context.*: context logging, the caching of the messages below the level
+ * and the dump of the cache on an error (dumpAndFlushCache).</li>
+ * <li>flightRecorder.record.*: the recording of the messages below the level
+ * in the off-heap ring of the flight recorder, against its capacity.</li>
+ * <li>logContent.*: FileAppender.getLogContent() merge time against the size
+ * of the log, to memory and to a file.</li>
+ * </ul>
+ * The Logger is static, so the benchmarks initialize it in their setUp.
+ */
+final class LoggerBenchmarks {
+
+    private static final String TAG = "Bench";
+    private static final String MESSAGE = "Synchronization of 42 items completed in 1234 ms";
+
+    private LoggerBenchmarks() {
+    }
+
+    static List<Benchmark> all() {
+        final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new LoggerCall("logger.disabled", Logger.DISABLED));
+        benchmarks.add(new LoggerCall("logger.belowLevel", Logger.INFO));
+        benchmarks.add(new LoggerCall("logger.enabled", Logger.DEBUG));
+
+        benchmarks.add(new FileAppenderWrite("fileAppender.noRotation", 0));
+        benchmarks.add(new FileAppenderWrite("fileAppender.rotation", 64 * 1024));
+
+        for (int appenders = 1; appenders <= 8; appenders *= 2) {
+            benchmarks.add(new FanOut(appenders));
+        }
+
+        for (int cacheSize = 128; cacheSize <= 4096; cacheSize *= 8) {
+            benchmarks.add(new ContextCache(cacheSize));
+            benchmarks.add(new ContextDump(cacheSize));
+        }
+
+        for (int capacity = 64 * 1024; capacity <= 4 * 1024 * 1024; capacity *= 8) {
+            benchmarks.add(new FlightRecorderRecord(capacity));
+        }
+
+        for (int size = 64 * 1024; size <= 4 * 1024 * 1024; size *= 8) {
+            benchmarks.add(new LogContentMerge(size, true));
+            benchmarks.add(new LogContentMerge(size, false));
+        }
+        return benchmarks;
+    }
+
+    private static File createDirectory(String name) throws IOException {
+        final File dir = File.createTempFile("smartlog-" + name, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        return dir;
+    }
+
+    private static void deleteDirectory(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Logger.debug(tag, msg) with the given level.
+     */
+    private static final class LoggerCall extends Benchmark {
+
+        private final int level;
+
+        LoggerCall(String name, int level) {
+            super(name, true);
+            this.level = level;
+        }
+
+        @Override
+        void setUp() {
+            Logger.setRelease(true);
+            Logger.initLog(new NullAppender(), level);
+        }
+
+        @Override
+        void op() {
+            Logger.debug(TAG, MESSAGE);
+        }
+    }
+
+    /**
+     * FileAppender.writeLogMessage, rotating when maxFileSize is not 0.
+     */
+    private static final class FileAppenderWrite extends Benchmark {
+
+        private final long maxFileSize;
+        private File dir;
+        private FileAppender appender;
+
+        FileAppenderWrite(String name, long maxFileSize) {
+            super(name, false);
+            this.maxFileSize = maxFileSize;
+        }
+
+        @Override
+        void setUp() throws IOException {
+            dir = createDirectory("fileAppender");
+            appender = new FileAppender(dir.getPath(), "synclog.txt");
+            appender.setMaxFileSize(maxFileSize > 0 ? maxFileSize : Long.MAX_VALUE);
+            appender.initLogFile();
+        }
+
+        @Override
+        void op() {
+            appender.writeLogMessage("DEBUG", MESSAGE);
+        }
+
+        @Override
+        void tearDown() {
+            appender.closeLogFile();
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * MultipleAppender.writeLogMessage to the given number of appenders.
+     */
+    private static final class FanOut extends Benchmark {
+
+        private final int appenders;
+        private MultipleAppender appender;
+
+        FanOut(int appenders) {
+            super("multipleAppender.fanOut." + appenders, false);
+            this.appenders = appenders;
+        }
+
+        @Override
+        void setUp() {
+            appender = new MultipleAppender();
+            for (int i = 0; i < appenders; i++) {
+                appender.addAppender(new NullAppender());
+            }
+        }
+
+        @Override
+        void op() throws IOException {
+            appender.writeLogMessage("DEBUG", MESSAGE);
+        }
+    }
+
+    /**
+     * A message below the level, cached for the error context.
+     */
+    private static final class ContextCache extends Benchmark {
+
+        private final int cacheSize;
+
+        ContextCache(int cacheSize) {
+            super("context.cache." + cacheSize, false);
+            this.cacheSize = cacheSize;
+        }
+
+        @Override
+        void setUp() {
+            Logger.setRelease(true);
+            Logger.setClientMaxLogLevel(Logger.TRACE);
+            Logger.initLog(new NullAppender(), Logger.INFO, cacheSize);
+        }
+
+        @Override
+        void op() {
+            Logger.debug(TAG, MESSAGE);
+        }
+    }
+
+    /**
+     * A message below the level recorded by the flight recorder.
+     */
+    private static final class FlightRecorderRecord extends Benchmark {
+
+        private final int capacity;
+
+        FlightRecorderRecord(int capacity) {
+            super("flightRecorder.record." + capacity / 1024 + "K", false);
+            this.capacity = capacity;
+        }
+
+        @Override
+        void setUp() {
+            Logger.setRelease(true);
+            Logger.initLog(new NullAppender(), Logger.INFO);
+            Logger.enableFlightRecorder(capacity, null);
+        }
+
+        @Override
+        void op() {
+            Logger.debug(TAG, MESSAGE);
+        }
+
+        @Override
+        void tearDown() {
+            Logger.disableFlightRecorder();
+        }
+    }
+
+    /**
+     * An error dumping a full cache. The cache is filled again for each
+     * operation, the cost of context.cache times the cache size is included.
+     */
+    private static final class ContextDump extends Benchmark {
+
+        private final int cacheSize;
+
+        ContextDump(int cacheSize) {
+            super("context.dump." + cacheSize, false);
+            this.cacheSize = cacheSize;
+        }
+
+        @Override
+        void setUp() {
+            Logger.setRelease(true);
+            Logger.setClientMaxLogLevel(Logger.TRACE);
+            Logger.initLog(new NullAppender(), Logger.INFO, cacheSize);
+        }
+
+        @Override
+        void op() {
+            for (int i = 0; i < cacheSize; i++) {
+                Logger.debug(TAG, MESSAGE);
+            }
+            Logger.error(TAG, MESSAGE);
+        }
+    }
+
+    /**
+     * FileAppender.getLogContent() with a current and a saved log file of
+     * half the given size each.
+     */
+    private static final class LogContentMerge extends Benchmark {
+
+        private final int size;
+        private final boolean memory;
+        private File dir;
+        private FileAppender appender;
+
+        LogContentMerge(int size, boolean memory) {
+            super("logContent." + (memory ? "memory." : "file.") + (size / 1024) + "K", false);
+            this.size = size;
+            this.memory = memory;
+        }
+
+        @Override
+        void setUp() throws IOException {
+            dir = createDirectory("logContent");
+            write(new File(dir, "synclog.txt.sav.txt"), size / 2);
+            write(new File(dir, "synclog.txt"), size / 2);
+            appender = new FileAppender(dir.getPath(), "synclog.txt");
+            appender.setLogContentType(memory);
+            appender.initLogFile();
+        }
+
+        @Override
+        void op() throws IOException {
+            final LogContent content = appender.getLogContent();
+            if (content.getContent() == null) {
+                throw new IOException("No log content");
+            }
+        }
+
+        @Override
+        void tearDown() {
+            appender.closeLogFile();
+            deleteDirectory(dir);
+        }
+
+        private static void write(File file, int size) throws IOException {
+            final byte[] line = ("Thu Jan 01 00:00:00 CET 2015 [DEBUG] [" + TAG + "] " + MESSAGE + "\r\n")
+                    .getBytes();
+            final OutputStream os = new FileOutputStream(file);
+            try {
+                for (int written = 0; written < size; written += line.length) {
+                    os.write(line);
+                }
+            } finally {
+                os.close();
+            }
+        }
+    }
+}
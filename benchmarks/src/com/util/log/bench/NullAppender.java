@@ -0,0 +1,48 @@
+package com.util.log.bench;
+
+import java.io.IOException;
+
+import com.util.log.Appender;
+import com.util.log.LogContent;
+
+/**
+ * Appender that only counts the messages, to measure the cost of the logger
+ * without any I/O.
+ */
+final class NullAppender implements Appender {
+
+    /**
+     * Keeps the write from being optimized away.
+     */
+    private long count;
+
+    @Override
+    public void initLogFile() {
+    }
+
+    @Override
+    public void openLogFile() {
+    }
+
+    @Override
+    public void closeLogFile() {
+    }
+
+    @Override
+    public void deleteLogFile() {
+    }
+
+    @Override
+    public void setLogLevel(int level) {
+    }
+
+    @Override
+    public void writeLogMessage(String level, String msg) throws IOException {
+        count++;
+    }
+
+    @Override
+    public LogContent getLogContent() throws IOException {
+        throw new IOException("No log content");
+    }
+}
@@ -0,0 +1,138 @@
+package org.acra;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.acra.collector.CrashReportData;
+import org.acra.sender.HttpBatchSender;
+import org.acra.sender.ReportSender;
+
+/**
+ * Checks, against a local server, that pending reports are sent in batches by
+ * the {@link HttpBatchSender} and that each report is kept or deleted
+ * according to its own acknowledgment (see benchmarks/run-crash.sh).
+ * <p>
+ * Seven reports are sent in batches of three. The server answers:
+ * </p>
+ * <ul>
+ * <li>[200,500,202] to the first batch: only its second report is kept,</li>
+ * <li>["ok",true,200] to the second batch: the response cannot be parsed as a
+ * whole, so the status of the request applies and all its reports are
+ * deleted,</li>
+ * <li>[503] to the last report, which is kept.</li>
+ * </ul>
+ * It prints the failures and exits with status 1 if there is any.
+ */
+public final class BatchSendingCheck {
+
+    private static final int REPORT_COUNT = 7;
+    private static final int BATCH_SIZE = 3;
+
+    private final List<String> failures = new ArrayList<String>();
+    private File filesDir;
+    private StubReportServer server;
+    private BenchmarkApplication application;
+    private ACRAConfiguration config;
+
+    private BatchSendingCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BatchSendingCheck check = new BatchSendingCheck();
+        try {
+            check.setUp();
+            check.run();
+        } finally {
+            check.tearDown();
+        }
+        for (String failure : check.failures) {
+            System.out.println("FAILED: " + failure);
+        }
+        System.out.println(check.failures.isEmpty() ? "Batch sending OK" : check.failures.size() + " failures");
+        if (!check.failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private void setUp() throws IOException {
+        filesDir = File.createTempFile("acra-batch-check", "");
+        if (!filesDir.delete() || !filesDir.mkdir()) {
+            throw new IOException("Cannot create " + filesDir);
+        }
+        server = new StubReportServer(true);
+        application = new BenchmarkApplication(filesDir);
+
+        config = ACRA.getNewDefaultConfig(application);
+        config.setFormUri(server.getUri());
+        config.setProcessFactory(new BenchmarkProcessFactory());
+        ACRA.init(application, config);
+    }
+
+    private void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        if (filesDir != null) {
+            final File[] files = filesDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            filesDir.delete();
+        }
+    }
+
+    private void run() throws IOException {
+        final CrashReportStore store = new CrashReportStore(application, config.savePath());
+        final long creationTime = System.currentTimeMillis();
+        final String[] fileNames = new String[REPORT_COUNT];
+        for (int i = 0; i < REPORT_COUNT; i++) {
+            final CrashReportData report = new CrashReportData();
+            report.put(ReportField.REPORT_ID, "report-" + i);
+            report.put(ReportField.STACK_TRACE, "java.lang.IllegalStateException: report " + i);
+            fileNames[i] = (creationTime + i) + ACRAConstants.SILENT_SUFFIX + ACRAConstants.REPORTFILE_EXTENSION;
+            store.save(fileNames[i], report);
+        }
+
+        server.respondWith("[200,500,202]");
+        server.respondWith("[\"ok\",true,200]");
+        server.respondWith("[503]");
+        final List<ReportSender> senders = Collections.<ReportSender> singletonList(new HttpBatchSender(
+                HttpBatchSender.Format.NDJSON, server.getUri(), BATCH_SIZE, false));
+        final Long nextAttemptTime = new SendWorker(application, senders, false, true, config.savePath()).call();
+
+        final List<String> bodies = server.takeBodies();
+        check("requests", 3, bodies.size());
+        int report = 0;
+        for (int request = 0; request < bodies.size(); request++) {
+            final String[] lines = bodies.get(request).trim().split("\n");
+            check("reports in request " + request, Math.min(BATCH_SIZE, REPORT_COUNT - report), lines.length);
+            for (String line : lines) {
+                if (!line.contains("\"report-" + report + "\"")) {
+                    failures.add("request " + request + " should hold report-" + report + ": " + line);
+                }
+                report++;
+            }
+        }
+
+        final List<String> pending = new ArrayList<String>();
+        for (String fileName : store.list()) {
+            pending.add(fileName.replace(ACRAConstants.APPROVED_SUFFIX, ""));
+        }
+        check("pending reports", Arrays.asList(fileNames[1], fileNames[6]), pending);
+        if (nextAttemptTime == null) {
+            failures.add("a retry should be scheduled for the pending reports");
+        }
+    }
+
+    private void check(String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.acra;
+
+import java.io.File;
+
+import org.acra.annotation.ReportsCrashes;
+import org.acra.sender.HttpSender;
+
+import android.app.Application;
+
+/**
+ * The application whose crashes are benchmarked. Its reports are sent in
+ * JSON, silently, to a formUri set by the benchmark.
+ */
+@ReportsCrashes(formKey = "", savePath = "", mode = ReportingInteractionMode.SILENT, reportType = HttpSender.Type.JSON, sendReportsInDevMode = true)
+public final class BenchmarkApplication extends Application {
+
+    BenchmarkApplication(File filesDir) {
+        attachBaseContext(new BenchmarkContext(filesDir));
+    }
+}
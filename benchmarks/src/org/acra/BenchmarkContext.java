@@ -0,0 +1,152 @@
+package org.acra;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.FeatureInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.hardware.display.DisplayManager;
+
+/**
+ * Base context of the benchmark application: a files directory, in-memory
+ * SharedPreferences, a package granted the INTERNET permission only, and a
+ * single display. The other system services are not available.
+ */
+final class BenchmarkContext extends Context {
+
+    static final String PACKAGE_NAME = "com.util.log.benchmark";
+
+    private final File filesDir;
+    private final Map<String, BenchmarkSharedPreferences> sharedPreferences = new HashMap<String, BenchmarkSharedPreferences>();
+    private final Resources resources = new Resources(new Configuration());
+    private final ContentResolver contentResolver = new ContentResolver(this);
+    private final DisplayManager displayManager = new DisplayManager();
+    private final PackageManager packageManager = new PackageManager() {
+
+        @Override
+        public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+            checkPackageName(packageName);
+            final PackageInfo info = new PackageInfo();
+            info.packageName = packageName;
+            info.versionCode = 1;
+            info.versionName = "1.0";
+            info.applicationInfo = getApplicationInfo(packageName, flags);
+            return info;
+        }
+
+        @Override
+        public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException {
+            checkPackageName(packageName);
+            final ApplicationInfo info = new ApplicationInfo();
+            info.packageName = packageName;
+            info.dataDir = filesDir.getParent();
+            return info;
+        }
+
+        @Override
+        public int checkPermission(String permName, String pkgName) {
+            return Manifest.permission.INTERNET.equals(permName) ? PERMISSION_GRANTED : PERMISSION_DENIED;
+        }
+
+        @Override
+        public FeatureInfo[] getSystemAvailableFeatures() {
+            final String[] names = { "android.hardware.camera", "android.hardware.location.gps",
+                    "android.hardware.touchscreen", "android.hardware.wifi", null };
+            final FeatureInfo[] features = new FeatureInfo[names.length];
+            for (int i = 0; i < names.length; i++) {
+                features[i] = new FeatureInfo();
+                features[i].name = names[i];
+                // OpenGL ES 3.0 for the feature without a name.
+                features[i].reqGlEsVersion = names[i] == null ? 0x30000 : 0;
+            }
+            return features;
+        }
+
+        private void checkPackageName(String packageName) throws NameNotFoundException {
+            if (!PACKAGE_NAME.equals(packageName)) {
+                throw new NameNotFoundException(packageName);
+            }
+        }
+    };
+
+    BenchmarkContext(File filesDir) {
+        this.filesDir = filesDir;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    @Override
+    public Resources getResources() {
+        return resources;
+    }
+
+    @Override
+    public ContentResolver getContentResolver() {
+        return contentResolver;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public FileInputStream openFileInput(String name) throws FileNotFoundException {
+        return new FileInputStream(new File(filesDir, name));
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        BenchmarkSharedPreferences prefs = sharedPreferences.get(name);
+        if (prefs == null) {
+            prefs = new BenchmarkSharedPreferences();
+            sharedPreferences.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return DISPLAY_SERVICE.equals(name) ? displayManager : null;
+    }
+
+    @Override
+    public void startActivity(Intent intent) {
+    }
+
+    @Override
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return null;
+    }
+
+    @Override
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+    }
+}
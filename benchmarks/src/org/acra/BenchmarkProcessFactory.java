@@ -0,0 +1,105 @@
+package org.acra;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.acra.util.ProcessFactory;
+
+/**
+ * Replaces the logcat and dumpsys processes by canned outputs. Logcat prints a
+ * given number of lines for each buffer it is asked for, in the time format,
+ * half of them from the benchmark process.
+ */
+final class BenchmarkProcessFactory implements ProcessFactory {
+
+    private volatile int logLines;
+
+    void setLogLines(int logLines) {
+        this.logLines = logLines;
+    }
+
+    @Override
+    public Process start(List<String> commandLine) throws IOException {
+        final String command = commandLine.get(0);
+        if ("logcat".equals(command)) {
+            return new CannedProcess(logcat(commandLine));
+        } else if ("dumpsys".equals(command)) {
+            return new CannedProcess(MEMINFO);
+        }
+        throw new IOException("Cannot run program \"" + command + "\"");
+    }
+
+    private byte[] logcat(List<String> commandLine) {
+        final int pid = android.os.Process.myPid();
+        final StringBuilder out = new StringBuilder();
+        for (int i = 0; i < commandLine.size() - 1; i++) {
+            if (!"-b".equals(commandLine.get(i))) {
+                continue;
+            }
+            final String buffer = commandLine.get(i + 1);
+            out.append("--------- beginning of ").append(buffer).append('\n');
+            for (int line = 0; line < logLines; line++) {
+                out.append(String.format(Locale.US, "01-01 12:%02d:%02d.%03d D/Benchmark(%5d): %s message %d of the %s buffer\n",
+                        line / 60000 % 60, line / 1000 % 60, line % 1000, line % 2 == 0 ? pid : pid + 1,
+                        "Synchronization of 42 items completed in 1234 ms,", line, buffer));
+            }
+        }
+        return out.toString().getBytes();
+    }
+
+    private static final byte[] MEMINFO = ("Applications Memory Usage (kB):\n"
+            + "Uptime: 123456 Realtime: 123456\n\n"
+            + "** MEMINFO in pid 1234 [" + BenchmarkContext.PACKAGE_NAME + "] **\n"
+            + "                   Pss  Private  Private  Swapped     Heap     Heap     Heap\n"
+            + "                 Total    Dirty    Clean    Dirty     Size    Alloc     Free\n"
+            + "                ------   ------   ------   ------   ------   ------   ------\n"
+            + "  Native Heap     5024     4980        0        0    16384    11093     5290\n"
+            + "  Dalvik Heap     9320     9060        0        0    22532    18036     4496\n"
+            + "        TOTAL    28342    20436     1744        0    38916    29129     9786\n").getBytes();
+
+    /**
+     * A finished process with a given output.
+     */
+    private static final class CannedProcess extends Process {
+
+        private final InputStream in;
+
+        CannedProcess(byte[] output) {
+            in = new ByteArrayInputStream(output);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
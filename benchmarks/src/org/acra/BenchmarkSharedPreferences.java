@@ -0,0 +1,171 @@
+package org.acra;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.SharedPreferences;
+
+/**
+ * In-memory SharedPreferences. Listeners are called on the committing thread.
+ */
+final class BenchmarkSharedPreferences implements SharedPreferences {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+    private final List<OnSharedPreferenceChangeListener> listeners = new ArrayList<OnSharedPreferenceChangeListener>();
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        final Object value = values.get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+        final Object value = values.get(key);
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        final Object value = values.get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        final Object value = values.get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        final Object value = values.get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        final Object value = values.get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new BenchmarkEditor();
+    }
+
+    @Override
+    public synchronized void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private final class BenchmarkEditor implements Editor {
+
+        private final Map<String, Object> changes = new HashMap<String, Object>();
+        private final Set<String> removed = new HashSet<String>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            return put(key, values != null ? new HashSet<String>(values) : null);
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            removed.add(key);
+            changes.remove(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            final Set<String> changedKeys = new HashSet<String>();
+            final OnSharedPreferenceChangeListener[] toNotify;
+            synchronized (BenchmarkSharedPreferences.this) {
+                if (clear) {
+                    changedKeys.addAll(values.keySet());
+                    values.clear();
+                }
+                for (String key : removed) {
+                    if (values.remove(key) != null) {
+                        changedKeys.add(key);
+                    }
+                }
+                values.putAll(changes);
+                changedKeys.addAll(changes.keySet());
+                toNotify = listeners.toArray(new OnSharedPreferenceChangeListener[listeners.size()]);
+            }
+            for (String key : changedKeys) {
+                for (OnSharedPreferenceChangeListener listener : toNotify) {
+                    listener.onSharedPreferenceChanged(BenchmarkSharedPreferences.this, key);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+
+        private Editor put(String key, Object value) {
+            if (value == null) {
+                return remove(key);
+            }
+            changes.put(key, value);
+            removed.remove(key);
+            return this;
+        }
+    }
+}
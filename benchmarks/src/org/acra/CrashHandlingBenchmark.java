@@ -0,0 +1,406 @@
+package org.acra;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.acra.collector.CrashReportData;
+import org.acra.collector.CrashReportDataFactory;
+import org.acra.sender.HttpSender;
+import org.acra.util.JSONReportBuilder;
+
+import android.text.format.Time;
+
+/**
+ * Measures where the time goes when ACRA handles an exception, on a plain JVM
+ * with stand-ins for the Android framework (see benchmarks/run-crash.sh).
+ * <p>
+ * For each log size, it prints:
+ * </p>
+ * <ul>
+ * <li>the time taken by the collector of each report field, measured as the
+ * time to build a report with this field and the stack trace only, minus the
+ * time to build a report with the stack trace only,</li>
+ * <li>the time of each stage of the handling of a report with all the fields:
+ * collection, CrashReportPersister store and load, JSON building, sending
+ * with the HttpSender to a local server, and handleSilentException and
+ * handleException until they return and until the report is received.</li>
+ * </ul>
+ * The times are the median and the 90th percentile, in milliseconds.
+ * <p>
+ * Usage:
+ * </p>
+ * 
+ * <pre>
+ * CrashHandlingBenchmark [-w 5] [-i 20] [-l 100,1000,5000] [-f default|all|FIELD,FIELD...]
+ * </pre>
+ * <ul>
+ * <li>-w: warmup iterations, not reported.</li>
+ * <li>-i: measured iterations.</li>
+ * <li>-l: lines of each logcat buffer and of the application log file.</li>
+ * <li>-f: report fields, {@link ACRAConstants#DEFAULT_REPORT_FIELDS} by
+ * default. The application log is read from a file of the benchmark.</li>
+ * </ul>
+ */
+public final class CrashHandlingBenchmark {
+
+    private static final String APPLICATION_LOG_FILE = "benchmark.log";
+    private static final long SEND_TIMEOUT = 30000;
+
+    private int warmupIterations = 5;
+    private int iterations = 20;
+    private int[] logLines = { 100, 1000, 5000 };
+    private ReportField[] fields = ACRAConstants.DEFAULT_REPORT_FIELDS;
+
+    private final PrintStream out = System.out;
+    private File filesDir;
+    private BenchmarkApplication application;
+    private ACRAConfiguration config;
+    private final BenchmarkProcessFactory processFactory = new BenchmarkProcessFactory();
+    private StubReportServer server;
+    private CrashReportDataFactory dataFactory;
+
+    /**
+     * The stages of the handling of a report, and their times for each log
+     * size.
+     */
+    private final Map<String, String[]> stageTimes = new LinkedHashMap<String, String[]>();
+    private final Map<ReportField, String[]> collectorTimes = new LinkedHashMap<ReportField, String[]>();
+
+    private CrashHandlingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CrashHandlingBenchmark benchmark = new CrashHandlingBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("-w".equals(arg)) {
+                benchmark.warmupIterations = Integer.parseInt(args[++i]);
+            } else if ("-i".equals(arg)) {
+                benchmark.iterations = Integer.parseInt(args[++i]);
+            } else if ("-l".equals(arg)) {
+                final String[] sizes = args[++i].split(",");
+                benchmark.logLines = new int[sizes.length];
+                for (int j = 0; j < sizes.length; j++) {
+                    benchmark.logLines[j] = Integer.parseInt(sizes[j].trim());
+                }
+            } else if ("-f".equals(arg)) {
+                benchmark.fields = parseFields(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        try {
+            benchmark.setUp();
+            benchmark.run();
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    private static ReportField[] parseFields(String value) {
+        if ("default".equals(value)) {
+            return ACRAConstants.DEFAULT_REPORT_FIELDS;
+        } else if ("all".equals(value)) {
+            return ReportField.values();
+        }
+        final String[] names = value.split(",");
+        final ReportField[] result = new ReportField[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = ReportField.valueOf(names[i].trim());
+        }
+        return result;
+    }
+
+    private void setUp() throws IOException {
+        filesDir = File.createTempFile("acra-benchmark", "");
+        if (!filesDir.delete() || !filesDir.mkdir()) {
+            throw new IOException("Cannot create " + filesDir);
+        }
+        server = new StubReportServer();
+        application = new BenchmarkApplication(filesDir);
+
+        config = ACRA.getNewDefaultConfig(application);
+        config.setFormUri(server.getUri());
+        config.setProcessFactory(processFactory);
+        config.setCustomReportContent(fields);
+        config.setApplicationLogFile(APPLICATION_LOG_FILE);
+        ACRA.init(application, config);
+
+        final Time appStartDate = new Time();
+        appStartDate.setToNow();
+        dataFactory = new CrashReportDataFactory(application, ACRA.getACRASharedPreferences(), appStartDate, "");
+    }
+
+    private void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        if (filesDir != null) {
+            final File[] files = filesDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            filesDir.delete();
+        }
+    }
+
+    private void run() throws Exception {
+        out.println("Fields: " + Arrays.toString(fields));
+        out.println("Iterations: " + warmupIterations + " warmup, " + iterations + " measured");
+        for (int i = 0; i < logLines.length; i++) {
+            out.println("Measuring with " + logLines[i] + " log lines...");
+            setLogLines(logLines[i]);
+            measureCollectors(i);
+            measureStages(i);
+        }
+
+        final String[] headers = new String[logLines.length];
+        for (int i = 0; i < logLines.length; i++) {
+            headers[i] = logLines[i] + " lines";
+        }
+        out.println();
+        out.println("Collectors, time added to the report (ms, median/p90)");
+        final Map<String, String[]> collectorRows = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<ReportField, String[]> time : collectorTimes.entrySet()) {
+            collectorRows.put(time.getKey().toString(), time.getValue());
+        }
+        printTable(headers, collectorRows);
+        out.println();
+        out.println("Stages, report with all the fields (ms, median/p90)");
+        printTable(headers, stageTimes);
+    }
+
+    private void setLogLines(int lines) throws IOException {
+        processFactory.setLogLines(lines);
+        config.setLogcatArguments(new String[] { "-t", Integer.toString(lines), "-v", "time" });
+        config.setApplicationLogFileLines(lines);
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(new File(filesDir, APPLICATION_LOG_FILE)),
+                "UTF-8");
+        try {
+            for (int line = 0; line < lines; line++) {
+                writer.write("Thu Jan 01 00:00:00 CET 2015 [DEBUG] [Benchmark] Synchronization of 42 items completed in "
+                        + line + " ms\r\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void measureCollectors(int column) throws Exception {
+        final Exception exception = newException();
+        final Stage collect = new Stage() {
+            @Override
+            public void run() {
+                dataFactory.createCrashData(exception, false, Thread.currentThread());
+            }
+        };
+
+        config.setCustomReportContent(new ReportField[] { ReportField.STACK_TRACE });
+        final long baseline = median(measure(collect));
+        for (ReportField field : fields) {
+            if (field == ReportField.STACK_TRACE) {
+                continue;
+            }
+            config.setCustomReportContent(new ReportField[] { ReportField.STACK_TRACE, field });
+            final long time = Math.max(0, median(measure(collect)) - baseline);
+            time(collectorTimes, field, column, String.format(Locale.US, "%.3f", time / 1e6));
+        }
+        config.setCustomReportContent(fields);
+    }
+
+    private void measureStages(int column) throws Exception {
+        final Exception exception = newException();
+        final CrashReportPersister persister = new CrashReportPersister();
+
+        final CrashReportData[] report = new CrashReportData[1];
+        time(stageTimes, "CrashReportDataFactory.createCrashData", column, measure(new Stage() {
+            @Override
+            public void run() {
+                report[0] = dataFactory.createCrashData(exception, false, Thread.currentThread());
+            }
+        }));
+
+        final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        time(stageTimes, "CrashReportPersister.store", column, measure(new Stage() {
+            @Override
+            public void run() throws IOException {
+                stored.reset();
+                persister.store(report[0], stored);
+            }
+        }));
+
+        final byte[] storedBytes = stored.toByteArray();
+        time(stageTimes, "CrashReportPersister.load", column, measure(new Stage() {
+            @Override
+            public void run() throws IOException {
+                persister.load(new ByteArrayInputStream(storedBytes));
+            }
+        }));
+
+        time(stageTimes, "JSONReportBuilder.buildJSONReport", column, measure(new Stage() {
+            @Override
+            public void run() throws Exception {
+                JSONReportBuilder.buildJSONReport(report[0]).toString();
+            }
+        }));
+
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        time(stageTimes, "JSONReportBuilder.writeJSONReport", column, measure(new Stage() {
+            @Override
+            public void run() throws IOException {
+                json.reset();
+                final Writer writer = new OutputStreamWriter(json, "UTF-8");
+                JSONReportBuilder.writeJSONReport(report[0], writer);
+                writer.flush();
+            }
+        }));
+
+        final HttpSender sender = new HttpSender(config.httpMethod(), HttpSender.Type.JSON, null);
+        time(stageTimes, "HttpSender.send", column, measure(new Stage() {
+            @Override
+            public void run() throws Exception {
+                sender.send(report[0]);
+                awaitReport();
+            }
+        }));
+
+        measureHandling(column, exception, true);
+        measureHandling(column, exception, false);
+
+        time(stageTimes, "Stored report size (KB)", column, String.format(Locale.US, "%.1f", storedBytes.length / 1024.0));
+        time(stageTimes, "JSON report size (KB)", column, String.format(Locale.US, "%.1f", json.size() / 1024.0));
+    }
+
+    /**
+     * Measures handleSilentException or handleException until it returns and
+     * until the report is received by the server. The reports are sent one by
+     * one: each iteration waits for the report file to be deleted.
+     */
+    private void measureHandling(int column, final Exception exception, final boolean silent) throws Exception {
+        final ErrorReporter errorReporter = ACRA.getErrorReporter();
+        final String name = silent ? "ErrorReporter.handleSilentException" : "ErrorReporter.handleException";
+        final long[] returnTimes = new long[warmupIterations + iterations];
+        final long[] receiveTimes = new long[warmupIterations + iterations];
+        server.drain();
+        for (int i = 0; i < returnTimes.length; i++) {
+            final long start = System.nanoTime();
+            if (silent) {
+                errorReporter.handleSilentException(exception);
+            } else {
+                errorReporter.handleException(exception);
+            }
+            returnTimes[i] = System.nanoTime() - start;
+            awaitReport();
+            receiveTimes[i] = System.nanoTime() - start;
+            awaitNoPendingReport();
+        }
+        time(stageTimes, name + " (return)", column, measured(returnTimes));
+        time(stageTimes, name + " (received)", column, measured(receiveTimes));
+    }
+
+    private void awaitReport() throws InterruptedException, IOException {
+        if (!server.awaitReport(SEND_TIMEOUT)) {
+            throw new IOException("No report received in " + SEND_TIMEOUT + " ms");
+        }
+    }
+
+    private void awaitNoPendingReport() throws InterruptedException, IOException {
+        final CrashReportFinder finder = new CrashReportFinder(application);
+        final long deadline = System.currentTimeMillis() + SEND_TIMEOUT;
+        while (finder.getCrashReportFiles(null).length > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Reports still pending after " + SEND_TIMEOUT + " ms");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private long[] measure(Stage stage) throws Exception {
+        final long[] times = new long[warmupIterations + iterations];
+        for (int i = 0; i < times.length; i++) {
+            final long start = System.nanoTime();
+            stage.run();
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+    /**
+     * @return The measured times, without the warmup ones, sorted.
+     */
+    private long[] measured(long[] times) {
+        final long[] result = Arrays.copyOfRange(times, warmupIterations, times.length);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private long median(long[] times) {
+        return measured(times)[iterations / 2];
+    }
+
+    private <K> void time(Map<K, String[]> table, K row, int column, long[] times) {
+        final long[] sorted = measured(times);
+        final long p90 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.9) - 1)];
+        time(table, row, column, String.format(Locale.US, "%.2f/%.2f", sorted[sorted.length / 2] / 1e6, p90 / 1e6));
+    }
+
+    private <K> void time(Map<K, String[]> table, K row, int column, String value) {
+        String[] values = table.get(row);
+        if (values == null) {
+            values = new String[logLines.length];
+            table.put(row, values);
+        }
+        values[column] = value;
+    }
+
+    private void printTable(String[] headers, Map<String, String[]> rows) {
+        int nameWidth = 0;
+        for (String name : rows.keySet()) {
+            nameWidth = Math.max(nameWidth, name.length());
+        }
+        final StringBuilder header = new StringBuilder(String.format(Locale.US, "%-" + nameWidth + "s", ""));
+        for (String title : headers) {
+            header.append(String.format(Locale.US, " %16s", title));
+        }
+        out.println(header);
+        for (Map.Entry<String, String[]> row : rows.entrySet()) {
+            final StringBuilder line = new StringBuilder(String.format(Locale.US, "%-" + nameWidth + "s", row.getKey()));
+            for (String value : row.getValue()) {
+                line.append(String.format(Locale.US, " %16s", value != null ? value : "-"));
+            }
+            out.println(line);
+        }
+    }
+
+    /**
+     * @return An exception with a stack trace of a typical depth.
+     */
+    private static Exception newException() {
+        return newException(40);
+    }
+
+    private static Exception newException(int depth) {
+        if (depth > 0) {
+            return newException(depth - 1);
+        }
+        return new IllegalStateException("Benchmark exception", new IOException("Benchmark cause"));
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+}
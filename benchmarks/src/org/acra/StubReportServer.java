@@ -0,0 +1,132 @@
+package org.acra;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server accepting every report, to measure the sending of the
+ * reports without a network. It can also record the request bodies and answer
+ * with scripted response bodies, to check what a sender sends.
+ */
+final class StubReportServer {
+
+    private final HttpServer server;
+    private final Semaphore received = new Semaphore(0);
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final boolean recordBodies;
+    private final List<String> bodies = new ArrayList<String>();
+    private final Queue<String> responses = new ConcurrentLinkedQueue<String>();
+
+    StubReportServer() throws IOException {
+        this(false);
+    }
+
+    /**
+     * @param recordBodies
+     *            Whether the request bodies are kept, see
+     *            {@link #takeBodies()}.
+     */
+    StubReportServer(boolean recordBodies) throws IOException {
+        this.recordBodies = recordBodies;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        server.createContext("/reports", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final InputStream in = exchange.getRequestBody();
+                final ByteArrayOutputStream body = recordBodies ? new ByteArrayOutputStream() : null;
+                final byte[] buffer = new byte[8192];
+                long length = 0;
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    length += read;
+                    if (body != null) {
+                        body.write(buffer, 0, read);
+                    }
+                }
+                in.close();
+                if (body != null) {
+                    synchronized (bodies) {
+                        bodies.add(body.toString("UTF-8"));
+                    }
+                }
+                final String response = responses.poll();
+                if (response == null) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    final byte[] responseBytes = response.getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, responseBytes.length);
+                    final OutputStream out = exchange.getResponseBody();
+                    out.write(responseBytes);
+                    out.close();
+                }
+                exchange.close();
+                receivedBytes.addAndGet(length);
+                received.release();
+            }
+        });
+        server.start();
+    }
+
+    String getUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/reports";
+    }
+
+    /**
+     * @return The total size of the request bodies received.
+     */
+    long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Sets the body of the response to a next request, the responses have no
+     * body once the scripted ones have been used.
+     */
+    void respondWith(String body) {
+        responses.add(body);
+    }
+
+    /**
+     * @return The bodies of the requests received since the last call, when
+     *         they are recorded.
+     */
+    List<String> takeBodies() {
+        synchronized (bodies) {
+            final List<String> result = new ArrayList<String>(bodies);
+            bodies.clear();
+            return result;
+        }
+    }
+
+    /**
+     * Waits for a report.
+     *
+     * @return False if no report has been received in time.
+     */
+    boolean awaitReport(long timeoutMillis) throws InterruptedException {
+        return received.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void drain() {
+        received.drainPermits();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,49 @@
+package android.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContextWrapper;
+
+/**
+ * Stand-in for the Android Application. Subclasses attach their base context.
+ */
+public class Application extends ContextWrapper {
+
+    private final List<ActivityLifecycleCallbacks> callbacks = new ArrayList<ActivityLifecycleCallbacks>();
+
+    public Application() {
+        super(null);
+    }
+
+    public void onCreate() {
+    }
+
+    public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        synchronized (callbacks) {
+            callbacks.add(callback);
+        }
+    }
+
+    public void unregisterActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        synchronized (callbacks) {
+            callbacks.remove(callback);
+        }
+    }
+
+    public interface ActivityLifecycleCallbacks {
+        void onActivityCreated(Activity activity, android.os.Bundle savedInstanceState);
+
+        void onActivityStarted(Activity activity);
+
+        void onActivityResumed(Activity activity);
+
+        void onActivityPaused(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity, android.os.Bundle outState);
+
+        void onActivityDestroyed(Activity activity);
+    }
+}
@@ -0,0 +1,11 @@
+package android.content;
+
+/**
+ * Stand-in for the Android ContentResolver, only passed around to
+ * {@link android.provider.Settings}.
+ */
+public class ContentResolver {
+
+    public ContentResolver(Context context) {
+    }
+}
@@ -0,0 +1,51 @@
+package android.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+
+/**
+ * Stand-in for the Android Context, limited to the methods used by ACRA.
+ */
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0;
+    public static final String ACTIVITY_SERVICE = "activity";
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+    public static final String DISPLAY_SERVICE = "display";
+    public static final String DROPBOX_SERVICE = "dropbox";
+    public static final String NOTIFICATION_SERVICE = "notification";
+    public static final String TELEPHONY_SERVICE = "phone";
+    public static final String WINDOW_SERVICE = "window";
+
+    public abstract Context getApplicationContext();
+
+    public abstract String getPackageName();
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract Resources getResources();
+
+    public abstract ContentResolver getContentResolver();
+
+    public abstract File getFilesDir();
+
+    public abstract FileInputStream openFileInput(String name) throws FileNotFoundException;
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract Object getSystemService(String name);
+
+    public final CharSequence getText(int resId) {
+        return getResources().getText(resId);
+    }
+
+    public abstract void startActivity(Intent intent);
+
+    public abstract Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter);
+
+    public abstract void unregisterReceiver(BroadcastReceiver receiver);
+}
@@ -0,0 +1,16 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the Android ApplicationInfo.
+ */
+public class ApplicationInfo {
+
+    public static final int FLAG_DEBUGGABLE = 1 << 1;
+
+    public String packageName;
+    public int flags;
+    public String dataDir;
+
+    public ApplicationInfo() {
+    }
+}
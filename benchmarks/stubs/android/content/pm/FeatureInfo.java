@@ -0,0 +1,17 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the Android FeatureInfo.
+ */
+public class FeatureInfo {
+
+    public String name;
+    public int reqGlEsVersion;
+
+    public FeatureInfo() {
+    }
+
+    public String getGlEsVersion() {
+        return (reqGlEsVersion >> 16) + "." + (reqGlEsVersion & 0xffff);
+    }
+}
@@ -0,0 +1,30 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the Android PackageManager, limited to the methods used by
+ * ACRA.
+ */
+public abstract class PackageManager {
+
+    public static final int PERMISSION_GRANTED = 0;
+    public static final int PERMISSION_DENIED = -1;
+
+    public static class NameNotFoundException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public NameNotFoundException() {
+        }
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public abstract ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException;
+
+    public abstract int checkPermission(String permName, String pkgName);
+
+    public abstract FeatureInfo[] getSystemAvailableFeatures();
+}
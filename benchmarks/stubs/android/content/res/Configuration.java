@@ -0,0 +1,49 @@
+package android.content.res;
+
+import java.util.Locale;
+
+/**
+ * Stand-in for the Android Configuration, with the fields and constants read
+ * by the ConfigurationCollector.
+ */
+public class Configuration {
+
+    public static final int HARDKEYBOARDHIDDEN_NO = 1;
+    public static final int HARDKEYBOARDHIDDEN_YES = 2;
+    public static final int KEYBOARD_NOKEYS = 1;
+    public static final int KEYBOARD_QWERTY = 2;
+    public static final int KEYBOARDHIDDEN_NO = 1;
+    public static final int KEYBOARDHIDDEN_YES = 2;
+    public static final int NAVIGATION_NONAV = 1;
+    public static final int NAVIGATION_DPAD = 2;
+    public static final int NAVIGATIONHIDDEN_NO = 1;
+    public static final int NAVIGATIONHIDDEN_YES = 2;
+    public static final int ORIENTATION_PORTRAIT = 1;
+    public static final int ORIENTATION_LANDSCAPE = 2;
+    public static final int SCREENLAYOUT_SIZE_NORMAL = 2;
+    public static final int SCREENLAYOUT_SIZE_LARGE = 3;
+    public static final int TOUCHSCREEN_NOTOUCH = 1;
+    public static final int TOUCHSCREEN_FINGER = 3;
+    public static final int UI_MODE_TYPE_NORMAL = 1;
+    public static final int UI_MODE_NIGHT_NO = 16;
+
+    public float fontScale = 1;
+    public int hardKeyboardHidden = HARDKEYBOARDHIDDEN_YES;
+    public int keyboard = KEYBOARD_NOKEYS;
+    public int keyboardHidden = KEYBOARDHIDDEN_YES;
+    public Locale locale = Locale.getDefault();
+    public int mcc;
+    public int mnc;
+    public int navigation = NAVIGATION_NONAV;
+    public int navigationHidden = NAVIGATIONHIDDEN_YES;
+    public int orientation = ORIENTATION_PORTRAIT;
+    public int screenHeightDp = 640;
+    public int screenLayout = SCREENLAYOUT_SIZE_NORMAL;
+    public int screenWidthDp = 360;
+    public int smallestScreenWidthDp = 360;
+    public int touchscreen = TOUCHSCREEN_FINGER;
+    public int uiMode = UI_MODE_TYPE_NORMAL | UI_MODE_NIGHT_NO;
+
+    public Configuration() {
+    }
+}
@@ -0,0 +1,22 @@
+package android.content.res;
+
+/**
+ * Stand-in for the Android Resources, with a single configuration and no
+ * resource.
+ */
+public class Resources {
+
+    private final Configuration configuration;
+
+    public Resources(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    public CharSequence getText(int id) {
+        return "#" + Integer.toHexString(id);
+    }
+}
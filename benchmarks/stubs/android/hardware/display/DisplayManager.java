@@ -0,0 +1,22 @@
+package android.hardware.display;
+
+import android.view.Display;
+
+/**
+ * Stand-in for the Android DisplayManager, with a single display.
+ */
+public final class DisplayManager {
+
+    private final Display[] displays = { new Display() };
+
+    public DisplayManager() {
+    }
+
+    public Display getDisplay(int displayId) {
+        return displayId == Display.DEFAULT_DISPLAY ? displays[0] : null;
+    }
+
+    public Display[] getDisplays() {
+        return displays.clone();
+    }
+}
@@ -0,0 +1,22 @@
+package android.net;
+
+/**
+ * Stand-in for the Android Uri, holding the string it is parsed from.
+ */
+public class Uri {
+
+    private final String uriString;
+
+    private Uri(String uriString) {
+        this.uriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
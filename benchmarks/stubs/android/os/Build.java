@@ -0,0 +1,37 @@
+package android.os;
+
+/**
+ * Stand-in for the Android Build, describing an API level 19 device. The
+ * constants are not compile time constants, so that the reflection based
+ * collectors find them.
+ */
+public class Build {
+
+    public static final String BOARD = value("board");
+    public static final String BRAND = value("generic");
+    public static final String DEVICE = value("generic");
+    public static final String DISPLAY = value("KOT49H");
+    public static final String FINGERPRINT = value("generic/sdk/generic:4.4.2/KOT49H/1:eng/test-keys");
+    public static final String HARDWARE = value("goldfish");
+    public static final String HOST = value("localhost");
+    public static final String ID = value("KOT49H");
+    public static final String MANUFACTURER = value("unknown");
+    public static final String MODEL = value("JVM");
+    public static final String PRODUCT = value("sdk");
+    public static final String TAGS = value("test-keys");
+    public static final long TIME = System.currentTimeMillis();
+    public static final String TYPE = value("eng");
+    public static final String USER = value("benchmark");
+
+    private static String value(String value) {
+        return value;
+    }
+
+    public static class VERSION {
+        public static final String CODENAME = value("REL");
+        public static final String INCREMENTAL = value("1");
+        public static final String RELEASE = value("4.4.2");
+        public static final String SDK = value("19");
+        public static final int SDK_INT = Integer.parseInt(SDK);
+    }
+}
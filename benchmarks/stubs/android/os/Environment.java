@@ -0,0 +1,41 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * Stand-in for the Android Environment, pointing to the temporary directory.
+ */
+public class Environment {
+
+    public static final String MEDIA_MOUNTED = "mounted";
+
+    private static final File ROOT = new File(System.getProperty("java.io.tmpdir"));
+
+    public static File getDataDirectory() {
+        return ROOT;
+    }
+
+    public static File getDownloadCacheDirectory() {
+        return ROOT;
+    }
+
+    public static File getExternalStorageDirectory() {
+        return ROOT;
+    }
+
+    public static String getExternalStorageState() {
+        return MEDIA_MOUNTED;
+    }
+
+    public static File getRootDirectory() {
+        return ROOT;
+    }
+
+    public static boolean isExternalStorageEmulated() {
+        return true;
+    }
+
+    public static boolean isExternalStorageRemovable() {
+        return false;
+    }
+}
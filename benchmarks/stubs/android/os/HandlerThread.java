@@ -0,0 +1,48 @@
+package android.os;
+
+/**
+ * Stand-in for the Android HandlerThread, a thread running a {@link Looper}.
+ */
+public class HandlerThread extends Thread {
+
+    private Looper looper;
+
+    public HandlerThread(String name) {
+        super(name);
+    }
+
+    @Override
+    public void run() {
+        Looper.prepare();
+        synchronized (this) {
+            looper = Looper.myLooper();
+            notifyAll();
+        }
+        Looper.loop();
+    }
+
+    public Looper getLooper() {
+        if (!isAlive()) {
+            return null;
+        }
+        synchronized (this) {
+            while (isAlive() && looper == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // Keep waiting, as the Android HandlerThread does.
+                }
+            }
+        }
+        return looper;
+    }
+
+    public boolean quit() {
+        final Looper looper = getLooper();
+        if (looper != null) {
+            looper.quit();
+            return true;
+        }
+        return false;
+    }
+}
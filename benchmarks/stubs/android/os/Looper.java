@@ -0,0 +1,139 @@
+package android.os;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Stand-in for the Android Looper: runs the tasks posted by the {@link Handler}s
+ * of a thread in the order of their time, and the idle handlers of its
+ * {@link MessageQueue} when it has nothing to do.
+ */
+public final class Looper {
+
+    private static final ThreadLocal<Looper> looper = new ThreadLocal<Looper>();
+    private static Looper mainLooper;
+
+    private final MessageQueue queue = new MessageQueue();
+    private final Thread thread = Thread.currentThread();
+    private final PriorityQueue<Task> tasks = new PriorityQueue<Task>();
+    private long sequence;
+    private boolean quit;
+
+    private Looper() {
+    }
+
+    public static void prepare() {
+        if (looper.get() != null) {
+            throw new RuntimeException("Only one Looper may be created per thread");
+        }
+        looper.set(new Looper());
+    }
+
+    public static synchronized void prepareMainLooper() {
+        prepare();
+        mainLooper = myLooper();
+    }
+
+    public static synchronized Looper getMainLooper() {
+        return mainLooper;
+    }
+
+    public static Looper myLooper() {
+        return looper.get();
+    }
+
+    public static MessageQueue myQueue() {
+        return myLooper().queue;
+    }
+
+    public static void loop() {
+        myLooper().run();
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public void quit() {
+        synchronized (tasks) {
+            quit = true;
+            tasks.notifyAll();
+        }
+    }
+
+    boolean post(Runnable runnable, long uptimeMillis) {
+        synchronized (tasks) {
+            if (quit) {
+                return false;
+            }
+            tasks.add(new Task(runnable, uptimeMillis, sequence++));
+            tasks.notifyAll();
+            return true;
+        }
+    }
+
+    void remove(Runnable runnable) {
+        synchronized (tasks) {
+            for (Iterator<Task> i = tasks.iterator(); i.hasNext();) {
+                if (i.next().runnable == runnable) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final Task task;
+            synchronized (tasks) {
+                if (quit) {
+                    return;
+                }
+                task = isTaskDue() ? tasks.poll() : null;
+            }
+            if (task != null) {
+                task.runnable.run();
+                continue;
+            }
+            queue.runIdleHandlers();
+            // Wait for a task before running the idle handlers again.
+            synchronized (tasks) {
+                while (!quit && !isTaskDue()) {
+                    try {
+                        if (tasks.isEmpty()) {
+                            tasks.wait();
+                        } else {
+                            tasks.wait(Math.max(1, tasks.peek().when - SystemClock.uptimeMillis()));
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isTaskDue() {
+        return !tasks.isEmpty() && tasks.peek().when <= SystemClock.uptimeMillis();
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final Runnable runnable;
+        final long when;
+        final long sequence;
+
+        Task(Runnable runnable, long when, long sequence) {
+            this.runnable = runnable;
+            this.when = when;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (when != other.when) {
+                return when < other.when ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+}
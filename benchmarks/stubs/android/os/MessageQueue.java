@@ -0,0 +1,44 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Android MessageQueue, holding the idle handlers of a
+ * {@link Looper}.
+ */
+public final class MessageQueue {
+
+    public static interface IdleHandler {
+        boolean queueIdle();
+    }
+
+    private final List<IdleHandler> idleHandlers = new ArrayList<IdleHandler>();
+
+    MessageQueue() {
+    }
+
+    public void addIdleHandler(IdleHandler handler) {
+        synchronized (idleHandlers) {
+            idleHandlers.add(handler);
+        }
+    }
+
+    public void removeIdleHandler(IdleHandler handler) {
+        synchronized (idleHandlers) {
+            idleHandlers.remove(handler);
+        }
+    }
+
+    void runIdleHandlers() {
+        final IdleHandler[] handlers;
+        synchronized (idleHandlers) {
+            handlers = idleHandlers.toArray(new IdleHandler[idleHandlers.size()]);
+        }
+        for (IdleHandler handler : handlers) {
+            if (!handler.queueIdle()) {
+                removeIdleHandler(handler);
+            }
+        }
+    }
+}
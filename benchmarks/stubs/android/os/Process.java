@@ -0,0 +1,27 @@
+package android.os;
+
+/**
+ * Stand-in for the Android Process. The JVM can't be killed from ACRA.
+ */
+public class Process {
+
+    private static final int PID = parsePid();
+
+    public static int myPid() {
+        return PID;
+    }
+
+    public static void killProcess(int pid) {
+        throw new UnsupportedOperationException("Process.killProcess(" + pid + ")");
+    }
+
+    private static int parsePid() {
+        // The runtime name is pid@host on HotSpot.
+        final String name = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.indexOf('@')));
+        } catch (RuntimeException e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * Stand-in for the Android StatFs, based on java.io.File.
+ */
+public class StatFs {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private final File path;
+
+    public StatFs(String path) {
+        this.path = new File(path);
+    }
+
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    public int getBlockCount() {
+        return (int) (path.getTotalSpace() / BLOCK_SIZE);
+    }
+
+    public int getAvailableBlocks() {
+        return (int) (path.getUsableSpace() / BLOCK_SIZE);
+    }
+}
@@ -0,0 +1,69 @@
+package android.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.ContentResolver;
+
+/**
+ * Stand-in for the Android Settings, with a few settings of each table. The
+ * keys are not compile time constants, so that the collectors find them by
+ * reflection.
+ */
+public final class Settings {
+
+    private static final Map<String, String> values = new HashMap<String, String>();
+
+    static {
+        values.put("accelerometer_rotation", "1");
+        values.put("screen_brightness", "102");
+        values.put("screen_off_timeout", "60000");
+        values.put("time_12_24", "24");
+        values.put("android_id", "0123456789abcdef");
+        values.put("default_input_method", "com.android.inputmethod.latin/.LatinIME");
+        values.put("location_providers_allowed", "gps,network");
+        values.put("adb_enabled", "1");
+        values.put("airplane_mode_on", "0");
+        values.put("auto_time", "1");
+        values.put("wifi_on", "1");
+    }
+
+    private Settings() {
+    }
+
+    private static String key(String key) {
+        return key;
+    }
+
+    public static final class System {
+        public static final String ACCELEROMETER_ROTATION = key("accelerometer_rotation");
+        public static final String SCREEN_BRIGHTNESS = key("screen_brightness");
+        public static final String SCREEN_OFF_TIMEOUT = key("screen_off_timeout");
+        public static final String TIME_12_24 = key("time_12_24");
+
+        public static String getString(ContentResolver resolver, String name) {
+            return values.get(name);
+        }
+    }
+
+    public static final class Secure {
+        public static final String ANDROID_ID = key("android_id");
+        public static final String DEFAULT_INPUT_METHOD = key("default_input_method");
+        public static final String LOCATION_PROVIDERS_ALLOWED = key("location_providers_allowed");
+
+        public static String getString(ContentResolver resolver, String name) {
+            return values.get(name);
+        }
+    }
+
+    public static final class Global {
+        public static final String ADB_ENABLED = key("adb_enabled");
+        public static final String AIRPLANE_MODE_ON = key("airplane_mode_on");
+        public static final String AUTO_TIME = key("auto_time");
+        public static final String WIFI_ON = key("wifi_on");
+
+        public static String getString(ContentResolver resolver, String name) {
+            return values.get(name);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package android.text;
+
+/**
+ * Stand-in for the Android TextUtils.
+ */
+public class TextUtils {
+
+    private TextUtils() {
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static String join(CharSequence delimiter, Object[] tokens) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                result.append(delimiter);
+            }
+            result.append(tokens[i]);
+        }
+        return result.toString();
+    }
+}
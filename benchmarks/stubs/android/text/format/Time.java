@@ -0,0 +1,24 @@
+package android.text.format;
+
+/**
+ * Stand-in for the Android Time, keeping only the time in milliseconds.
+ */
+public class Time {
+
+    private long millis;
+
+    public Time() {
+    }
+
+    public void setToNow() {
+        millis = System.currentTimeMillis();
+    }
+
+    public void set(long millis) {
+        this.millis = millis;
+    }
+
+    public long toMillis(boolean ignoreDst) {
+        return millis;
+    }
+}
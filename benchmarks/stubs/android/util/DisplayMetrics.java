@@ -0,0 +1,25 @@
+package android.util;
+
+/**
+ * Stand-in for the Android DisplayMetrics.
+ */
+public class DisplayMetrics {
+
+    public static final int DENSITY_LOW = 120;
+    public static final int DENSITY_MEDIUM = 160;
+    public static final int DENSITY_HIGH = 240;
+    public static final int DENSITY_XHIGH = 320;
+    public static final int DENSITY_XXHIGH = 480;
+    public static final int DENSITY_DEFAULT = DENSITY_MEDIUM;
+
+    public int widthPixels;
+    public int heightPixels;
+    public float density;
+    public int densityDpi;
+    public float scaledDensity;
+    public float xdpi;
+    public float ydpi;
+
+    public DisplayMetrics() {
+    }
+}
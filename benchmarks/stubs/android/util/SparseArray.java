@@ -0,0 +1,48 @@
+package android.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for the Android SparseArray, backed by a TreeMap.
+ */
+public class SparseArray<E> {
+
+    private final TreeMap<Integer, E> values = new TreeMap<Integer, E>();
+
+    public E get(int key) {
+        return values.get(key);
+    }
+
+    public E get(int key, E valueIfKeyNotFound) {
+        final E value = values.get(key);
+        return value != null ? value : valueIfKeyNotFound;
+    }
+
+    public void put(int key, E value) {
+        values.put(key, value);
+    }
+
+    public void remove(int key) {
+        values.remove(key);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public int keyAt(int index) {
+        return entry(index).getKey();
+    }
+
+    public E valueAt(int index) {
+        return entry(index).getValue();
+    }
+
+    private Map.Entry<Integer, E> entry(int index) {
+        final List<Map.Entry<Integer, E>> entries = new ArrayList<Map.Entry<Integer, E>>(values.entrySet());
+        return entries.get(index);
+    }
+}
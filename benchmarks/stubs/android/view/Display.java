@@ -0,0 +1,93 @@
+package android.view;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.DisplayMetrics;
+
+/**
+ * Stand-in for the Android Display, describing a 1080x1920 portrait screen.
+ */
+public class Display {
+
+    public static final int DEFAULT_DISPLAY = 0;
+    public static final int FLAG_SUPPORTS_PROTECTED_BUFFERS = 1 << 0;
+    public static final int FLAG_SECURE = 1 << 1;
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    public Display() {
+    }
+
+    public int getDisplayId() {
+        return DEFAULT_DISPLAY;
+    }
+
+    public String getName() {
+        return "Built-in Screen";
+    }
+
+    public boolean isValid() {
+        return true;
+    }
+
+    public int getFlags() {
+        return FLAG_SUPPORTS_PROTECTED_BUFFERS | FLAG_SECURE;
+    }
+
+    public int getWidth() {
+        return WIDTH;
+    }
+
+    public int getHeight() {
+        return HEIGHT;
+    }
+
+    public void getSize(Point outSize) {
+        outSize.set(WIDTH, HEIGHT);
+    }
+
+    public void getRealSize(Point outSize) {
+        outSize.set(WIDTH, HEIGHT);
+    }
+
+    public void getRectSize(Rect outSize) {
+        outSize.set(0, 0, WIDTH, HEIGHT);
+    }
+
+    public void getCurrentSizeRange(Point outSmallestSize, Point outLargestSize) {
+        outSmallestSize.set(WIDTH, WIDTH);
+        outLargestSize.set(HEIGHT, HEIGHT);
+    }
+
+    public int getRotation() {
+        return 0;
+    }
+
+    @Deprecated
+    public int getOrientation() {
+        return getRotation();
+    }
+
+    public int getPixelFormat() {
+        return 1;
+    }
+
+    public float getRefreshRate() {
+        return 60;
+    }
+
+    public void getMetrics(DisplayMetrics outMetrics) {
+        outMetrics.widthPixels = WIDTH;
+        outMetrics.heightPixels = HEIGHT;
+        outMetrics.density = 3;
+        outMetrics.densityDpi = DisplayMetrics.DENSITY_XXHIGH;
+        outMetrics.scaledDensity = 3;
+        outMetrics.xdpi = 440;
+        outMetrics.ydpi = 440;
+    }
+
+    public void getRealMetrics(DisplayMetrics outMetrics) {
+        getMetrics(outMetrics);
+    }
+}
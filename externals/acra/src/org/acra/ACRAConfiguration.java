@@ -18,7 +18,12 @@ package org.acra;
 
 import static org.acra.ACRAConstants.DEFAULT_APPLICATION_LOGFILE;
 import static org.acra.ACRAConstants.DEFAULT_APPLICATION_LOGFILE_LINES;
+import static org.acra.ACRAConstants.DEFAULT_COALESCE_SILENT_EXCEPTIONS;
+import static org.acra.ACRAConstants.DEFAULT_COMPRESS_REPORTS;
 import static org.acra.ACRAConstants.DEFAULT_CONNECTION_TIMEOUT;
+import static org.acra.ACRAConstants.DEFAULT_CRASH_LOOP_THRESHOLD;
+import static org.acra.ACRAConstants.DEFAULT_CRASH_LOOP_WINDOW;
+import static org.acra.ACRAConstants.DEFAULT_DEFER_STARTUP_CHECKS;
 import static org.acra.ACRAConstants.DEFAULT_DELETE_OLD_UNSENT_REPORTS_ON_APPLICATION_START;
 import static org.acra.ACRAConstants.DEFAULT_DELETE_UNAPPROVED_REPORTS_ON_APPLICATION_START;
 import static org.acra.ACRAConstants.DEFAULT_DIALOG_ICON;
@@ -29,11 +34,17 @@ import static org.acra.ACRAConstants.DEFAULT_GOOGLE_FORM_URL_FORMAT;
 import static org.acra.ACRAConstants.DEFAULT_INCLUDE_DROPBOX_SYSTEM_TAGS;
 import static org.acra.ACRAConstants.DEFAULT_LOGCAT_FILTER_BY_PID;
 import static org.acra.ACRAConstants.DEFAULT_LOGCAT_LINES;
+import static org.acra.ACRAConstants.DEFAULT_MAX_FIELD_SIZE;
 import static org.acra.ACRAConstants.DEFAULT_MAX_NUMBER_OF_REQUEST_RETRIES;
+import static org.acra.ACRAConstants.DEFAULT_MAX_REPORT_SIZE;
 import static org.acra.ACRAConstants.DEFAULT_NOTIFICATION_ICON;
 import static org.acra.ACRAConstants.DEFAULT_RES_VALUE;
+import static org.acra.ACRAConstants.DEFAULT_SENDER_TIMEOUT;
 import static org.acra.ACRAConstants.DEFAULT_SEND_REPORTS_IN_DEV_MODE;
 import static org.acra.ACRAConstants.DEFAULT_SHARED_PREFERENCES_MODE;
+import static org.acra.ACRAConstants.DEFAULT_SILENT_EXCEPTION_FULL_REPORTS;
+import static org.acra.ACRAConstants.DEFAULT_SILENT_EXCEPTION_WINDOW;
+import static org.acra.ACRAConstants.DEFAULT_SNAPSHOT_SHARED_PREFERENCES;
 import static org.acra.ACRAConstants.DEFAULT_SOCKET_TIMEOUT;
 import static org.acra.ACRAConstants.DEFAULT_STRING_VALUE;
 import static org.acra.ACRAConstants.NULL_VALUE;
@@ -42,10 +53,16 @@ import org.acra.annotation.ReportsCrashes;
 import org.acra.sender.HttpSender;
 import org.acra.sender.HttpSender.Method;
 import org.acra.sender.HttpSender.Type;
+import org.acra.util.HttpTransport;
+import org.acra.util.ProcessFactory;
 
 import java.lang.annotation.Annotation;
 import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is to be used if you need to apply dynamic settings. This is
@@ -107,8 +124,27 @@ public class ACRAConfiguration implements ReportsCrashes {
     private Boolean mDisableSSLCertValidation = null;
     private Method mHttpMethod = null;
     private Type mReportType = null;
+    private Integer mCrashLoopWindow = null;
+    private Integer mCrashLoopThreshold = null;
+    private Boolean mDeferStartupChecks = null;
+    private Integer mSenderTimeout = null;
+    private Integer mMaxReportSize = null;
+    private Integer mMaxFieldSize = null;
+    private Boolean mSnapshotSharedPreferences = null;
+    private Integer mSilentExceptionWindow = null;
+    private Integer mSilentExceptionFullReports = null;
+    private Boolean mCoalesceSilentExceptions = null;
+    private Boolean mCompressReports = null;
     private Map<String, String> mHttpHeaders;
     private KeyStore mKeyStore;
+    private HttpTransport mHttpTransport;
+    private ProcessFactory mProcessFactory;
+
+    /**
+     * Fields to collect, computed on first use from
+     * {@link #customReportContent()} and {@link #mailTo()}.
+     */
+    private volatile Set<ReportField> mReportFields;
 
     /**
      * Set custom HTTP headers to be sent by the provided {@link HttpSender}.
@@ -161,6 +197,7 @@ public class ACRAConfiguration implements ReportsCrashes {
      */
     public ACRAConfiguration setCustomReportContent(ReportField[] customReportContent) {
         this.mCustomReportContent = customReportContent;
+        mReportFields = null;
         return this;
     }
 
@@ -267,6 +304,7 @@ public class ACRAConfiguration implements ReportsCrashes {
      */
     public ACRAConfiguration setMailTo(String mailTo) {
         this.mMailTo = mailTo;
+        mReportFields = null;
         return this;
     }
 
@@ -558,10 +596,174 @@ public class ACRAConfiguration implements ReportsCrashes {
     }
 
     /**
-     * @param defaults
+     * @param compressReports Set this to true to gzip the body of the requests
+     *            sent by the HttpSender. Your server must decode request
+     *            bodies sent with Content-Encoding: gzip.
+     */
+    public ACRAConfiguration setCompressReports(boolean compressReports) {
+        mCompressReports = compressReports;
+        return this;
+    }
+
+    /**
+     * @param coalesceSilentExceptions true to coalesce recurring silent
+     *            exceptions.
+     */
+    public ACRAConfiguration setCoalesceSilentExceptions(boolean coalesceSilentExceptions) {
+        mCoalesceSilentExceptions = coalesceSilentExceptions;
+        return this;
+    }
+
+    /**
+     * @param silentExceptionFullReports Number of full reports per fingerprint
+     *            and window.
+     */
+    public ACRAConfiguration setSilentExceptionFullReports(int silentExceptionFullReports) {
+        mSilentExceptionFullReports = silentExceptionFullReports;
+        return this;
+    }
+
+    /**
+     * @param silentExceptionWindow Duration of the coalescing window in
+     *            milliseconds.
+     */
+    public ACRAConfiguration setSilentExceptionWindow(int silentExceptionWindow) {
+        mSilentExceptionWindow = silentExceptionWindow;
+        return this;
+    }
+
+    /**
+     * @param snapshotSharedPreferences true to snapshot SharedPreferences in
+     *            memory.
+     */
+    public ACRAConfiguration setSnapshotSharedPreferences(boolean snapshotSharedPreferences) {
+        mSnapshotSharedPreferences = snapshotSharedPreferences;
+        return this;
+    }
+
+    /**
+     * @param maxFieldSize Maximum length in characters of each field of a
+     *            report, 0 for no limit.
+     */
+    public ACRAConfiguration setMaxFieldSize(int maxFieldSize) {
+        mMaxFieldSize = maxFieldSize;
+        return this;
+    }
+
+    /**
+     * @param maxReportSize Maximum total length in characters of a report, 0
+     *            for no limit.
+     */
+    public ACRAConfiguration setMaxReportSize(int maxReportSize) {
+        mMaxReportSize = maxReportSize;
+        return this;
+    }
+
+    /**
+     * @param senderTimeout Maximum duration in milliseconds of the sending of
+     *            reports by each sender.
+     */
+    public ACRAConfiguration setSenderTimeout(int senderTimeout) {
+        mSenderTimeout = senderTimeout;
+        return this;
+    }
+
+    /**
+     * @param deferStartupChecks True to check the pending reports in the
+     *            background once the main thread is idle.
+     */
+    public ACRAConfiguration setDeferStartupChecks(boolean deferStartupChecks) {
+        mDeferStartupChecks = deferStartupChecks;
+        return this;
+    }
+
+    /**
+     * @param crashLoopThreshold Number of consecutive startup crashes making a
+     *            crash loop, 0 to disable the detection.
+     */
+    public ACRAConfiguration setCrashLoopThreshold(int crashLoopThreshold) {
+        mCrashLoopThreshold = crashLoopThreshold;
+        return this;
+    }
+
+    /**
+     * @param crashLoopWindow Duration in milliseconds after the application
+     *            start during which a crash counts towards a crash loop.
+     */
+    public ACRAConfiguration setCrashLoopWindow(int crashLoopWindow) {
+        mCrashLoopWindow = crashLoopWindow;
+        return this;
+    }
+
+    /**
+     * @param defaults Values used for the settings which are not set, usually
+     *            the {@link ReportsCrashes} annotation of the application. They
+     *            are copied once, so that the getters don't call the annotation
+     *            proxy which is reflective and slow.
      */
     public ACRAConfiguration(ReportsCrashes defaults) {
         mReportsCrashes = defaults;
+        if (defaults != null) {
+            copyValues(defaults);
+        }
+    }
+
+    private void copyValues(ReportsCrashes defaults) {
+        mAdditionalDropboxTags = defaults.additionalDropBoxTags();
+        mAdditionalSharedPreferences = defaults.additionalSharedPreferences();
+        mConnectionTimeout = defaults.connectionTimeout();
+        mCustomReportContent = defaults.customReportContent();
+        mDeleteUnapprovedReportsOnApplicationStart = defaults.deleteUnapprovedReportsOnApplicationStart();
+        mDeleteOldUnsentReportsOnApplicationStart = defaults.deleteOldUnsentReportsOnApplicationStart();
+        mDropboxCollectionMinutes = defaults.dropboxCollectionMinutes();
+        mForceCloseDialogAfterToast = defaults.forceCloseDialogAfterToast();
+        mFormKey = defaults.formKey();
+        mFormUri = defaults.formUri();
+        mFormUriBasicAuthLogin = defaults.formUriBasicAuthLogin();
+        mFormUriBasicAuthPassword = defaults.formUriBasicAuthPassword();
+        mIncludeDropboxSystemTags = defaults.includeDropBoxSystemTags();
+        mLogcatArguments = defaults.logcatArguments();
+        mMailTo = defaults.mailTo();
+        mMaxNumberOfRequestRetries = defaults.maxNumberOfRequestRetries();
+        mMode = defaults.mode();
+        mResDialogPositiveButtonText = defaults.resDialogPositiveButtonText();
+        mResDialogNegativeButtonText = defaults.resDialogNegativeButtonText();
+        mResDialogCommentPrompt = defaults.resDialogCommentPrompt();
+        mResDialogEmailPrompt = defaults.resDialogEmailPrompt();
+        mResDialogIcon = defaults.resDialogIcon();
+        mResDialogOkToast = defaults.resDialogOkToast();
+        mResDialogText = defaults.resDialogText();
+        mResDialogTitle = defaults.resDialogTitle();
+        mResNotifIcon = defaults.resNotifIcon();
+        mResNotifText = defaults.resNotifText();
+        mResNotifTickerText = defaults.resNotifTickerText();
+        mResNotifTitle = defaults.resNotifTitle();
+        mResToastText = defaults.resToastText();
+        mSharedPreferenceMode = defaults.sharedPreferencesMode();
+        mSharedPreferenceName = defaults.sharedPreferencesName();
+        mSocketTimeout = defaults.socketTimeout();
+        mLogcatFilterByPid = defaults.logcatFilterByPid();
+        mSendReportsInDevMode = defaults.sendReportsInDevMode();
+        mExcludeMatchingSharedPreferencesKeys = defaults.excludeMatchingSharedPreferencesKeys();
+        mExcludeMatchingSettingsKeys = defaults.excludeMatchingSettingsKeys();
+        mApplicationLogFile = defaults.applicationLogFile();
+        mApplicationLogFileLines = defaults.applicationLogFileLines();
+        mGoogleFormUrlFormat = defaults.googleFormUrlFormat();
+        mDisableSSLCertValidation = defaults.disableSSLCertValidation();
+        mHttpMethod = defaults.httpMethod();
+        mReportType = defaults.reportType();
+        mCompressReports = defaults.compressReports();
+        mCoalesceSilentExceptions = defaults.coalesceSilentExceptions();
+        mSilentExceptionFullReports = defaults.silentExceptionFullReports();
+        mSilentExceptionWindow = defaults.silentExceptionWindow();
+        mSnapshotSharedPreferences = defaults.snapshotSharedPreferences();
+        mMaxFieldSize = defaults.maxFieldSize();
+        mMaxReportSize = defaults.maxReportSize();
+        mSenderTimeout = defaults.senderTimeout();
+        mDeferStartupChecks = defaults.deferStartupChecks();
+        mCrashLoopThreshold = defaults.crashLoopThreshold();
+        mCrashLoopWindow = defaults.crashLoopWindow();
+        mSavePath = defaults.savePath();
     }
 
     /**
@@ -1145,6 +1347,175 @@ public class ACRAConfiguration implements ReportsCrashes {
         return Type.FORM;
     }
 
+    @Override
+    public boolean compressReports() {
+        if (mCompressReports != null) {
+            return mCompressReports;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.compressReports();
+        }
+
+        return DEFAULT_COMPRESS_REPORTS;
+    }
+
+    @Override
+    public boolean coalesceSilentExceptions() {
+        if (mCoalesceSilentExceptions != null) {
+            return mCoalesceSilentExceptions;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.coalesceSilentExceptions();
+        }
+
+        return DEFAULT_COALESCE_SILENT_EXCEPTIONS;
+    }
+
+    @Override
+    public int silentExceptionFullReports() {
+        if (mSilentExceptionFullReports != null) {
+            return mSilentExceptionFullReports;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.silentExceptionFullReports();
+        }
+
+        return DEFAULT_SILENT_EXCEPTION_FULL_REPORTS;
+    }
+
+    @Override
+    public int silentExceptionWindow() {
+        if (mSilentExceptionWindow != null) {
+            return mSilentExceptionWindow;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.silentExceptionWindow();
+        }
+
+        return DEFAULT_SILENT_EXCEPTION_WINDOW;
+    }
+
+    @Override
+    public boolean snapshotSharedPreferences() {
+        if (mSnapshotSharedPreferences != null) {
+            return mSnapshotSharedPreferences;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.snapshotSharedPreferences();
+        }
+
+        return DEFAULT_SNAPSHOT_SHARED_PREFERENCES;
+    }
+
+    @Override
+    public int maxFieldSize() {
+        if (mMaxFieldSize != null) {
+            return mMaxFieldSize;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.maxFieldSize();
+        }
+
+        return DEFAULT_MAX_FIELD_SIZE;
+    }
+
+    @Override
+    public int maxReportSize() {
+        if (mMaxReportSize != null) {
+            return mMaxReportSize;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.maxReportSize();
+        }
+
+        return DEFAULT_MAX_REPORT_SIZE;
+    }
+
+    @Override
+    public int senderTimeout() {
+        if (mSenderTimeout != null) {
+            return mSenderTimeout;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.senderTimeout();
+        }
+
+        return DEFAULT_SENDER_TIMEOUT;
+    }
+
+    @Override
+    public boolean deferStartupChecks() {
+        if (mDeferStartupChecks != null) {
+            return mDeferStartupChecks;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.deferStartupChecks();
+        }
+
+        return DEFAULT_DEFER_STARTUP_CHECKS;
+    }
+
+    @Override
+    public int crashLoopThreshold() {
+        if (mCrashLoopThreshold != null) {
+            return mCrashLoopThreshold;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.crashLoopThreshold();
+        }
+
+        return DEFAULT_CRASH_LOOP_THRESHOLD;
+    }
+
+    @Override
+    public int crashLoopWindow() {
+        if (mCrashLoopWindow != null) {
+            return mCrashLoopWindow;
+        }
+
+        if (mReportsCrashes != null) {
+            return mReportsCrashes.crashLoopWindow();
+        }
+
+        return DEFAULT_CRASH_LOOP_WINDOW;
+    }
+
+    /**
+     * @return The fields to collect in reports: {@link #customReportContent()}
+     *         if set, otherwise {@link ACRAConstants#DEFAULT_REPORT_FIELDS}, or
+     *         {@link ACRAConstants#DEFAULT_MAIL_REPORT_FIELDS} when reports are
+     *         sent by email. The set is not modifiable.
+     */
+    public Set<ReportField> getReportFields() {
+        Set<ReportField> reportFields = mReportFields;
+        if (reportFields == null) {
+            final ReportField[] customReportFields = customReportContent();
+            final ReportField[] fieldsList;
+            if (customReportFields.length != 0) {
+                fieldsList = customReportFields;
+            } else if (mailTo() == null || "".equals(mailTo())) {
+                fieldsList = ACRAConstants.DEFAULT_REPORT_FIELDS;
+            } else {
+                fieldsList = ACRAConstants.DEFAULT_MAIL_REPORT_FIELDS;
+            }
+            final Set<ReportField> fields = EnumSet.noneOf(ReportField.class);
+            fields.addAll(Arrays.asList(fieldsList));
+            reportFields = Collections.unmodifiableSet(fields);
+            mReportFields = reportFields;
+        }
+        return reportFields;
+    }
+
     public KeyStore keyStore() {
         if (mKeyStore != null) {
             return mKeyStore;
@@ -1153,6 +1524,45 @@ public class ACRAConfiguration implements ReportsCrashes {
         return null;
     }
 
+    /**
+     * Replace the transport used to send HTTP requests by {@link HttpSender}
+     * and the other senders based on {@link org.acra.util.HttpRequest}. The
+     * transport is shared by all requests and must be thread safe.
+     * 
+     * @param transport The transport to use, or null to use the default one.
+     */
+    public ACRAConfiguration setHttpTransport(HttpTransport transport) {
+        mHttpTransport = transport;
+        return this;
+    }
+
+    /**
+     * @return The transport set with {@link #setHttpTransport(HttpTransport)},
+     *         null if the default one should be used.
+     */
+    public HttpTransport httpTransport() {
+        return mHttpTransport;
+    }
+
+    /**
+     * Replace the factory starting the logcat and dumpsys processes of the
+     * collectors.
+     * 
+     * @param factory The factory to use, or null to use the default one.
+     */
+    public ACRAConfiguration setProcessFactory(ProcessFactory factory) {
+        mProcessFactory = factory;
+        return this;
+    }
+
+    /**
+     * @return The factory set with {@link #setProcessFactory(ProcessFactory)},
+     *         or {@link ProcessFactory#DEFAULT}.
+     */
+    public ProcessFactory processFactory() {
+        return mProcessFactory != null ? mProcessFactory : ProcessFactory.DEFAULT;
+    }
+
     public static boolean isNull(String aString) {
         return aString == null || ACRAConstants.NULL_VALUE.equals(aString);
     }
@@ -46,6 +46,29 @@ public final class ACRAConstants {
      * The number of reports is limited to avoid ANR on application start.
      */
     static final int MAX_SEND_REPORTS = 5;
+    /**
+     * Name of the file, stored next to the reports, which keeps track of the
+     * send attempts of each report.
+     */
+    static final String REPORT_INDEX_FILE_NAME = "ACRA-report-index.properties";
+    /**
+     * Delay before the first retry of a report which could not be sent. It is
+     * doubled after each failed attempt.
+     */
+    static final long RETRY_BASE_DELAY = 60 * 1000;
+    /**
+     * Maximum delay between two attempts to send a report.
+     */
+    static final long RETRY_MAX_DELAY = 6 * 60 * 60 * 1000;
+    /**
+     * Number of attempts to send a report with the senders which failed, once
+     * another sender has sent it. The report is then deleted.
+     */
+    static final int MAX_FAILED_SENDER_ATTEMPTS = 3;
+    /**
+     * Reports older than this are deleted without being sent.
+     */
+    static final long MAX_REPORT_AGE = 7 * 24 * 60 * 60 * 1000L;
     /**
      * Used in the intent starting CrashReportDialog to provide the name of the
      * latest generated report file in order to be able to associate the user
@@ -119,6 +142,28 @@ public final class ACRAConstants {
 
     public static final boolean DEFAULT_DISABLE_SSL_CERT_VALIDATION = false;
 
+    public static final boolean DEFAULT_COMPRESS_REPORTS = false;
+
+    public static final boolean DEFAULT_COALESCE_SILENT_EXCEPTIONS = false;
+
+    public static final int DEFAULT_SILENT_EXCEPTION_FULL_REPORTS = 3;
+
+    public static final int DEFAULT_SILENT_EXCEPTION_WINDOW = 10 * 60 * 1000;
+
+    public static final boolean DEFAULT_SNAPSHOT_SHARED_PREFERENCES = false;
+
+    public static final int DEFAULT_MAX_FIELD_SIZE = 128 * 1024;
+
+    public static final int DEFAULT_MAX_REPORT_SIZE = 512 * 1024;
+
+    public static final int DEFAULT_SENDER_TIMEOUT = 60 * 1000;
+
+    public static final boolean DEFAULT_DEFER_STARTUP_CHECKS = false;
+
+    public static final int DEFAULT_CRASH_LOOP_THRESHOLD = 3;
+
+    public static final int DEFAULT_CRASH_LOOP_WINDOW = 15 * 1000;
+
     /**
      * Default list of {@link ReportField}s to be sent in email reports. You can
      * set your own list with
@@ -139,7 +184,18 @@ public final class ACRAConstants {
             AVAILABLE_MEM_SIZE, BUILD_CONFIG, CUSTOM_DATA, IS_SILENT, STACK_TRACE, INITIAL_CONFIGURATION, CRASH_CONFIGURATION,
             DISPLAY, USER_COMMENT, USER_EMAIL, USER_APP_START_DATE, USER_CRASH_DATE, DUMPSYS_MEMINFO, LOGCAT,
             INSTALLATION_ID, DEVICE_FEATURES, ENVIRONMENT, SHARED_PREFERENCES, SETTINGS_SYSTEM, SETTINGS_SECURE,
-            SETTINGS_GLOBAL };
+            SETTINGS_GLOBAL, EXCEPTION_OCCURRENCES, TRUNCATED_FIELDS, CRASH_LOOP_COUNT };
+
+    /**
+     * Fields collected, among the configured ones, while the application is in
+     * a crash loop (see
+     * {@link org.acra.annotation.ReportsCrashes#crashLoopThreshold()}). They
+     * don't need any process, reflection or system service.
+     */
+    public static final ReportField[] MINIMAL_REPORT_FIELDS = { REPORT_ID, APP_VERSION_CODE, APP_VERSION_NAME,
+            PACKAGE_NAME, PHONE_MODEL, BRAND, PRODUCT, ANDROID_VERSION, CUSTOM_DATA, IS_SILENT, STACK_TRACE,
+            USER_APP_START_DATE, USER_CRASH_DATE, INSTALLATION_ID, EXCEPTION_OCCURRENCES, TRUNCATED_FIELDS,
+            CRASH_LOOP_COUNT };
 
     public static final String DATE_TIME_FORMAT_STRING = "yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ";
 }
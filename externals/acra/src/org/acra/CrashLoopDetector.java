@@ -0,0 +1,110 @@
+package org.acra;
+
+import static org.acra.ACRA.LOG_TAG;
+
+import org.acra.annotation.ReportsCrashes;
+import org.acra.util.ACRAExecutor;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Counts the consecutive crashes occurring shortly after the application
+ * start, to detect a crash loop (see {@link ReportsCrashes#crashLoopThreshold()}).
+ * <p>
+ * The count is persisted in the ACRA SharedPreferences. It is reset once the
+ * application has run for {@link ReportsCrashes#crashLoopWindow()} without
+ * crashing.
+ * </p>
+ */
+final class CrashLoopDetector {
+
+    /**
+     * Number of consecutive crashes within the window after the application
+     * start.
+     */
+    private static final String PREF_CRASH_LOOP_COUNT = "acra.crashLoopCount";
+
+    private final SharedPreferences prefs;
+    private final long startTime = SystemClock.elapsedRealtime();
+    private volatile int count;
+
+    /**
+     * @param prefs The ACRA SharedPreferences.
+     */
+    CrashLoopDetector(SharedPreferences prefs) {
+        this.prefs = prefs;
+        count = prefs.getInt(PREF_CRASH_LOOP_COUNT, 0);
+    }
+
+    /**
+     * @return True if the application is in a crash loop: it has crashed
+     *         {@link ReportsCrashes#crashLoopThreshold()} times in a row soon
+     *         after its start, and has not run long enough since then.
+     */
+    boolean isInCrashLoop() {
+        final int threshold = ACRA.getConfig().crashLoopThreshold();
+        return threshold > 0 && count >= threshold;
+    }
+
+    /**
+     * @return The number of consecutive crashes soon after the application
+     *         start.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Counts a crash, if it occurred soon enough after the application start.
+     * The count is written synchronously as the process is about to die.
+     */
+    synchronized void onCrash() {
+        final ReportsCrashes config = ACRA.getConfig();
+        if (config.crashLoopThreshold() <= 0) {
+            return;
+        }
+        count = SystemClock.elapsedRealtime() - startTime <= config.crashLoopWindow() ? count + 1 : 0;
+        prefs.edit().putInt(PREF_CRASH_LOOP_COUNT, count).commit();
+        if (isInCrashLoop()) {
+            Log.w(LOG_TAG, "Crash loop detected: " + count + " consecutive crashes on application start");
+        }
+    }
+
+    /**
+     * Resets the count once the application has run for
+     * {@link ReportsCrashes#crashLoopWindow()}, then runs a task.
+     *
+     * @param task Run on the ACRA executor once the application is considered
+     *            stable, or null.
+     */
+    void onStable(final Runnable task) {
+        if (task == null && (ACRA.getConfig().crashLoopThreshold() <= 0 || count == 0)) {
+            // Nothing to reset, don't start the ACRA looper for nothing.
+            return;
+        }
+        final long delay = Math.max(0, startTime + ACRA.getConfig().crashLoopWindow() - SystemClock.elapsedRealtime());
+        ACRAExecutor.getLooperHandler().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                ACRAExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        reset();
+                        if (task != null) {
+                            task.run();
+                        }
+                    }
+                });
+            }
+        }, delay);
+    }
+
+    private synchronized void reset() {
+        if (count != 0) {
+            count = 0;
+            prefs.edit().putInt(PREF_CRASH_LOOP_COUNT, 0).commit();
+        }
+    }
+}
@@ -193,16 +193,22 @@ public class CrashReportDialog extends Activity implements DialogInterface.OnCli
             usrEmail = "";
         }
 
-        final CrashReportPersister persister = new CrashReportPersister(getApplicationContext());
-        try {
-            Log.d(LOG_TAG, "Add user comment to " + mReportFileName);
-            final CrashReportData crashData = persister.load(mReportFileName, ACRA.getConfig()
-                    .savePath());
-            crashData.put(USER_COMMENT, comment);
-            crashData.put(USER_EMAIL, usrEmail);
-            persister.store(crashData, mReportFileName, ACRA.getConfig().savePath());
-        } catch (IOException e) {
-            Log.w(LOG_TAG, "User comment not added: ", e);
+        final CrashReportStore.Claim claim = new CrashReportStore(getApplicationContext(), ACRA.getConfig()
+                .savePath()).claim(mReportFileName);
+        if (claim == null) {
+            Log.w(LOG_TAG, "User comment not added: " + mReportFileName + " is being sent or has been deleted");
+        } else {
+            try {
+                Log.d(LOG_TAG, "Add user comment to " + mReportFileName);
+                final CrashReportData crashData = claim.load();
+                crashData.put(USER_COMMENT, comment);
+                crashData.put(USER_EMAIL, usrEmail);
+                claim.update(crashData);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "User comment not added: ", e);
+            } finally {
+                claim.release();
+            }
         }
 
         // Start the report sending task
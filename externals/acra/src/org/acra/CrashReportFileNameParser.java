@@ -49,4 +49,35 @@ final class CrashReportFileNameParser {
     public boolean isApproved(String reportFileName) {
         return isSilent(reportFileName) || reportFileName.contains(ACRAConstants.APPROVED_SUFFIX);
     }
+
+    /**
+     * Returns a key identifying the report whatever its approval state.
+     *
+     * @param reportFileName    Name of the report.
+     * @return The report file name without its approved suffix.
+     */
+    public String getReportKey(String reportFileName) {
+        return reportFileName.replace(ACRAConstants.APPROVED_SUFFIX, "");
+    }
+
+    /**
+     * Guess when a report has been created from the timestamp at the beginning of its file name.
+     *
+     * @param reportFileName    Name of the report.
+     * @return The creation time of the report in milliseconds, or -1 if the file name does not start with a timestamp.
+     */
+    public long getCreationTime(String reportFileName) {
+        int end = 0;
+        while (end < reportFileName.length() && Character.isDigit(reportFileName.charAt(end))) {
+            end++;
+        }
+        if (end == 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(reportFileName.substring(0, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 }
@@ -21,16 +21,10 @@ package org.acra;
 
 import org.acra.collector.CrashReportData;
 
-import android.content.Context;
-import android.text.TextUtils;
-import android.util.Log;
-
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -50,48 +44,25 @@ final class CrashReportPersister {
             IGNORE = 5;
     private static final String LINE_SEPARATOR = "\n";
 
-    private final Context context;
-
-    CrashReportPersister(Context context) {
-        this.context = context;
-    }
-
     /**
      * Loads properties from the specified {@code InputStream}. The encoding is
      * ISO8859-1.
      * 
-     * @param fileName Name of the report file from which to load the CrashData.
+     * @param in Stream from which to load the CrashData. It is not closed.
      * @return CrashReportData read from the supplied InputStream.
      * @throws java.io.IOException if error occurs during reading from the
      *             {@code InputStream}.
      */
-    public CrashReportData load(String fileName, String path) throws IOException {
+    public CrashReportData load(InputStream in) throws IOException {
+        final BufferedInputStream bis = new BufferedInputStream(in, ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+        bis.mark(Integer.MAX_VALUE);
+        final boolean isEbcdic = isEbcdic(bis);
+        bis.reset();
 
-        final FileInputStream in;
-        if (TextUtils.isEmpty(path)) {
-            in = context.openFileInput(fileName);
+        if (!isEbcdic) {
+            return load(new InputStreamReader(bis, "ISO8859-1")); //$NON-NLS-1$
         } else {
-            in = new FileInputStream(new File(path, fileName));
-        }
-
-        if (in == null) {
-            throw new IllegalArgumentException("Invalid crash report fileName : " + fileName);
-        }
-
-        try {
-            final BufferedInputStream bis = new BufferedInputStream(in,
-                    ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
-            bis.mark(Integer.MAX_VALUE);
-            final boolean isEbcdic = isEbcdic(bis);
-            bis.reset();
-
-            if (!isEbcdic) {
-                return load(new InputStreamReader(bis, "ISO8859-1")); //$NON-NLS-1$
-            } else {
-                return load(new InputStreamReader(bis)); //$NON-NLS-1$
-            }
-        } finally {
-            in.close();
+            return load(new InputStreamReader(bis)); //$NON-NLS-1$
         }
     }
 
@@ -101,42 +72,26 @@ final class CrashReportPersister {
      * method is suitable for being read by the load() method.
      * 
      * @param crashData CrashReportData to save.
-     * @param fileName Name of the file to which to store the CrashReportData.
+     * @param out Stream to which to store the CrashReportData. It is flushed
+     *            but not closed.
      * @throws java.io.IOException if the CrashReportData could not be written
      *             to the OutputStream.
      */
-    public void store(CrashReportData crashData, String fileName, String path) throws IOException {
-        final OutputStream out;
-        if (TextUtils.isEmpty(path)) {
-            out = context.openFileOutput(fileName, Context.MODE_PRIVATE);
-        } else {
-            File file = new File(path + "/" + fileName);
-            if (!file.exists()) {
-                file.createNewFile();
-            }
+    public void store(CrashReportData crashData, OutputStream out) throws IOException {
+        final StringBuilder buffer = new StringBuilder(200);
+        final OutputStreamWriter writer = new OutputStreamWriter(out, "ISO8859_1"); //$NON-NLS-1$
 
-            Log.d(ACRA.LOG_TAG, "PATH = " + file.getAbsolutePath());
-            out = new FileOutputStream(file, false);
-        }
-
-        try {
-            final StringBuilder buffer = new StringBuilder(200);
-            final OutputStreamWriter writer = new OutputStreamWriter(out, "ISO8859_1"); //$NON-NLS-1$
+        for (final Map.Entry<ReportField, String> entry : crashData.entrySet()) {
+            final String key = entry.getKey().toString();
+            dumpString(buffer, key, true);
+            buffer.append('=');
+            dumpString(buffer, entry.getValue(), false);
+            buffer.append(LINE_SEPARATOR);
 
-            for (final Map.Entry<ReportField, String> entry : crashData.entrySet()) {
-                final String key = entry.getKey().toString();
-                dumpString(buffer, key, true);
-                buffer.append('=');
-                dumpString(buffer, entry.getValue(), false);
-                buffer.append(LINE_SEPARATOR);
-
-                writer.write(buffer.toString());
-                buffer.setLength(0);
-            }
-            writer.flush();
-        } finally {
-            out.close();
+            writer.write(buffer.toString());
+            buffer.setLength(0);
         }
+        writer.flush();
     }
 
     private boolean isEbcdic(BufferedInputStream in) throws IOException {
@@ -0,0 +1,281 @@
+package org.acra;
+
+import static org.acra.ACRA.LOG_TAG;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.acra.collector.CrashReportData;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Reads, writes and changes the state of the crash report files, safely when
+ * several threads or processes work on the same reports directory.
+ * <p>
+ * Reports are written to a temporary file then renamed, so a report file is
+ * always complete. A report is read, approved, updated or deleted only through
+ * a {@link Claim}, which holds an exclusive lock on the report file. Threads of
+ * the same process are kept apart by the set of claimed files, as closing any
+ * descriptor of a file releases the locks held on it by the whole process.
+ * </p>
+ */
+final class CrashReportStore {
+
+    private static final String TMP_EXTENSION = ".tmp";
+
+    /**
+     * Paths of the report files claimed in this process.
+     */
+    private static final Set<String> claimedPaths = new HashSet<String>();
+
+    private final File dir;
+    private final String path;
+    private final CrashReportFinder reportFinder;
+    private final CrashReportPersister persister = new CrashReportPersister();
+
+    /**
+     * @param context The application context.
+     * @param path Directory of the reports, the application files directory if
+     *            empty.
+     */
+    CrashReportStore(Context context, String path) {
+        this.dir = TextUtils.isEmpty(path) ? context.getFilesDir() : new File(path);
+        this.path = path;
+        reportFinder = new CrashReportFinder(context);
+    }
+
+    /**
+     * @return The names of the pending reports, oldest first.
+     */
+    String[] list() {
+        final String[] reportFileNames = reportFinder.getCrashReportFiles(path);
+        Arrays.sort(reportFileNames);
+        return reportFileNames;
+    }
+
+    /**
+     * Writes a new report.
+     *
+     * @param fileName Name of the report file.
+     * @param crashData The report.
+     * @throws IOException if the report could not be written.
+     */
+    void save(String fileName, CrashReportData crashData) throws IOException {
+        write(new File(dir, fileName), crashData);
+    }
+
+    /**
+     * Claims a report for this thread.
+     *
+     * @param fileName Name of the report file.
+     * @return The claim, to be released, or null if the report has been
+     *         claimed by another thread or process, or does not exist anymore.
+     */
+    Claim claim(String fileName) {
+        final File file = new File(dir, fileName);
+        if (!file.exists() || !addClaimedPath(file)) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        Claim claim = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            final FileLock lock;
+            try {
+                lock = raf.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                return null;
+            }
+            if (lock == null) {
+                return null;
+            }
+            // The report may have been deleted or renamed while the lock was
+            // held elsewhere, in which case the open has created an empty
+            // file.
+            if (raf.length() == 0) {
+                if (!file.delete()) {
+                    Log.w(LOG_TAG, "Could not delete empty report " + file);
+                }
+                return null;
+            }
+            if (!file.exists()) {
+                return null;
+            }
+            claim = new Claim(file, raf);
+            return claim;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not lock report " + file, e);
+            return null;
+        } finally {
+            if (claim == null) {
+                if (raf != null) {
+                    close(raf);
+                }
+                removeClaimedPath(file);
+            }
+        }
+    }
+
+    /**
+     * Deletes a report unless it is claimed.
+     *
+     * @param fileName Name of the report file.
+     * @return True if the report has been deleted.
+     */
+    boolean delete(String fileName) {
+        final Claim claim = claim(fileName);
+        if (claim == null) {
+            return false;
+        }
+        try {
+            return claim.delete();
+        } finally {
+            claim.release();
+        }
+    }
+
+    private void write(File file, CrashReportData crashData) throws IOException {
+        final File tmpFile = new File(file.getPath() + TMP_EXTENSION);
+        final FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            persister.store(crashData, out);
+            // The report must be on disk before it is renamed.
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+    }
+
+    private static boolean addClaimedPath(File file) {
+        synchronized (claimedPaths) {
+            return claimedPaths.add(file.getPath());
+        }
+    }
+
+    private static void removeClaimedPath(File file) {
+        synchronized (claimedPaths) {
+            claimedPaths.remove(file.getPath());
+        }
+    }
+
+    private static void close(RandomAccessFile raf) {
+        try {
+            raf.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not close report file", e);
+        }
+    }
+
+    /**
+     * Exclusive access to a report until it is released.
+     */
+    final class Claim {
+
+        private File file;
+        private final RandomAccessFile raf;
+
+        private Claim(File file, RandomAccessFile raf) {
+            this.file = file;
+            this.raf = raf;
+        }
+
+        /**
+         * @return The current name of the report file.
+         */
+        String getFileName() {
+            return file.getName();
+        }
+
+        /**
+         * @return The content of the report.
+         * @throws IOException if the report could not be read.
+         */
+        CrashReportData load() throws IOException {
+            final FileChannel channel = raf.getChannel();
+            channel.position(0);
+            // The stream must not close the locked file.
+            return persister.load(new FilterInputStream(Channels.newInputStream(channel)) {
+                @Override
+                public void close() {
+                }
+            });
+        }
+
+        /**
+         * Replaces the content of the report. The claim should then be
+         * released, as it still reads the previous content.
+         *
+         * @param crashData The new content.
+         * @throws IOException if the report could not be written.
+         */
+        void update(CrashReportData crashData) throws IOException {
+            write(file, crashData);
+        }
+
+        /**
+         * Marks the report as approved by the user, if it was not already.
+         *
+         * @return False if the report could not be renamed.
+         */
+        boolean approve() {
+            final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
+            if (fileNameParser.isApproved(file.getName())) {
+                return true;
+            }
+            final String name = file.getName();
+            final String newName = name.substring(0, name.length() - ACRAConstants.REPORTFILE_EXTENSION.length())
+                    + ACRAConstants.APPROVED_SUFFIX + ACRAConstants.REPORTFILE_EXTENSION;
+            final File newFile = new File(file.getParentFile(), newName);
+            if (!addClaimedPath(newFile)) {
+                return false;
+            }
+            // The rename keeps the locked file, the lock is not lost.
+            if (!file.renameTo(newFile)) {
+                removeClaimedPath(newFile);
+                Log.e(LOG_TAG, "Could not rename approved report from " + file + " to " + newFile);
+                return false;
+            }
+            removeClaimedPath(file);
+            file = newFile;
+            return true;
+        }
+
+        /**
+         * Deletes the report. The claim still has to be released.
+         *
+         * @return False if the report could not be deleted.
+         */
+        boolean delete() {
+            if (!file.delete()) {
+                Log.w(LOG_TAG, "Could not delete error report : " + file.getName());
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Releases the lock on the report.
+         */
+        void release() {
+            close(raf);
+            removeClaimedPath(file);
+        }
+    }
+}
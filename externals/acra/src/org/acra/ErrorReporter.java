@@ -30,6 +30,7 @@ import org.acra.sender.EmailIntentSender;
 import org.acra.sender.GoogleFormSender;
 import org.acra.sender.HttpSender;
 import org.acra.sender.ReportSender;
+import org.acra.util.ACRAExecutor;
 import org.acra.util.PackageManagerWrapper;
 import org.acra.util.ToastSender;
 
@@ -44,8 +45,9 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Looper;
-import android.text.TextUtils;
+import android.os.MessageQueue;
 import android.text.format.Time;
 import android.util.Log;
 import android.widget.Toast;
@@ -54,8 +56,10 @@ import java.io.File;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -95,6 +99,21 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
 
     private final CrashReportDataFactory crashReportDataFactory;
 
+    /**
+     * Runs the report sending jobs and their retries.
+     */
+    private final SendScheduler sendScheduler;
+
+    /**
+     * Limits the reports built for recurring silent exceptions.
+     */
+    private final SilentExceptionCoalescer silentExceptionCoalescer;
+
+    /**
+     * Counts the crashes occurring on application start.
+     */
+    private final CrashLoopDetector crashLoopDetector;
+
     private final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
 
     // A reference to the system's previous default UncaughtExceptionHandler
@@ -106,12 +125,6 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
     private Throwable unhandledThrowable;
     private WeakReference<Activity> lastActivityCreated = new WeakReference<Activity>(null);
 
-    /**
-     * This is used to wait for the crash toast to end it's display duration
-     * before killing the Application.
-     */
-    private static boolean toastWaitEnded = true;
-
     private static final ExceptionHandlerInitializer NULL_EXCEPTION_HANDLER_INITIALIZER = new ExceptionHandlerInitializer() {
         @Override
         public void initializeExceptionHandler(ErrorReporter reporter) {
@@ -120,6 +133,12 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
 
     private volatile ExceptionHandlerInitializer exceptionHandlerInitializer = NULL_EXCEPTION_HANDLER_INITIALIZER;
 
+    /**
+     * Listeners waiting for the check of pending reports on application start,
+     * null once it is completed.
+     */
+    private List<StartupCheckListener> startupCheckListeners = new ArrayList<StartupCheckListener>();
+
     /**
      * Used to create a new (non-cached) PendingIntent each time a new crash
      * occurs.
@@ -209,6 +228,15 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
 
         crashReportDataFactory = new CrashReportDataFactory(mContext, prefs, appStartDate,
                 initialConfiguration);
+        sendScheduler = new SendScheduler(mContext, mReportSenders);
+        silentExceptionCoalescer = new SilentExceptionCoalescer(new SilentExceptionCoalescer.Reporter() {
+            @Override
+            public void report(Throwable e, String occurrences) {
+                handleException(e, ReportingInteractionMode.SILENT, true, false, occurrences);
+            }
+        });
+
+        crashLoopDetector = new CrashLoopDetector(prefs);
 
         // If mDfltExceptionHandler is not null, initialization is already done.
         // Don't do it twice to avoid losing the original handler.
@@ -216,7 +244,22 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         Thread.setDefaultUncaughtExceptionHandler(this);
 
         // Check for pending reports
-        checkReportsOnApplicationStart();
+        if (crashLoopDetector.isInCrashLoop()) {
+            // Sending reports may well crash the application again.
+            Log.w(LOG_TAG, "Application in a crash loop, pending reports will be checked once it is stable");
+            crashLoopDetector.onStable(new Runnable() {
+                @Override
+                public void run() {
+                    checkReportsOnApplicationStart();
+                }
+            });
+        } else if (ACRA.getConfig().deferStartupChecks()) {
+            crashLoopDetector.onStable(null);
+            deferReportsCheckOnApplicationStart();
+        } else {
+            crashLoopDetector.onStable(null);
+            checkReportsOnApplicationStart();
+        }
     }
 
     /**
@@ -301,6 +344,17 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
                 : NULL_EXCEPTION_HANDLER_INITIALIZER;
     }
 
+    /**
+     * @return The initializer set with
+     *         {@link #setExceptionHandlerInitializer(ExceptionHandlerInitializer)}
+     *         , <code>null</code> if there is none. An initializer can wrap the
+     *         current one before replacing it.
+     */
+    public ExceptionHandlerInitializer getExceptionHandlerInitializer() {
+        final ExceptionHandlerInitializer initializer = exceptionHandlerInitializer;
+        return initializer != NULL_EXCEPTION_HANDLER_INITIALIZER ? initializer : null;
+    }
+
     /**
      * Removes a key/value pair from your reports custom data field.
      * 
@@ -420,7 +474,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
             Log.d(ACRA.LOG_TAG, "Building report");
 
             // Generate and send crash report
-            handleException(e, ACRA.getConfig().mode(), false, true);
+            handleException(e, ACRA.getConfig().mode(), false, true, null);
         } catch (Throwable fatality) {
             // ACRA failed. Prevent any recursive call to
             // ACRA.uncaughtException(), let the native reporter do its job.
@@ -478,11 +532,16 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
      * 
      * @param e The {@link Throwable} to be reported. If null the report will
      *            contain a new Exception("Report requested by developer").
+     * @see ReportsCrashes#coalesceSilentExceptions()
      */
     public void handleSilentException(Throwable e) {
         // Mark this report as silent.
         if (enabled) {
-            handleException(e, ReportingInteractionMode.SILENT, true, false);
+            if (e != null && ACRA.getConfig().coalesceSilentExceptions()) {
+                silentExceptionCoalescer.handle(e);
+                return;
+            }
+            handleException(e, ReportingInteractionMode.SILENT, true, false, null);
             Log.d(LOG_TAG, "ACRA sent Silent report.");
             return;
         }
@@ -504,17 +563,18 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
     }
 
     /**
-     * Starts a Thread to start sending outstanding error reports.
+     * Starts sending outstanding error reports on the background send thread.
+     * Reports which cannot be sent are retried later by the
+     * {@link SendScheduler}.
      * 
      * @param onlySendSilentReports If true then only send silent reports.
      * @param approveReportsFirst If true then approve unapproved reports first.
-     * @return SendWorker that will be sending the report.s
+     * @return A Future completed once the reports have been sent.
      */
-    SendWorker startSendingReports(boolean onlySendSilentReports, boolean approveReportsFirst) {
+    Future<?> startSendingReports(boolean onlySendSilentReports, boolean approveReportsFirst) {
         final SendWorker worker = new SendWorker(mContext, mReportSenders, onlySendSilentReports,
                 approveReportsFirst, ACRA.getConfig().savePath());
-        worker.start();
-        return worker;
+        return sendScheduler.send(worker);
     }
 
     /**
@@ -524,11 +584,74 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         deletePendingReports(true, true, 0);
     }
 
+    /**
+     * Runs {@link #checkReportsOnApplicationStart()} in the background once
+     * the main thread is idle, which is after the first frame is drawn, so
+     * that it does not slow down the application start.
+     */
+    private void deferReportsCheckOnApplicationStart() {
+        final Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                checkReportsOnApplicationStart();
+            }
+        };
+        if (Looper.myLooper() == null) {
+            ACRAExecutor.submit(check);
+            return;
+        }
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                ACRAExecutor.submit(check);
+                // Run only once.
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Registers a listener called once the pending reports have been checked
+     * on application start, see
+     * {@link ReportsCrashes#deferStartupChecks()}. If the check is already
+     * completed, the listener is called right away on the caller thread.
+     * 
+     * @param listener The listener.
+     */
+    public void addStartupCheckListener(StartupCheckListener listener) {
+        synchronized (this) {
+            if (startupCheckListeners != null) {
+                startupCheckListeners.add(listener);
+                return;
+            }
+        }
+        listener.onStartupCheckCompleted();
+    }
+
     /**
      * This method looks for pending reports and does the action required
-     * depending on the interaction mode set.
+     * depending on the interaction mode set. The listeners registered with
+     * {@link #addStartupCheckListener(StartupCheckListener)} are called once it
+     * is done.
      */
     public void checkReportsOnApplicationStart() {
+        try {
+            checkPendingReports();
+        } finally {
+            final List<StartupCheckListener> listeners;
+            synchronized (this) {
+                listeners = startupCheckListeners;
+                startupCheckListeners = null;
+            }
+            if (listeners != null) {
+                for (StartupCheckListener listener : listeners) {
+                    listener.onStartupCheckCompleted();
+                }
+            }
+        }
+    }
+
+    private void checkPendingReports() {
 
         // Delete any old unsent reports if this is a newer version of the app
         // than when we last started.
@@ -557,10 +680,9 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
             deletePendingNonApprovedReports(true);
         }
 
-        final CrashReportFinder reportFinder = new CrashReportFinder(mContext);
-        String[] filesList = reportFinder.getCrashReportFiles(ACRA.getConfig().savePath());
+        final String[] filesList = new CrashReportStore(mContext, ACRA.getConfig().savePath()).list();
 
-        if (filesList != null && filesList.length > 0) {
+        if (filesList.length > 0) {
             // Immediately send reports for SILENT and TOAST modes.
             // Immediately send reports in NOTIFICATION mode only if they are
             // all silent or approved.
@@ -570,7 +692,6 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
 
             ReportingInteractionMode reportingInteractionMode = ACRA.getConfig().mode();
 
-            filesList = reportFinder.getCrashReportFiles(ACRA.getConfig().savePath());
             final boolean onlySilentOrApprovedReports = containsOnlySilentOrApprovedReports(filesList);
 
             if (reportingInteractionMode == ReportingInteractionMode.SILENT
@@ -580,9 +701,14 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
                 if (reportingInteractionMode == ReportingInteractionMode.TOAST
                         && !onlySilentOrApprovedReports) {
                     // Display the Toast in TOAST mode only if there are
-                    // non-silent reports.
-                    ToastSender.sendToast(mContext, ACRA.getConfig().resToastText(),
-                            Toast.LENGTH_LONG);
+                    // non-silent reports. The check may run on a thread
+                    // without a Looper.
+                    ACRAExecutor.getLooperHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            ToastSender.sendToast(mContext, ACRA.getConfig().resToastText(), Toast.LENGTH_LONG);
+                        }
+                    });
                 }
 
                 Log.v(ACRA.LOG_TAG,
@@ -626,7 +752,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
      *            ended after sending the report.
      */
     public void handleException(Throwable e, boolean endApplication) {
-        handleException(e, ACRA.getConfig().mode(), false, endApplication);
+        handleException(e, ACRA.getConfig().mode(), false, endApplication, null);
     }
 
     /**
@@ -638,7 +764,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
      *            contain a new Exception("Report requested by developer").
      */
     public void handleException(Throwable e) {
-        handleException(e, ACRA.getConfig().mode(), false, false);
+        handleException(e, ACRA.getConfig().mode(), false, false, null);
     }
 
     /**
@@ -652,9 +778,11 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
      *            mode has been configured.
      * @param endApplication Whether to end the application once the error has
      *            been handled.
+     * @param exceptionOccurrences Occurrences of a coalesced silent exception,
+     *            null if the exception has not been coalesced.
      */
     private void handleException(Throwable e, ReportingInteractionMode reportingInteractionMode,
-            final boolean forceSilentReport, final boolean endApplication) {
+            final boolean forceSilentReport, final boolean endApplication, String exceptionOccurrences) {
 
         if (!enabled) {
             return;
@@ -690,38 +818,45 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         final boolean shouldDisplayToast = reportingInteractionMode == ReportingInteractionMode.TOAST
                 || (ACRA.getConfig().resToastText() != 0 && (reportingInteractionMode == ReportingInteractionMode.NOTIFICATION || reportingInteractionMode == ReportingInteractionMode.DIALOG));
 
+        // Counted down once the toast, if any, has been displayed long enough
+        // to be read by the user.
+        final CountDownLatch toastWait = new CountDownLatch(shouldDisplayToast ? 1 : 0);
         if (shouldDisplayToast) {
-            new Thread() {
-
-                /*
-                 * (non-Javadoc)
-                 * @see java.lang.Thread#run()
-                 */
+            final Handler toastHandler = ACRAExecutor.getLooperHandler();
+            toastHandler.post(new Runnable() {
                 @Override
                 public void run() {
-                    Looper.prepare();
-                    ToastSender.sendToast(mContext, ACRA.getConfig().resToastText(),
-                            Toast.LENGTH_LONG);
-                    Looper.loop();
+                    ToastSender.sendToast(mContext, ACRA.getConfig().resToastText(), Toast.LENGTH_LONG);
                 }
-
-            }.start();
-
-            // We will wait a few seconds at the end of the method to be sure
-            // that the Toast can be read by the user.
+            });
+            toastHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    toastWait.countDown();
+                }
+            }, ACRAConstants.TOAST_WAIT_DURATION);
         }
 
+        if (endApplication) {
+            crashLoopDetector.onCrash();
+        }
+        final boolean inCrashLoop = crashLoopDetector.isInCrashLoop();
         final CrashReportData crashReportData = crashReportDataFactory.createCrashData(e,
-                forceSilentReport, brokenThread);
+                forceSilentReport, brokenThread, inCrashLoop ? crashLoopDetector.getCount() : 0);
+        if (exceptionOccurrences != null) {
+            crashReportData.put(ReportField.EXCEPTION_OCCURRENCES, exceptionOccurrences);
+        }
 
         // Always write the report file
 
         final String reportFileName = getReportFileName(crashReportData);
         saveCrashReportFile(reportFileName, crashReportData, ACRA.getConfig().savePath());
 
-        SendWorker sender = null;
+        Future<?> sender = null;
 
-        if (reportingInteractionMode == ReportingInteractionMode.SILENT
+        if (inCrashLoop) {
+            Log.w(LOG_TAG, "Application in a crash loop, reports will be sent once it is stable");
+        } else if (reportingInteractionMode == ReportingInteractionMode.SILENT
                 || reportingInteractionMode == ReportingInteractionMode.TOAST
                 || prefs.getBoolean(ACRA.PREF_ALWAYS_ACCEPT, false)) {
 
@@ -732,56 +867,31 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
             Log.d(ACRA.LOG_TAG, "Notification will be created on application start.");
         }
 
-        if (shouldDisplayToast) {
-            // A toast is being displayed, we have to wait for its end before
-            // doing anything else.
-            // The toastWaitEnded flag will be checked before any other
-            // operation.
-            toastWaitEnded = false;
-            new Thread() {
-
-                @Override
-                public void run() {
-                    final Time beforeWait = new Time();
-                    final Time currentTime = new Time();
-                    beforeWait.setToNow();
-                    final long beforeWaitInMillis = beforeWait.toMillis(false);
-                    long elapsedTimeInMillis = 0;
-                    while (elapsedTimeInMillis < ACRAConstants.TOAST_WAIT_DURATION) {
-                        try {
-                            // Wait a bit to let the user read the toast
-                            Thread.sleep(ACRAConstants.TOAST_WAIT_DURATION);
-                        } catch (InterruptedException e1) {
-                            Log.d(LOG_TAG, "Interrupted while waiting for Toast to end.", e1);
-                        }
-                        currentTime.setToNow();
-                        elapsedTimeInMillis = currentTime.toMillis(false) - beforeWaitInMillis;
-                    }
-                    toastWaitEnded = true;
-                }
-            }.start();
-        }
-
-        // start an AsyncTask waiting for the end of the sender
-        // call endApplication() in onPostExecute(), only when (toastWaitEnded
-        // == true)
-        final SendWorker worker = sender;
+        final Future<?> worker = sender;
         final boolean showDirectDialog = (reportingInteractionMode == ReportingInteractionMode.DIALOG)
                 && !prefs.getBoolean(ACRA.PREF_ALWAYS_ACCEPT, false);
+        if (!showDirectDialog && !endApplication) {
+            // Nothing to do once the toast and the worker are done, which is
+            // the case of silent exceptions.
+            return;
+        }
 
-        new Thread() {
+        ACRAExecutor.submit(new Runnable() {
 
             @Override
             public void run() {
                 // We have to wait for BOTH the toast display wait AND
                 // the worker job to be completed.
                 Log.d(LOG_TAG, "Waiting for Toast + worker...");
-                while (!toastWaitEnded || (worker != null && worker.isAlive())) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e1) {
-                        Log.e(LOG_TAG, "Error : ", e1);
+                try {
+                    toastWait.await();
+                    if (worker != null) {
+                        worker.get();
                     }
+                } catch (InterruptedException e1) {
+                    Log.e(LOG_TAG, "Interrupted while waiting for Toast + worker", e1);
+                } catch (ExecutionException e1) {
+                    Log.e(LOG_TAG, "Error while sending reports", e1.getCause());
                 }
 
                 if (showDirectDialog) {
@@ -800,7 +910,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
                     endApplication();
                 }
             }
-        }.start();
+        });
     }
 
     /**
@@ -892,8 +1002,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
                 dirs.mkdirs();
             }
 
-            final CrashReportPersister persister = new CrashReportPersister(mContext);
-            persister.store(crashData, fileName, path);
+            new CrashReportStore(mContext, path).save(fileName, crashData);
         } catch (Exception e) {
             Log.e(LOG_TAG, "An error occurred while writing the report file...", e);
         }
@@ -934,24 +1043,17 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
             boolean deleteNonApprovedReports, int nbOfLatestToKeep) {
         // TODO Check logic and instances where nbOfLatestToKeep = X, because
         // that might stop us from deleting any reports.
-        final CrashReportFinder reportFinder = new CrashReportFinder(mContext);
-        final String[] filesList = reportFinder.getCrashReportFiles(ACRA.getConfig().savePath());
-        Arrays.sort(filesList);
+        final CrashReportStore reportStore = new CrashReportStore(mContext, ACRA.getConfig().savePath());
+        final String[] filesList = reportStore.list();
         for (int iFile = 0; iFile < filesList.length - nbOfLatestToKeep; iFile++) {
             final String fileName = filesList[iFile];
             final boolean isReportApproved = fileNameParser.isApproved(fileName);
             if ((isReportApproved && deleteApprovedReports)
                     || (!isReportApproved && deleteNonApprovedReports)) {
-                final File fileToDelete;
-                if (TextUtils.isEmpty(ACRA.getConfig().savePath())) {
-                    fileToDelete = new File(mContext.getFilesDir(), fileName);
-                } else {
-                    fileToDelete = new File(ACRA.getConfig().savePath(), fileName);
-                }
-
                 ACRA.log.d(ACRA.LOG_TAG, "Deleting file " + fileName);
-                if (!fileToDelete.delete()) {
-                    Log.e(ACRA.LOG_TAG, "Could not delete report : " + fileToDelete);
+                // Reports being sent are left to their sender.
+                if (!reportStore.delete(fileName)) {
+                    Log.e(ACRA.LOG_TAG, "Could not delete report : " + fileName);
                 }
             }
         }
@@ -281,7 +281,36 @@ public enum ReportField {
     /**
      * Retrieves the user IP address(es).
      */
-    USER_IP;
+    USER_IP,
+    /**
+     * Occurrences of a coalesced silent exception (see
+     * {@link ReportsCrashes#coalesceSilentExceptions()}): fingerprint, count,
+     * first and last occurrence dates, and whether the report sums up the
+     * occurrences which did not get a full report.
+     */
+    EXCEPTION_OCCURRENCES {
+        @Override
+        public boolean containsKeyValuePairs() {
+            return true;
+        }
+    },
+    /**
+     * Fields truncated to fit {@link ReportsCrashes#maxFieldSize()} and
+     * {@link ReportsCrashes#maxReportSize()}, each one with its original length
+     * in characters. Only present when a field has been truncated.
+     */
+    TRUNCATED_FIELDS {
+        @Override
+        public boolean containsKeyValuePairs() {
+            return true;
+        }
+    },
+    /**
+     * Number of consecutive crashes shortly after the application start, when
+     * the application is in a crash loop (see
+     * {@link ReportsCrashes#crashLoopThreshold()}).
+     */
+    CRASH_LOOP_COUNT;
 
     /**
      * Whether this field is a collection of key/value pairs.
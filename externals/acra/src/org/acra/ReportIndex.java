@@ -0,0 +1,273 @@
+package org.acra;
+
+import static org.acra.ACRA.LOG_TAG;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Keeps track of the send attempts of each pending report, so that retries
+ * are spaced out even when the application is restarted in between, and of
+ * the senders which have already sent it.
+ * <p>
+ * The index is stored next to the reports in
+ * {@link ACRAConstants#REPORT_INDEX_FILE_NAME}. Reports are identified by
+ * their file name without the approved suffix, so approving a report keeps its
+ * history.
+ * </p>
+ * <p>
+ * Several processes may update the index. Only the changes made through this
+ * instance are written by {@link #save()}, applied to the current content of
+ * the file while holding a lock on {@link #LOCK_EXTENSION a lock file}.
+ * </p>
+ */
+final class ReportIndex {
+
+    private static final String ATTEMPTS = ".attempts";
+    private static final String NEXT_ATTEMPT = ".nextAttempt";
+    private static final String SENT_BY = ".sentBy";
+
+    /**
+     * Extension of the lock file created next to the index. It is never
+     * deleted, so that every process locks the same file.
+     */
+    private static final String LOCK_EXTENSION = ".lock";
+
+    /**
+     * Keeps the threads of this process from locking the lock file at the same
+     * time, which would fail.
+     */
+    private static final Object SAVE_LOCK = new Object();
+
+    private final File indexFile;
+    private final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
+    private Properties entries;
+
+    /**
+     * Properties changed through this instance, removed ones with a null
+     * value.
+     */
+    private final Map<String, String> changes = new HashMap<String, String>();
+
+    /**
+     * @param context The application context.
+     * @param path Directory of the reports, the application files directory if
+     *            empty.
+     */
+    ReportIndex(Context context, String path) {
+        final File dir = TextUtils.isEmpty(path) ? context.getFilesDir() : new File(path);
+        indexFile = new File(dir, ACRAConstants.REPORT_INDEX_FILE_NAME);
+    }
+
+    /**
+     * @return The number of failed attempts to send the report.
+     */
+    synchronized int getAttempts(String reportFileName) {
+        return getInt(fileNameParser.getReportKey(reportFileName) + ATTEMPTS);
+    }
+
+    /**
+     * @return The time before which the report should not be sent, 0 if it can
+     *         be sent right away.
+     */
+    synchronized long getNextAttemptTime(String reportFileName) {
+        return getLong(fileNameParser.getReportKey(reportFileName) + NEXT_ATTEMPT);
+    }
+
+    /**
+     * @return Whether a sender has already sent the report.
+     */
+    synchronized boolean isSentBy(String reportFileName, String senderId) {
+        final String sentBy = getEntries().getProperty(fileNameParser.getReportKey(reportFileName) + SENT_BY);
+        return sentBy != null && Arrays.asList(sentBy.split(",")).contains(senderId);
+    }
+
+    /**
+     * Records that a sender has sent the report, so that it is not called
+     * again for the report when only other senders failed.
+     *
+     * @param reportFileName Name of the report.
+     * @param senderId Identifier of the sender.
+     */
+    synchronized void recordSent(String reportFileName, String senderId) {
+        if (isSentBy(reportFileName, senderId)) {
+            return;
+        }
+        final String key = fileNameParser.getReportKey(reportFileName);
+        final String sentBy = getEntries().getProperty(key + SENT_BY);
+        setProperty(key + SENT_BY, sentBy == null ? senderId : sentBy + "," + senderId);
+    }
+
+    /**
+     * Records a failed attempt to send a report.
+     *
+     * @param reportFileName Name of the report.
+     * @param nextAttemptTime Time before which the report should not be sent
+     *            again.
+     */
+    synchronized void recordFailedAttempt(String reportFileName, long nextAttemptTime) {
+        final String key = fileNameParser.getReportKey(reportFileName);
+        setProperty(key + ATTEMPTS, Integer.toString(getInt(key + ATTEMPTS) + 1));
+        setProperty(key + NEXT_ATTEMPT, Long.toString(nextAttemptTime));
+    }
+
+    /**
+     * Forgets a report which has been sent or deleted.
+     */
+    synchronized void remove(String reportFileName) {
+        final String key = fileNameParser.getReportKey(reportFileName);
+        if (getEntries().containsKey(key + ATTEMPTS) || getEntries().containsKey(key + NEXT_ATTEMPT)
+                || getEntries().containsKey(key + SENT_BY)) {
+            removeProperty(key + ATTEMPTS);
+            removeProperty(key + NEXT_ATTEMPT);
+            removeProperty(key + SENT_BY);
+        }
+    }
+
+    /**
+     * Forgets the reports which are not pending anymore.
+     *
+     * @param reportFileNames Names of the pending reports.
+     */
+    synchronized void retainOnly(String[] reportFileNames) {
+        final Set<String> keys = new HashSet<String>(reportFileNames.length);
+        for (String reportFileName : reportFileNames) {
+            keys.add(fileNameParser.getReportKey(reportFileName));
+        }
+        for (Object propertyName : new ArrayList<Object>(getEntries().keySet())) {
+            final String property = propertyName.toString();
+            final int suffix = property.lastIndexOf('.');
+            if (suffix < 0 || !keys.contains(property.substring(0, suffix))) {
+                removeProperty(property);
+            }
+        }
+    }
+
+    /**
+     * Writes the changes made to the index, if any.
+     */
+    synchronized void save() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (SAVE_LOCK) {
+            try {
+                final RandomAccessFile lockFile = new RandomAccessFile(indexFile.getPath() + LOCK_EXTENSION, "rw");
+                try {
+                    final FileLock lock = lockFile.getChannel().lock();
+                    try {
+                        // Another process may have saved the index since it
+                        // has been read.
+                        final Properties current = read();
+                        for (Map.Entry<String, String> change : changes.entrySet()) {
+                            if (change.getValue() == null) {
+                                current.remove(change.getKey());
+                            } else {
+                                current.setProperty(change.getKey(), change.getValue());
+                            }
+                        }
+                        write(current);
+                        entries = current;
+                        changes.clear();
+                    } finally {
+                        lock.release();
+                    }
+                } finally {
+                    lockFile.close();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not write report index " + indexFile, e);
+            }
+        }
+    }
+
+    private void write(Properties content) throws IOException {
+        if (content.isEmpty()) {
+            if (indexFile.exists() && !indexFile.delete()) {
+                Log.w(LOG_TAG, "Could not delete report index " + indexFile);
+            }
+            return;
+        }
+
+        // Write a temporary file first so that a crash while saving does not
+        // corrupt the index.
+        final File tmpFile = new File(indexFile.getPath() + ".tmp");
+        final OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            content.store(out, null);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            throw new IOException("Could not rename " + tmpFile);
+        }
+    }
+
+    private Properties getEntries() {
+        if (entries == null) {
+            entries = read();
+        }
+        return entries;
+    }
+
+    private Properties read() {
+        final Properties content = new Properties();
+        if (indexFile.exists()) {
+            try {
+                final InputStream in = new FileInputStream(indexFile);
+                try {
+                    content.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not read report index " + indexFile + ", starting a new one", e);
+                content.clear();
+            }
+        }
+        return content;
+    }
+
+    private void setProperty(String property, String value) {
+        getEntries().setProperty(property, value);
+        changes.put(property, value);
+    }
+
+    private void removeProperty(String property) {
+        getEntries().remove(property);
+        changes.put(property, null);
+    }
+
+    private int getInt(String property) {
+        return (int) getLong(property);
+    }
+
+    private long getLong(String property) {
+        final String value = getEntries().getProperty(property);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
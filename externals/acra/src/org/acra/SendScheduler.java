@@ -0,0 +1,206 @@
+package org.acra;
+
+import static org.acra.ACRA.LOG_TAG;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.acra.sender.ReportSender;
+import org.acra.util.ACRAExecutor;
+import org.acra.util.PackageManagerWrapper;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+/**
+ * Runs the {@link SendWorker}s one after the other on a single background
+ * thread and schedules new attempts for the reports which could not be sent.
+ * <p>
+ * Failed reports are retried with an exponential backoff (see
+ * {@link #getRetryDelay(int)}), their attempts being persisted in the
+ * {@link ReportIndex} so that an application restart does not reset them.
+ * While the device is offline no attempt is made: the scheduler waits for the
+ * network to come back instead.
+ * </p>
+ */
+final class SendScheduler {
+
+    private static final Random RANDOM = new Random();
+
+    private final Context context;
+    private final List<ReportSender> reportSenders;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> scheduledRetry;
+    private long scheduledRetryTime;
+    private BroadcastReceiver connectivityReceiver;
+
+    /**
+     * @param context The application context.
+     * @param reportSenders Senders used for the retries.
+     */
+    SendScheduler(Context context, List<ReportSender> reportSenders) {
+        this.context = context;
+        this.reportSenders = reportSenders;
+    }
+
+    /**
+     * Runs a worker as soon as the reports being sent, if any, are done.
+     *
+     * @param worker The worker to run.
+     * @return A Future completed once the worker has run.
+     */
+    synchronized Future<?> send(final SendWorker worker) {
+        return getExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                onWorkerCompleted(worker.call());
+            }
+        });
+    }
+
+    /**
+     * Computes the delay before the next attempt to send a report: it doubles
+     * after each failed attempt up to {@link ACRAConstants#RETRY_MAX_DELAY}.
+     * A random jitter of up to half the delay is removed so that the devices
+     * which failed during a server outage don't all come back at once.
+     *
+     * @param attempts Number of failed attempts, including the last one.
+     * @return Delay in milliseconds.
+     */
+    static long getRetryDelay(int attempts) {
+        long delay = ACRAConstants.RETRY_BASE_DELAY;
+        for (int i = 1; i < attempts && delay < ACRAConstants.RETRY_MAX_DELAY; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, ACRAConstants.RETRY_MAX_DELAY);
+        return delay - (long) (RANDOM.nextDouble() * delay / 2);
+    }
+
+    /**
+     * @return false only if the device is known to be offline. If ACRA is not
+     *         allowed to check the network state, the network is assumed to
+     *         be available.
+     */
+    static boolean isNetworkAvailable(Context context) {
+        if (!new PackageManagerWrapper(context).hasPermission(Manifest.permission.ACCESS_NETWORK_STATE)) {
+            return true;
+        }
+        final ConnectivityManager connectivityManager = (ConnectivityManager) context
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return true;
+        }
+        final NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * @param nextAttemptTime The time at which pending reports should be sent
+     *            again, null if there is no report left.
+     */
+    private synchronized void onWorkerCompleted(Long nextAttemptTime) {
+        if (nextAttemptTime == null) {
+            cancelRetry();
+            stopWaitingForNetwork();
+        } else if (!isNetworkAvailable(context)) {
+            Log.d(LOG_TAG, "Network unavailable, reports will be sent when it comes back");
+            cancelRetry();
+            waitForNetwork();
+        } else {
+            stopWaitingForNetwork();
+            scheduleRetry(nextAttemptTime);
+        }
+    }
+
+    private void scheduleRetry(long nextAttemptTime) {
+        if (scheduledRetry != null) {
+            if (scheduledRetryTime <= nextAttemptTime) {
+                return;
+            }
+            scheduledRetry.cancel(false);
+        }
+
+        final long delay = Math.max(0, nextAttemptTime - System.currentTimeMillis());
+        Log.d(LOG_TAG, "Next attempt to send reports in " + delay + " ms");
+        scheduledRetryTime = nextAttemptTime;
+        scheduledRetry = getExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SendScheduler.this) {
+                    scheduledRetry = null;
+                }
+                onWorkerCompleted(createRetryWorker().call());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelRetry() {
+        if (scheduledRetry != null) {
+            scheduledRetry.cancel(false);
+            scheduledRetry = null;
+        }
+    }
+
+    private void waitForNetwork() {
+        if (connectivityReceiver != null) {
+            return;
+        }
+        connectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context receiverContext, Intent intent) {
+                if (isNetworkAvailable(context)) {
+                    Log.d(LOG_TAG, "Network is back, sending pending reports");
+                    synchronized (SendScheduler.this) {
+                        stopWaitingForNetwork();
+                        send(createRetryWorker());
+                    }
+                }
+            }
+        };
+        context.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    private void stopWaitingForNetwork() {
+        if (connectivityReceiver != null) {
+            try {
+                context.unregisterReceiver(connectivityReceiver);
+            } catch (IllegalArgumentException e) {
+                Log.w(LOG_TAG, "Connectivity receiver was not registered", e);
+            }
+            connectivityReceiver = null;
+        }
+    }
+
+    /**
+     * Retries don't approve anything: in NOTIFICATION and DIALOG modes only
+     * the reports approved by the user or silent are sent again.
+     */
+    private SendWorker createRetryWorker() {
+        final ReportingInteractionMode mode = ACRA.getConfig().mode();
+        final boolean sendOnlyApprovedReports = mode != ReportingInteractionMode.SILENT
+                && mode != ReportingInteractionMode.TOAST;
+        return new SendWorker(context, reportSenders, false, false, sendOnlyApprovedReports, ACRA.getConfig()
+                .savePath());
+    }
+
+    private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            // A dedicated thread rather than the shared ACRAExecutor: workers
+            // must not run concurrently and may block for a long time.
+            executor = Executors.newSingleThreadScheduledExecutor(ACRAExecutor.newThreadFactory("ACRA-SendWorker"));
+        }
+        return executor;
+    }
+}
@@ -18,33 +18,60 @@ package org.acra;
 
 import static org.acra.ACRA.LOG_TAG;
 
+import org.acra.annotation.ReportsCrashes;
 import org.acra.collector.CrashReportData;
+import org.acra.sender.BatchReportSender;
 import org.acra.sender.ReportSender;
 import org.acra.sender.ReportSenderException;
+import org.acra.util.ACRAExecutor;
 
 import android.content.Context;
-import android.text.TextUtils;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Checks and send reports on a separate Thread.
+ * Checks and send reports. Workers are run on a background thread by the
+ * {@link SendScheduler}.
  * 
  * @author Kevin Gaudin
  */
-final class SendWorker extends Thread {
+final class SendWorker implements Callable<Long> {
 
     private final Context context;
     private final boolean sendOnlySilentReports;
     private final boolean approvePendingReports;
+    private final boolean sendOnlyApprovedReports;
     private final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
     private final List<ReportSender> reportSenders;
 
     private final String path;
+    private final CrashReportStore reportStore;
+
+    /**
+     * Identifiers of the senders in the {@link ReportIndex}.
+     */
+    private final String[] senderIds;
+
+    /**
+     * Senders being called, possibly by the worker of a previous run if they
+     * have timed out. A sender is not called again until it returns.
+     */
+    private static final Map<ReportSender, Boolean> runningSenders = new IdentityHashMap<ReportSender, Boolean>();
+    private static ExecutorService senderExecutor;
 
     /**
      * Creates a new {@link SendWorker} to try sending pending reports.
@@ -60,64 +87,65 @@ final class SendWorker extends Thread {
      */
     public SendWorker(Context context, List<ReportSender> reportSenders,
             boolean sendOnlySilentReports, boolean approvePendingReports, String path) {
+        this(context, reportSenders, sendOnlySilentReports, approvePendingReports, false, path);
+    }
+
+    /**
+     * Creates a new {@link SendWorker} to try sending pending reports.
+     * 
+     * @param context ApplicationContext in which the reports are being sent.
+     * @param reportSenders List of ReportSender to use to send the crash
+     *            reports.
+     * @param sendOnlySilentReports If set to true, will send only reports which
+     *            have been explicitly declared as silent by the application
+     *            developer.
+     * @param approvePendingReports if this endWorker should approve pending
+     *            reports before sending any reports.
+     * @param sendOnlyApprovedReports If set to true, will send only reports
+     *            which are silent or have been approved.
+     */
+    SendWorker(Context context, List<ReportSender> reportSenders, boolean sendOnlySilentReports,
+            boolean approvePendingReports, boolean sendOnlyApprovedReports, String path) {
         this.context = context;
-        this.reportSenders = reportSenders;
+        // The senders may be changed by the application while reports are
+        // being sent.
+        this.reportSenders = new ArrayList<ReportSender>(reportSenders);
         this.sendOnlySilentReports = sendOnlySilentReports;
         this.approvePendingReports = approvePendingReports;
+        this.sendOnlyApprovedReports = sendOnlyApprovedReports;
 
         this.path = path;
+        reportStore = new CrashReportStore(context, path);
+        senderIds = getSenderIds(this.reportSenders);
     }
 
-    /*
-     * (non-Javadoc)
-     * @see java.lang.Thread#run()
+    /**
+     * Approves then sends the pending reports.
+     * 
+     * @return The time at which the reports which are still pending should be
+     *         sent again, null if there is no report left to send.
      */
     @Override
-    public void run() {
+    public Long call() {
         if (approvePendingReports) {
             approvePendingReports();
         }
-        checkAndSendReports(context, sendOnlySilentReports);
+        return checkAndSendReports(context, sendOnlySilentReports);
     }
 
     /**
      * Flag all pending reports as "approved" by the user. These reports can be
-     * sent.
+     * sent. Reports claimed elsewhere are left as they are.
      */
     private void approvePendingReports() {
         Log.d(LOG_TAG, "Mark all pending reports as approved.");
 
-        final CrashReportFinder reportFinder = new CrashReportFinder(context);
-        final String[] reportFileNames = reportFinder.getCrashReportFiles(path);
-
-        for (String reportFileName : reportFileNames) {
+        for (String reportFileName : reportStore.list()) {
             if (!fileNameParser.isApproved(reportFileName)) {
-                final File reportFile;
-
-                if (TextUtils.isEmpty(path)) {
-                    reportFile = new File(context.getFilesDir(), reportFileName);
-                } else {
-                    reportFile = new File(path, reportFileName);
-                }
-
-                // TODO look into how this could cause a file to go from
-                // -approved.stacktrace to -approved-approved.stacktrace
-                final String newName = reportFileName.replace(ACRAConstants.REPORTFILE_EXTENSION,
-                        ACRAConstants.APPROVED_SUFFIX + ACRAConstants.REPORTFILE_EXTENSION);
-
-                // TODO Look into whether rename is atomic. Is there a better
-                // option?
-                final File newFile;
-
-                if (TextUtils.isEmpty(path)) {
-                    newFile = new File(context.getFilesDir(), newName);
-                } else {
-                    newFile = new File(path, newName);
-                }
-
-                if (!reportFile.renameTo(newFile)) {
-                    Log.e(LOG_TAG, "Could not rename approved report from " + reportFile + " to "
-                            + newFile);
+                final CrashReportStore.Claim claim = reportStore.claim(reportFileName);
+                if (claim != null) {
+                    claim.approve();
+                    claim.release();
                 }
             }
         }
@@ -125,102 +153,370 @@ final class SendWorker extends Thread {
 
     /**
      * Send pending reports.
+     * <p>
+     * Each report is claimed before it is loaded, so reports being sent by
+     * another worker, in this process or another one, are skipped. Reports
+     * which failed recently are skipped until their next attempt time
+     * recorded in the {@link ReportIndex}. Reports older than
+     * {@link ACRAConstants#MAX_REPORT_AGE} are deleted, and nothing is sent
+     * while the network is unavailable.
+     * </p>
+     * <p>
+     * A report is delivered once at least one sender has sent it, or if there
+     * is no sender. It is then only kept to try again the senders which
+     * failed, up to {@link ACRAConstants#MAX_FAILED_SENDER_ATTEMPTS} attempts.
+     * The senders which have sent a report are recorded in the index, so they
+     * are not called again for it. A report which no sender could send is
+     * kept until it expires.
+     * </p>
+     * <p>
+     * When a {@link BatchReportSender} is registered, reports are loaded and
+     * sent in batches. At most {@link ACRAConstants#MAX_SEND_REPORTS} batches
+     * are sent per run to avoid overloading the network.
+     * </p>
      * 
      * @param context The application context.
      * @param sendOnlySilentReports Send only reports explicitly declared as
      *            SILENT by the developer (sent via
      *            {@link ErrorReporter#handleSilentException(Throwable)}.
+     * @return The time at which the reports which are still pending should be
+     *         sent again, null if there is no report left to send.
      */
-    private void checkAndSendReports(Context context, boolean sendOnlySilentReports) {
+    private Long checkAndSendReports(Context context, boolean sendOnlySilentReports) {
         Log.d(LOG_TAG, "#checkAndSendReports - start");
-        final CrashReportFinder reportFinder = new CrashReportFinder(context);
-        final String[] reportFiles = reportFinder.getCrashReportFiles(path);
-        Arrays.sort(reportFiles);
+        final String[] reportFiles = reportStore.list();
+
+        final ReportIndex reportIndex = new ReportIndex(context, path);
+        reportIndex.retainOnly(reportFiles);
 
-        int reportsSentCount = 0;
+        final long now = System.currentTimeMillis();
+        final boolean networkAvailable = SendScheduler.isNetworkAvailable(context);
+        long nextAttemptTime = Long.MAX_VALUE;
 
+        final List<String> dueFileNames = new ArrayList<String>();
         for (String curFileName : reportFiles) {
             if (sendOnlySilentReports && !fileNameParser.isSilent(curFileName)) {
                 continue;
             }
+            if (sendOnlyApprovedReports && !fileNameParser.isApproved(curFileName)) {
+                continue;
+            }
 
-            if (reportsSentCount >= ACRAConstants.MAX_SEND_REPORTS) {
-                break; // send only a few reports to avoid overloading the
-                       // network
+            final long creationTime = fileNameParser.getCreationTime(curFileName);
+            if (creationTime > 0 && now - creationTime > ACRAConstants.MAX_REPORT_AGE) {
+                Log.w(LOG_TAG, "Report " + curFileName + " could not be sent in time, deleting it");
+                if (reportStore.delete(curFileName)) {
+                    reportIndex.remove(curFileName);
+                }
+                continue;
             }
 
-            Log.i(LOG_TAG, "Sending file " + curFileName);
+            final long reportNextAttemptTime = reportIndex.getNextAttemptTime(curFileName);
+            if (reportNextAttemptTime > now || !networkAvailable) {
+                nextAttemptTime = Math.min(nextAttemptTime, Math.max(now, reportNextAttemptTime));
+                continue;
+            }
+            dueFileNames.add(curFileName);
+        }
+
+        final int batchSize = getBatchSize();
+        final List<CrashReportStore.Claim> batchClaims = new ArrayList<CrashReportStore.Claim>(batchSize);
+        final List<CrashReportData> batch = new ArrayList<CrashReportData>(batchSize);
+
+        int batchesSentCount = 0;
+        int fileIndex = 0;
+
+        while (fileIndex < dueFileNames.size()) {
+            if (batchesSentCount >= ACRAConstants.MAX_SEND_REPORTS) {
+                // Send the remaining reports a bit later to avoid overloading
+                // the network.
+                nextAttemptTime = Math.min(nextAttemptTime, now + ACRAConstants.RETRY_BASE_DELAY);
+                break;
+            }
+
+            batchClaims.clear();
+            batch.clear();
             try {
-                final CrashReportPersister persister = new CrashReportPersister(context);
-                final CrashReportData previousCrashReport = persister.load(curFileName, path);
-                sendCrashReport(previousCrashReport);
-                deleteFile(context, curFileName);
-            } catch (RuntimeException e) {
-                Log.e(ACRA.LOG_TAG, "Failed to send crash reports for " + curFileName, e);
-                deleteFile(context, curFileName);
-                break; // Something really unexpected happened. Don't try to
-                       // send any more reports now.
-            } catch (IOException e) {
-                Log.e(ACRA.LOG_TAG, "Failed to load crash report for " + curFileName, e);
-                deleteFile(context, curFileName);
-                break; // Something unexpected happened when reading the crash
-                       // report. Don't try to send any more reports now.
-            } catch (ReportSenderException e) {
-                Log.e(ACRA.LOG_TAG, "Failed to send crash report for " + curFileName, e);
-                // An issue occurred while sending this report but we can still
-                // try to
-                // send other reports. Report sending is limited by
-                // ACRAConstants.MAX_SEND_REPORTS
-                // so there's not much to fear about overloading a failing
-                // server.
+                while (fileIndex < dueFileNames.size() && batch.size() < batchSize) {
+                    final String curFileName = dueFileNames.get(fileIndex++);
+                    final CrashReportStore.Claim claim = reportStore.claim(curFileName);
+                    if (claim == null) {
+                        Log.d(LOG_TAG, "Report " + curFileName + " is being sent by another worker");
+                        continue;
+                    }
+                    try {
+                        batch.add(claim.load());
+                        batchClaims.add(claim);
+                    } catch (RuntimeException e) {
+                        Log.e(ACRA.LOG_TAG, "Failed to load crash report for " + curFileName, e);
+                        discard(claim, reportIndex);
+                    } catch (IOException e) {
+                        Log.e(ACRA.LOG_TAG, "Failed to load crash report for " + curFileName, e);
+                        discard(claim, reportIndex);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                Log.i(LOG_TAG, "Sending " + batch.size() + " reports");
+                try {
+                    final boolean[][] pending = new boolean[reportSenders.size()][batch.size()];
+                    for (int sender = 0; sender < pending.length; sender++) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            pending[sender][i] = !reportIndex.isSentBy(batchClaims.get(i).getFileName(),
+                                    senderIds[sender]);
+                        }
+                    }
+                    final boolean[][] sent = sendCrashReports(batch, pending);
+                    for (int i = 0; i < batch.size(); i++) {
+                        final CrashReportStore.Claim claim = batchClaims.get(i);
+                        final String fileName = claim.getFileName();
+                        // The report is delivered once a sender has sent
+                        // it, or if there is no sender.
+                        boolean delivered = reportSenders.isEmpty();
+                        boolean failed = false;
+                        for (int sender = 0; sender < sent.length; sender++) {
+                            if (sent[sender][i]) {
+                                reportIndex.recordSent(fileName, senderIds[sender]);
+                                delivered = true;
+                            } else if (pending[sender][i]) {
+                                failed = true;
+                            } else {
+                                // Sent in a previous attempt.
+                                delivered = true;
+                            }
+                        }
+                        final int attempts = reportIndex.getAttempts(fileName) + 1;
+                        if (!failed || delivered && attempts >= ACRAConstants.MAX_FAILED_SENDER_ATTEMPTS) {
+                            if (failed) {
+                                Log.w(LOG_TAG, "Report " + fileName + " could not be sent by all the senders after "
+                                        + attempts + " attempts, deleting it");
+                            }
+                            claim.delete();
+                            reportIndex.remove(fileName);
+                        } else {
+                            // Keep the report and try again later with the
+                            // senders which failed: until it expires if no
+                            // sender has sent it, a few times otherwise.
+                            final long reportNextAttemptTime = now + SendScheduler.getRetryDelay(attempts);
+                            reportIndex.recordFailedAttempt(fileName, reportNextAttemptTime);
+                            nextAttemptTime = Math.min(nextAttemptTime, reportNextAttemptTime);
+                            Log.i(LOG_TAG, "Report " + fileName + " could not be sent"
+                                    + (delivered ? " by all the senders" : "") + " after " + attempts
+                                    + " attempts, next attempt in " + (reportNextAttemptTime - now) + " ms");
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // Something really unexpected happened. Keep the reports
+                    // of the batch for a later attempt, and don't try to send
+                    // any more reports now.
+                    Log.e(ACRA.LOG_TAG, "Failed to send crash reports", e);
+                    for (CrashReportStore.Claim claim : batchClaims) {
+                        final String fileName = claim.getFileName();
+                        final long reportNextAttemptTime = now
+                                + SendScheduler.getRetryDelay(reportIndex.getAttempts(fileName) + 1);
+                        reportIndex.recordFailedAttempt(fileName, reportNextAttemptTime);
+                        nextAttemptTime = Math.min(nextAttemptTime, reportNextAttemptTime);
+                    }
+                    break;
+                }
+            } finally {
+                for (CrashReportStore.Claim claim : batchClaims) {
+                    claim.release();
+                }
             }
-            reportsSentCount++;
+            batchesSentCount++;
         }
+        reportIndex.save();
         Log.d(LOG_TAG, "#checkAndSendReports - finish");
+        return nextAttemptTime == Long.MAX_VALUE ? null : Long.valueOf(nextAttemptTime);
+    }
+
+    /**
+     * @return The class name of each sender, followed by its rank among the
+     *         senders of the same class if there are several.
+     */
+    private static String[] getSenderIds(List<ReportSender> reportSenders) {
+        final String[] senderIds = new String[reportSenders.size()];
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < senderIds.length; i++) {
+            final String className = reportSenders.get(i).getClass().getName();
+            final Integer count = counts.get(className);
+            counts.put(className, count == null ? 1 : count + 1);
+            senderIds[i] = count == null ? className : className + "#" + (count + 1);
+        }
+        return senderIds;
+    }
+
+    /**
+     * @return The number of reports to send at once: the smallest maximum
+     *         batch size of the registered {@link BatchReportSender}s, or 1 if
+     *         there is none.
+     */
+    private int getBatchSize() {
+        int batchSize = Integer.MAX_VALUE;
+        for (ReportSender sender : reportSenders) {
+            if (sender instanceof BatchReportSender) {
+                batchSize = Math.min(batchSize, Math.max(1, ((BatchReportSender) sender).getMaxBatchSize()));
+            }
+        }
+        return batchSize == Integer.MAX_VALUE ? 1 : batchSize;
+    }
+
+    /**
+     * Sends the reports with all configured ReportSenders. When several
+     * senders are registered, the ones which have reports to send are run
+     * concurrently, each one within {@link ReportsCrashes#senderTimeout()}. A
+     * single sender runs on the calling thread, without timeout.
+     * 
+     * @param reports Crash data.
+     * @param pending For each sender and each report, whether the sender has
+     *            to send the report.
+     * @return For each sender and each report, whether the sender has sent
+     *         the report.
+     */
+    private boolean[][] sendCrashReports(final List<CrashReportData> reports, final boolean[][] pending) {
+        final boolean[][] sent = new boolean[reportSenders.size()][];
+        if (ACRA.isDebuggable() && !ACRA.getConfig().sendReportsInDevMode()) {
+            for (int sender = 0; sender < sent.length; sender++) {
+                sent[sender] = pending[sender].clone();
+            }
+            return sent;
+        }
+
+        final List<Integer> dispatched = new ArrayList<Integer>();
+        for (int sender = 0; sender < sent.length; sender++) {
+            sent[sender] = new boolean[reports.size()];
+            if (!contains(pending[sender], true)) {
+                continue;
+            }
+            synchronized (runningSenders) {
+                if (runningSenders.containsKey(reportSenders.get(sender))) {
+                    Log.w(LOG_TAG, "ReportSender of class " + reportSenders.get(sender).getClass().getName()
+                            + " is still running, not sending reports with it");
+                    continue;
+                }
+                runningSenders.put(reportSenders.get(sender), Boolean.TRUE);
+            }
+            dispatched.add(sender);
+        }
+
+        if (dispatched.size() == 1 && reportSenders.size() == 1) {
+            // No need for another thread. With several senders, even one
+            // retried alone is bounded by the timeout, so that a hung sender
+            // does not block the send thread.
+            final int sender = dispatched.get(0);
+            sent[sender] = send(reportSenders.get(sender), reports, pending[sender]);
+            return sent;
+        }
+
+        final List<Future<boolean[]>> futures = new ArrayList<Future<boolean[]>>(dispatched.size());
+        for (final int sender : dispatched) {
+            futures.add(getSenderExecutor().submit(new Callable<boolean[]>() {
+                @Override
+                public boolean[] call() {
+                    return send(reportSenders.get(sender), reports, pending[sender]);
+                }
+            }));
+        }
+        final long deadline = SystemClock.uptimeMillis() + ACRA.getConfig().senderTimeout();
+        for (int i = 0; i < futures.size(); i++) {
+            final ReportSender sender = reportSenders.get(dispatched.get(i));
+            try {
+                sent[dispatched.get(i)] = futures.get(i).get(Math.max(0, deadline - SystemClock.uptimeMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                Log.e(LOG_TAG, "ReportSender of class " + sender.getClass().getName() + " timed out");
+                futures.get(i).cancel(true);
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "ReportSender of class " + sender.getClass().getName() + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return sent;
     }
 
     /**
-     * Sends the report with all configured ReportSenders. If at least one
-     * sender completed its job, the report is considered as sent and will not
-     * be sent again for failing senders.
+     * Sends the pending reports with one sender.
      * 
-     * @param errorContent Crash data.
-     * @throws ReportSenderException if unable to send the crash report.
+     * @return For each report, whether the sender has sent it.
      */
-    private void sendCrashReport(CrashReportData errorContent) throws ReportSenderException {
-        if (!ACRA.isDebuggable() || ACRA.getConfig().sendReportsInDevMode()) {
-            boolean sentAtLeastOnce = false;
-            for (ReportSender sender : reportSenders) {
+    private boolean[] send(ReportSender sender, List<CrashReportData> reports, boolean[] pending) {
+        final boolean[] sent = new boolean[reports.size()];
+        try {
+            if (sender instanceof BatchReportSender) {
+                final List<CrashReportData> pendingReports = new ArrayList<CrashReportData>(reports.size());
+                for (int i = 0; i < reports.size(); i++) {
+                    if (pending[i]) {
+                        pendingReports.add(reports.get(i));
+                    }
+                }
                 try {
-                    sender.send(errorContent);
-                    // If at least one sender worked, don't re-send the report
-                    // later.
-                    sentAtLeastOnce = true;
+                    final boolean[] sentBySender = ((BatchReportSender) sender).send(pendingReports);
+                    for (int i = 0, j = 0; i < sent.length && j < sentBySender.length; i++) {
+                        if (pending[i]) {
+                            sent[i] = sentBySender[j++];
+                        }
+                    }
                 } catch (ReportSenderException e) {
-                    if (!sentAtLeastOnce) {
-                        throw e; // Don't log here because we aren't dealing
-                                 // with the Exception here.
-                    } else {
-                        Log.w(LOG_TAG,
-                                "ReportSender of class "
-                                        + sender.getClass().getName()
-                                        + " failed but other senders completed their task. ACRA will not send this report again.");
+                    logSenderFailure(sender, e);
+                }
+            } else {
+                for (int i = 0; i < sent.length; i++) {
+                    if (!pending[i]) {
+                        continue;
+                    }
+                    try {
+                        sender.send(reports.get(i));
+                        sent[i] = true;
+                    } catch (ReportSenderException e) {
+                        logSenderFailure(sender, e);
                     }
                 }
             }
+        } catch (RuntimeException e) {
+            // Like a failure: the reports not sent yet are tried again later,
+            // whether the sender runs on this thread or on the pool.
+            Log.e(LOG_TAG, "ReportSender of class " + sender.getClass().getName() + " failed unexpectedly", e);
+        } finally {
+            synchronized (runningSenders) {
+                runningSenders.remove(sender);
+            }
         }
+        return sent;
     }
 
-    private void deleteFile(Context context, String fileName) {
-        final boolean deleted;
-        if (TextUtils.isEmpty(path)) {
-            deleted = context.deleteFile(fileName);
-        } else {
-            deleted = (new File(path, fileName)).delete();
+    private static boolean contains(boolean[] values, boolean value) {
+        for (boolean v : values) {
+            if (v == value) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        if (!deleted) {
-            Log.w(ACRA.LOG_TAG, "Could not delete error report : " + fileName);
+    /**
+     * @return The pool running the senders concurrently, started on first
+     *         use. A sender which times out keeps its thread until it
+     *         returns, so the pool is not bounded.
+     */
+    private static synchronized ExecutorService getSenderExecutor() {
+        if (senderExecutor == null) {
+            senderExecutor = Executors.newCachedThreadPool(ACRAExecutor.newThreadFactory("ACRA-Sender"));
         }
+        return senderExecutor;
+    }
+
+    private void logSenderFailure(ReportSender sender, ReportSenderException e) {
+        Log.e(LOG_TAG, "ReportSender of class " + sender.getClass().getName() + " failed to send crash report", e);
+    }
+
+    private void discard(CrashReportStore.Claim claim, ReportIndex reportIndex) {
+        claim.delete();
+        reportIndex.remove(claim.getFileName());
+        claim.release();
     }
 }
@@ -0,0 +1,219 @@
+package org.acra;
+
+import static org.acra.ACRA.LOG_TAG;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.acra.annotation.ReportsCrashes;
+import org.acra.util.ACRAExecutor;
+import org.acra.util.ReportUtils;
+
+import android.text.format.Time;
+import android.util.Log;
+
+/**
+ * Coalesces the silent exceptions which share the same fingerprint, so that
+ * an error reported from a hot path does not build a full report each time.
+ * <p>
+ * A window starts with the first occurrence of a fingerprint. The first
+ * {@link ReportsCrashes#silentExceptionFullReports()} occurrences of the
+ * window are reported as usual, the next ones are only counted. At the end of
+ * the window, one more report sums up the occurrences which have only been
+ * counted. All these reports hold the occurrence counts in
+ * {@link ReportField#EXCEPTION_OCCURRENCES}.
+ * </p>
+ * <p>
+ * Occurrences not yet summed up are lost if the process dies before the end
+ * of the window.
+ * </p>
+ */
+final class SilentExceptionCoalescer {
+
+    /**
+     * Builds and sends the reports decided by the coalescer.
+     */
+    interface Reporter {
+
+        /**
+         * @param e The exception to report.
+         * @param occurrences Content of
+         *            {@link ReportField#EXCEPTION_OCCURRENCES}.
+         */
+        void report(Throwable e, String occurrences);
+    }
+
+    /**
+     * Number of stack frames of the outermost exception taken into account in
+     * the fingerprint.
+     */
+    private static final int FINGERPRINT_FRAMES = 8;
+
+    /**
+     * Number of causes taken into account in the fingerprint.
+     */
+    private static final int MAX_CAUSES = 8;
+
+    /**
+     * Beyond this number of fingerprints in the current windows, new
+     * fingerprints are reported without coalescing to bound the memory used.
+     */
+    private static final int MAX_FINGERPRINTS = 64;
+
+    private final Reporter reporter;
+    private final Map<String, Occurrences> occurrencesByFingerprint = new HashMap<String, Occurrences>();
+
+    /**
+     * @param reporter Builds and sends the reports.
+     */
+    SilentExceptionCoalescer(Reporter reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Counts an occurrence of a silent exception and reports it if it is
+     * among the first ones of its window.
+     *
+     * @param e The silent exception.
+     */
+    void handle(Throwable e) {
+        final ReportsCrashes config = ACRA.getConfig();
+        final String fingerprint = getFingerprint(e);
+        final long now = System.currentTimeMillis();
+
+        Occurrences ended = null;
+        String fullReport = null;
+        boolean coalesced = true;
+        synchronized (this) {
+            Occurrences occurrences = occurrencesByFingerprint.get(fingerprint);
+            if (occurrences != null && now - occurrences.first >= config.silentExceptionWindow()) {
+                // The end of the window has not been handled yet, the device
+                // may have been sleeping.
+                occurrencesByFingerprint.remove(fingerprint);
+                ended = occurrences;
+                occurrences = null;
+            }
+            if (occurrences == null) {
+                if (occurrencesByFingerprint.size() < MAX_FINGERPRINTS) {
+                    occurrences = new Occurrences(fingerprint, now);
+                    occurrencesByFingerprint.put(fingerprint, occurrences);
+                    scheduleEndOfWindow(occurrences, config.silentExceptionWindow());
+                } else {
+                    coalesced = false;
+                }
+            }
+            if (occurrences != null) {
+                occurrences.count++;
+                occurrences.last = now;
+                if (occurrences.fullReports < config.silentExceptionFullReports()) {
+                    occurrences.fullReports++;
+                    fullReport = occurrences.describe(false);
+                } else {
+                    occurrences.lastCounted = e;
+                }
+            }
+        }
+
+        if (ended != null) {
+            reportEndOfWindow(ended);
+        }
+        if (fullReport != null) {
+            reporter.report(e, fullReport);
+        } else if (!coalesced) {
+            Log.w(LOG_TAG, "Too many distinct silent exceptions, reporting " + e.getClass().getName()
+                    + " without coalescing");
+            reporter.report(e, null);
+        }
+    }
+
+    /**
+     * @return The classes of the exception and of its causes, with the top of
+     *         the exception stack trace. Messages are left out as they often
+     *         hold variable data.
+     */
+    static String getFingerprint(Throwable e) {
+        final StringBuilder fingerprint = new StringBuilder(e.getClass().getName());
+        final StackTraceElement[] stackTrace = e.getStackTrace();
+        for (int i = 0; i < stackTrace.length && i < FINGERPRINT_FRAMES; i++) {
+            fingerprint.append('|').append(stackTrace[i].getClassName()).append('.')
+                    .append(stackTrace[i].getMethodName()).append(':').append(stackTrace[i].getLineNumber());
+        }
+        // Bounded as causes may form a cycle.
+        Throwable cause = e.getCause();
+        for (int i = 0; cause != null && i < MAX_CAUSES; i++) {
+            fingerprint.append("|caused by ").append(cause.getClass().getName());
+            cause = cause.getCause();
+        }
+        return fingerprint.toString();
+    }
+
+    private void scheduleEndOfWindow(final Occurrences occurrences, long window) {
+        // The Looper thread only hands the work over, the report is built on
+        // the pool.
+        ACRAExecutor.getLooperHandler().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                ACRAExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (SilentExceptionCoalescer.this) {
+                            if (occurrencesByFingerprint.get(occurrences.fingerprint) != occurrences) {
+                                // Already handled by a later occurrence.
+                                return;
+                            }
+                            occurrencesByFingerprint.remove(occurrences.fingerprint);
+                        }
+                        reportEndOfWindow(occurrences);
+                    }
+                });
+            }
+        }, window);
+    }
+
+    private void reportEndOfWindow(Occurrences occurrences) {
+        final Throwable lastCounted;
+        final String summary;
+        synchronized (this) {
+            lastCounted = occurrences.lastCounted;
+            summary = occurrences.describe(true);
+        }
+        if (lastCounted != null) {
+            Log.d(LOG_TAG, "Reporting " + occurrences.count + " occurrences of " + lastCounted.getClass().getName());
+            reporter.report(lastCounted, summary);
+        }
+    }
+
+    /**
+     * Occurrences of a fingerprint during a window.
+     */
+    private static final class Occurrences {
+        final String fingerprint;
+        final long first;
+        long last;
+        int count;
+        int fullReports;
+        Throwable lastCounted;
+
+        Occurrences(String fingerprint, long first) {
+            this.fingerprint = fingerprint;
+            this.first = first;
+        }
+
+        String describe(boolean summary) {
+            final StringBuilder result = new StringBuilder();
+            result.append("fingerprint=").append(Integer.toHexString(fingerprint.hashCode())).append('\n');
+            result.append("count=").append(count).append('\n');
+            result.append("fullReports=").append(fullReports).append('\n');
+            result.append("firstOccurrence=").append(formatTime(first)).append('\n');
+            result.append("lastOccurrence=").append(formatTime(last)).append('\n');
+            result.append("summary=").append(summary).append('\n');
+            return result.toString();
+        }
+
+        private static String formatTime(long millis) {
+            final Time time = new Time();
+            time.set(millis);
+            return ReportUtils.getTimeString(time);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.acra;
+
+/**
+ * The interface can be used with
+ * {@link ErrorReporter#addStartupCheckListener(StartupCheckListener)} to be
+ * notified once the pending reports have been checked on application start.
+ * 
+ * @see org.acra.annotation.ReportsCrashes#deferStartupChecks()
+ */
+public interface StartupCheckListener {
+    /**
+     * Called once the pending reports have been deleted, notified or handed
+     * over to the senders. It is called on the thread which ran the check: a
+     * background thread when the check is deferred.
+     */
+    void onStartupCheckCompleted();
+}
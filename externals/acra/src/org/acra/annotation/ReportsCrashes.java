@@ -562,4 +562,162 @@ public @interface ReportsCrashes {
     Method httpMethod() default Method.POST;
 
     Type reportType() default Type.FORM;
+
+    /**
+     * <p>
+     * Set this to true to compress the body of the requests sent by the
+     * HttpSender with gzip. Your server must decode request bodies sent with a
+     * Content-Encoding: gzip header.
+     * </p>
+     * 
+     * @return True if report requests have to be compressed.
+     */
+    boolean compressReports() default ACRAConstants.DEFAULT_COMPRESS_REPORTS;
+
+    /**
+     * <p>
+     * Set this to true to coalesce the silent exceptions reported with
+     * {@link org.acra.ErrorReporter#handleSilentException(Throwable)} which
+     * share the same fingerprint (exception classes and top of the stack
+     * trace). Only the first {@link #silentExceptionFullReports()} occurrences
+     * of a fingerprint in each {@link #silentExceptionWindow()} get a full
+     * report, the following ones are only counted and summed up in a single
+     * report at the end of the window. The occurrence counts are sent in
+     * {@link ReportField#EXCEPTION_OCCURRENCES}.
+     * </p>
+     * 
+     * @return True if recurring silent exceptions are coalesced.
+     */
+    boolean coalesceSilentExceptions() default ACRAConstants.DEFAULT_COALESCE_SILENT_EXCEPTIONS;
+
+    /**
+     * <p>
+     * Number of occurrences of the same silent exception for which a full
+     * report is built in each coalescing window, when
+     * {@link #coalesceSilentExceptions()} is enabled.
+     * </p>
+     * 
+     * @return Number of full reports per silent exception fingerprint and
+     *         window.
+     */
+    int silentExceptionFullReports() default ACRAConstants.DEFAULT_SILENT_EXCEPTION_FULL_REPORTS;
+
+    /**
+     * <p>
+     * Duration in milliseconds of the coalescing window of silent exceptions,
+     * when {@link #coalesceSilentExceptions()} is enabled. At the end of the
+     * window, the occurrences which did not get a full report are summed up
+     * in a single report.
+     * </p>
+     * 
+     * @return Duration of the silent exception coalescing window in
+     *         milliseconds (default 10 minutes).
+     */
+    int silentExceptionWindow() default ACRAConstants.DEFAULT_SILENT_EXCEPTION_WINDOW;
+
+    /**
+     * <p>
+     * Set this to true to keep an in memory snapshot of the SharedPreferences
+     * collected in {@link ReportField#SHARED_PREFERENCES}, updated by change
+     * listeners. Crash reports then serialize the snapshot instead of reading
+     * every preference file when the application crashes. The snapshot costs
+     * some memory and a little work on each preference change.
+     * </p>
+     * <p>
+     * Before Android 11 (API level 30), clearing preferences with
+     * SharedPreferences.Editor#clear() notifies no listener: the snapshot
+     * only notices the clear at the next change of the same preferences, and
+     * until then reports the cleared values.
+     * </p>
+     * 
+     * @return True if SharedPreferences are kept in an in memory snapshot.
+     */
+    boolean snapshotSharedPreferences() default ACRAConstants.DEFAULT_SNAPSHOT_SHARED_PREFERENCES;
+
+    /**
+     * <p>
+     * Maximum length in characters of each field of a report. Logs are read
+     * within this limit, other fields are truncated to it once collected. The
+     * truncated fields are listed in {@link ReportField#TRUNCATED_FIELDS}. Set
+     * to 0 to disable the limit.
+     * </p>
+     * 
+     * @return Maximum length in characters of each report field (default
+     *         128K).
+     */
+    int maxFieldSize() default ACRAConstants.DEFAULT_MAX_FIELD_SIZE;
+
+    /**
+     * <p>
+     * Maximum total length in characters of the fields of a report. When a
+     * report exceeds it, the most expendable fields are truncated first:
+     * DropBox, radio and events logs, then system information,
+     * SharedPreferences, application log, logcat, and the stack trace last.
+     * The truncated fields are listed in
+     * {@link ReportField#TRUNCATED_FIELDS}. Set to 0 to disable the limit.
+     * </p>
+     * 
+     * @return Maximum total length in characters of a report (default 512K).
+     */
+    int maxReportSize() default ACRAConstants.DEFAULT_MAX_REPORT_SIZE;
+
+    /**
+     * <p>
+     * Maximum duration in milliseconds of the sending of reports by each
+     * {@link org.acra.sender.ReportSender}, when several senders are
+     * registered, even if only one of them has reports left to send. The
+     * senders are run concurrently, and a sender which does not complete in
+     * time is considered as failed for the reports it had to send. It is not
+     * called again until it returns. A single registered sender has no
+     * timeout.
+     * </p>
+     * 
+     * @return Maximum duration in milliseconds of the sending of reports by
+     *         each sender (default 1 minute).
+     */
+    int senderTimeout() default ACRAConstants.DEFAULT_SENDER_TIMEOUT;
+
+    /**
+     * <p>
+     * Set this to true to check the pending reports on application start in
+     * the background, once the main thread is idle, rather than in
+     * {@link ACRA#init(android.app.Application)}. The exception handler is
+     * still installed right away. Use
+     * {@link org.acra.ErrorReporter#addStartupCheckListener(org.acra.StartupCheckListener)}
+     * to be notified when the check is done.
+     * </p>
+     * 
+     * @return True if the pending reports are checked in the background on
+     *         application start.
+     */
+    boolean deferStartupChecks() default ACRAConstants.DEFAULT_DEFER_STARTUP_CHECKS;
+
+    /**
+     * <p>
+     * Number of consecutive crashes, each one within
+     * {@link #crashLoopWindow()} of the application start, after which the
+     * application is considered in a crash loop. In a crash loop, reports are
+     * collected with {@link ACRAConstants#MINIMAL_REPORT_FIELDS}, they are not
+     * sent until the application has run for {@link #crashLoopWindow()}
+     * without crashing, and they hold the number of consecutive crashes in
+     * {@link ReportField#CRASH_LOOP_COUNT}. Set to 0 to disable the detection.
+     * </p>
+     * 
+     * @return Number of consecutive startup crashes making a crash loop
+     *         (default 3).
+     */
+    int crashLoopThreshold() default ACRAConstants.DEFAULT_CRASH_LOOP_THRESHOLD;
+
+    /**
+     * <p>
+     * Duration in milliseconds after the application start during which a
+     * crash counts towards a crash loop, see {@link #crashLoopThreshold()}.
+     * Once the application has run that long without crashing, the count of
+     * consecutive crashes is reset.
+     * </p>
+     * 
+     * @return Duration in milliseconds after the application start during
+     *         which a crash counts towards a crash loop (default 15 seconds).
+     */
+    int crashLoopWindow() default ACRAConstants.DEFAULT_CRASH_LOOP_WINDOW;
 }
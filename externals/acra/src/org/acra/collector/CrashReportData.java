@@ -16,6 +16,8 @@
 
 package org.acra.collector;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.EnumMap;
 import java.util.Properties;
 
@@ -55,4 +57,15 @@ public final class CrashReportData extends EnumMap<ReportField, String> {
     public JSONObject toJSON() throws JSONReportException {
         return JSONReportBuilder.buildJSONReport(this);
     }
+
+    /**
+     * Writes the report as JSON, with the same structure as {@link #toJSON()}
+     * but without building a JSONObject tree.
+     * 
+     * @param writer Where the JSON text is written.
+     * @throws IOException if the writer fails.
+     */
+    public void writeJSON(Writer writer) throws IOException {
+        JSONReportBuilder.writeJSONReport(this, writer);
+    }
 }
@@ -24,11 +24,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.acra.ACRA;
@@ -64,12 +66,20 @@ public final class CrashReportDataFactory {
     private final Time appStartDate;
     private final String initialConfiguration;
 
+    /**
+     * In memory copy of the SharedPreferences, null unless
+     * {@link ReportsCrashes#snapshotSharedPreferences()} is enabled.
+     */
+    private final SharedPreferencesSnapshot sharedPreferencesSnapshot;
+
     public CrashReportDataFactory(Context context, SharedPreferences prefs, Time appStartDate,
             String initialConfiguration) {
         this.context = context;
         this.prefs = prefs;
         this.appStartDate = appStartDate;
         this.initialConfiguration = initialConfiguration;
+        sharedPreferencesSnapshot = ACRA.getConfig().snapshotSharedPreferences()
+                && getReportFields().contains(SHARED_PREFERENCES) ? new SharedPreferencesSnapshot(context) : null;
     }
 
     /**
@@ -133,9 +143,30 @@ public final class CrashReportDataFactory {
      *         at the instant of the Exception.
      */
     public CrashReportData createCrashData(Throwable th, boolean isSilentReport, Thread brokenThread) {
+        return createCrashData(th, isSilentReport, brokenThread, 0);
+    }
+
+    /**
+     * Collects crash data.
+     * 
+     * @param th
+     *            Throwable that caused the crash.
+     * @param isSilentReport
+     *            Whether to report this report as being sent silently.
+     * @param brokenThread  Thread on which the error occurred.
+     * @param crashLoopCount Number of consecutive crashes on application start
+     *            if the application is in a crash loop, 0 otherwise. In a
+     *            crash loop, only {@link ACRAConstants#MINIMAL_REPORT_FIELDS}
+     *            are collected.
+     * @return CrashReportData representing the current state of the application
+     *         at the instant of the Exception.
+     */
+    public CrashReportData createCrashData(Throwable th, boolean isSilentReport, Thread brokenThread,
+            int crashLoopCount) {
         final CrashReportData crashReportData = new CrashReportData();
+        final Set<ReportField> crashReportFields = crashLoopCount > 0 ? getMinimalReportFields()
+                : getReportFields();
         try {
-            final List<ReportField> crashReportFields = getReportFields();
 
             // Make every entry here bullet proof and move any slightly dodgy
             // ones to the end.
@@ -149,6 +180,10 @@ public final class CrashReportDataFactory {
                 crashReportData.put(IS_SILENT, "true");
             }
 
+            if (crashLoopCount > 0 && crashReportFields.contains(CRASH_LOOP_COUNT)) {
+                crashReportData.put(CRASH_LOOP_COUNT, Integer.toString(crashLoopCount));
+            }
+
             // Generate report uuid
             if (crashReportFields.contains(REPORT_ID)) {
                 crashReportData.put(ReportField.REPORT_ID, UUID.randomUUID().toString());
@@ -271,7 +306,9 @@ public final class CrashReportDataFactory {
 
             // SharedPreferences
             if (crashReportFields.contains(SHARED_PREFERENCES)) {
-                crashReportData.put(SHARED_PREFERENCES, SharedPreferencesCollector.collect(context));
+                crashReportData.put(SHARED_PREFERENCES,
+                        sharedPreferencesSnapshot != null ? sharedPreferencesSnapshot.toString()
+                                : SharedPreferencesCollector.collect(context));
             }
 
             // Now get all the crash data that relies on the PackageManager
@@ -309,15 +346,14 @@ public final class CrashReportDataFactory {
             		&& (pm.hasPermission(Manifest.permission.READ_LOGS))
             			|| Compatibility.getAPILevel() >= 16) {
                 Log.i(ACRA.LOG_TAG, "READ_LOGS granted! ACRA can include LogCat and DropBox data.");
-                if (crashReportFields.contains(LOGCAT)) {
-                    crashReportData.put(LOGCAT, LogCatCollector.collectLogCat(null));
-                }
-                if (crashReportFields.contains(EVENTSLOG)) {
-                    crashReportData.put(EVENTSLOG, LogCatCollector.collectLogCat("events"));
-                }
-                if (crashReportFields.contains(RADIOLOG)) {
-                    crashReportData.put(RADIOLOG, LogCatCollector.collectLogCat("radio"));
+                final List<ReportField> logcatFields = new ArrayList<ReportField>();
+                for (ReportField logcatField : new ReportField[] { LOGCAT, EVENTSLOG, RADIOLOG }) {
+                    if (crashReportFields.contains(logcatField)) {
+                        logcatFields.add(logcatField);
+                    }
                 }
+                // All the buffers are read at once.
+                crashReportData.putAll(LogCatCollector.collectLogCat(logcatFields));
                 if (crashReportFields.contains(DROPBOX)) {
                     crashReportData.put(DROPBOX,
                             DropBoxCollector.read(context, ACRA.getConfig().additionalDropBoxTags()));
@@ -355,6 +391,7 @@ public final class CrashReportDataFactory {
             Log.e(LOG_TAG, "Error while reading application log file " + ACRA.getConfig().applicationLogFile() + ".", e);
         }
 
+        ReportSizeBudget.enforce(crashReportData, crashReportFields);
         return crashReportData;
     }
 
@@ -399,21 +436,18 @@ public final class CrashReportDataFactory {
         return stacktraceAsString;
     }
 
-    private List<ReportField> getReportFields() {
-        final ReportsCrashes config = ACRA.getConfig();
-        final ReportField[] customReportFields = config.customReportContent();
-
-        final ReportField[] fieldsList;
-        if (customReportFields.length != 0) {
-            Log.d(LOG_TAG, "Using custom Report Fields");
-            fieldsList = customReportFields;
-        } else if (config.mailTo() == null || "".equals(config.mailTo())) {
-            Log.d(LOG_TAG, "Using default Report Fields");
-            fieldsList = ACRAConstants.DEFAULT_REPORT_FIELDS;
-        } else {
-            Log.d(LOG_TAG, "Using default Mail Report Fields");
-            fieldsList = ACRAConstants.DEFAULT_MAIL_REPORT_FIELDS;
-        }
-        return Arrays.asList(fieldsList);
+    /**
+     * @return The configured fields which are part of
+     *         {@link ACRAConstants#MINIMAL_REPORT_FIELDS}.
+     */
+    private Set<ReportField> getMinimalReportFields() {
+        final Set<ReportField> fields = EnumSet.noneOf(ReportField.class);
+        fields.addAll(getReportFields());
+        fields.retainAll(Arrays.asList(ACRAConstants.MINIMAL_REPORT_FIELDS));
+        return fields;
+    }
+
+    private Set<ReportField> getReportFields() {
+        return ACRA.getConfig().getReportFields();
     }
 }
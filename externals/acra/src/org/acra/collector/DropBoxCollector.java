@@ -24,6 +24,7 @@ import java.util.List;
 import org.acra.ACRA;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.format.Time;
 import android.util.Log;
 
@@ -46,9 +47,37 @@ final class DropBoxCollector {
 
     private static final String NO_RESULT = "N/A";
 
+    /** Maximum length of the text read from an entry. */
+    private static final int MAX_ENTRY_TEXT_LENGTH = 500;
+
+    /** Maximum number of entries collected for a tag. */
+    private static final int MAX_ENTRIES_PER_TAG = 5;
+
+    /** Maximum length of the text collected for a tag. */
+    private static final int MAX_TAG_LENGTH = 4 * 1024;
+
+    /** Maximum number of entries collected for all tags. */
+    private static final int MAX_ENTRIES = 20;
+
+    /** Maximum length of the whole result. */
+    private static final int MAX_LENGTH = 32 * 1024;
+
+    /** Maximum duration of the collection in milliseconds. */
+    private static final long MAX_DURATION = 3000;
+
+    private static Method getNextEntry;
+    private static Method getText;
+    private static Method getTimeMillis;
+    private static Method close;
+
     /**
      * Read latest messages contained in the DropBox for system related tags and
      * optional developer-set tags.
+     * <p>
+     * The most recent entries of each tag are collected first, within entry
+     * count and text length budgets per tag and for the whole result. The
+     * collection stops when {@link #MAX_DURATION} is exceeded.
+     * </p>
      * 
      * @param context
      *            The application context.
@@ -65,8 +94,7 @@ final class DropBoxCollector {
             }
 
             final Object dropbox = context.getSystemService(serviceName);
-            final Method getNextEntry = dropbox.getClass().getMethod("getNextEntry", String.class, long.class);
-            if (getNextEntry == null) {
+            if (!resolveMethods(dropbox)) {
                 return "";
             }
 
@@ -88,30 +116,67 @@ final class DropBoxCollector {
                 return "No tag configured for collection.";
             }
 
+            final long deadline = SystemClock.uptimeMillis() + MAX_DURATION;
             final StringBuilder dropboxContent = new StringBuilder();
+            int entryCount = 0;
             for (String tag : tags) {
+                if (SystemClock.uptimeMillis() > deadline) {
+                    dropboxContent.append("Collection time exceeded.").append('\n');
+                    break;
+                }
                 dropboxContent.append("Tag: ").append(tag).append('\n');
+
+                // The DropBox can only be traversed from the oldest entry, so
+                // only the dates are read to find the most recent entries.
+                final List<Long> entryTimes = new ArrayList<Long>();
                 Object entry = getNextEntry.invoke(dropbox, tag, time);
-                if (entry == null) {
+                while (entry != null && SystemClock.uptimeMillis() <= deadline) {
+                    final long msec;
+                    try {
+                        msec = (Long) getTimeMillis.invoke(entry, (Object[]) null);
+                    } finally {
+                        close.invoke(entry, (Object[]) null);
+                    }
+                    entryTimes.add(msec);
+                    entry = getNextEntry.invoke(dropbox, tag, msec);
+                }
+                if (entry != null) {
+                    close.invoke(entry, (Object[]) null);
+                }
+                if (entryTimes.isEmpty()) {
                     dropboxContent.append("Nothing.").append('\n');
                     continue;
                 }
 
-                final Method getText = entry.getClass().getMethod("getText", int.class);
-                final Method getTimeMillis = entry.getClass().getMethod("getTimeMillis", (Class[]) null);
-                final Method close = entry.getClass().getMethod("close", (Class[]) null);
-                while (entry != null) {
-                    final long msec = (Long) getTimeMillis.invoke(entry, (Object[]) null);
-                    timer.set(msec);
-                    dropboxContent.append("@").append(timer.format2445()).append('\n');
-                    final String text = (String) getText.invoke(entry, 500);
-                    if (text != null) {
-                        dropboxContent.append("Text: ").append(text).append('\n');
-                    } else {
-                        dropboxContent.append("Not Text!").append('\n');
+                final int tagStart = dropboxContent.length();
+                int i = entryTimes.size() - 1;
+                for (int tagEntryCount = 0; i >= 0; i--, tagEntryCount++) {
+                    if (tagEntryCount == MAX_ENTRIES_PER_TAG || entryCount == MAX_ENTRIES
+                            || dropboxContent.length() - tagStart >= MAX_TAG_LENGTH
+                            || dropboxContent.length() >= MAX_LENGTH || SystemClock.uptimeMillis() > deadline) {
+                        break;
                     }
-                    close.invoke(entry, (Object[]) null);
-                    entry = getNextEntry.invoke(dropbox, tag, msec);
+                    // Entries are looked up by the time preceding them.
+                    entry = getNextEntry.invoke(dropbox, tag, entryTimes.get(i) - 1);
+                    if (entry == null) {
+                        continue;
+                    }
+                    try {
+                        timer.set(entryTimes.get(i));
+                        dropboxContent.append("@").append(timer.format2445()).append('\n');
+                        final String text = (String) getText.invoke(entry, MAX_ENTRY_TEXT_LENGTH);
+                        if (text != null) {
+                            dropboxContent.append("Text: ").append(text).append('\n');
+                        } else {
+                            dropboxContent.append("Not Text!").append('\n');
+                        }
+                    } finally {
+                        close.invoke(entry, (Object[]) null);
+                    }
+                    entryCount++;
+                }
+                if (i >= 0) {
+                    dropboxContent.append(i + 1).append(" older entries not collected.").append('\n');
                 }
             }
             return dropboxContent.toString();
@@ -128,8 +193,27 @@ final class DropBoxCollector {
             Log.i(ACRA.LOG_TAG, "DropBoxManager not available.");
         } catch (NoSuchFieldException e) {
             Log.i(ACRA.LOG_TAG, "DropBoxManager not available.");
+        } catch (ClassNotFoundException e) {
+            Log.i(ACRA.LOG_TAG, "DropBoxManager not available.");
         }
 
         return NO_RESULT;
     }
+
+    /**
+     * Looks up the DropBoxManager methods on the first collection only.
+     * 
+     * @return false if the DropBox can't be read.
+     */
+    private static synchronized boolean resolveMethods(Object dropbox) throws NoSuchMethodException,
+            ClassNotFoundException {
+        if (getNextEntry == null) {
+            final Class<?> entryClass = Class.forName("android.os.DropBoxManager$Entry");
+            getText = entryClass.getMethod("getText", int.class);
+            getTimeMillis = entryClass.getMethod("getTimeMillis", (Class[]) null);
+            close = entryClass.getMethod("close", (Class[]) null);
+            getNextEntry = dropbox.getClass().getMethod("getNextEntry", String.class, long.class);
+        }
+        return getNextEntry != null;
+    }
 }
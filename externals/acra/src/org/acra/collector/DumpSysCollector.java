@@ -48,7 +48,7 @@ final class DumpSysCollector {
             commandLine.add("meminfo");
             commandLine.add(Integer.toString(android.os.Process.myPid()));
 
-            final Process process = Runtime.getRuntime().exec(commandLine.toArray(new String[commandLine.size()]));
+            final Process process = ACRA.getConfig().processFactory().start(commandLine);
             final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
 
             while (true) {
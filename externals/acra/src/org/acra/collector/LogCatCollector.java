@@ -18,22 +18,31 @@ package org.acra.collector;
 import android.util.Log;
 import org.acra.ACRA;
 import org.acra.ACRAConstants;
+import org.acra.ReportField;
 import org.acra.annotation.ReportsCrashes;
-import org.acra.util.BoundedLinkedList;
+import org.acra.util.BoundedLineBuffer;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.acra.ACRA.LOG_TAG;
 
 /**
  * Executes logcat commands and collects it's output.
+ * <p>
+ * The requested buffers are read straight from logd when possible. Otherwise
+ * they are collected with logcat: with a single process before Android 5.0,
+ * which separates the buffers in its output, and with one process per report
+ * field since, as logd interleaves the buffers.
+ * </p>
  * 
  * @author Kevin Gaudin
  * 
@@ -46,88 +55,269 @@ class LogCatCollector {
     private static final int DEFAULT_TAIL_COUNT = 100;
 
     /**
-     * Executes the logcat command with arguments taken from
-     * {@link ReportsCrashes#logcatArguments()}
+     * Prefix of the lines logcat prints when it switches to another buffer.
+     */
+    private static final String BUFFER_SEPARATOR = "--------- ";
+
+    /**
+     * Collects the logcat buffers of {@link ReportField#LOGCAT},
+     * {@link ReportField#EVENTSLOG} and {@link ReportField#RADIOLOG}, with the
+     * arguments taken from {@link ReportsCrashes#logcatArguments()}.
      * 
-     * @param bufferName
-     *            The name of the buffer to be read: "main" (default), "radio"
-     *            or "events".
-     * @return A {@link String} containing the latest lines of the output.
-     *         Default is 100 lines, use "-t", "300" in
+     * @param fields
+     *            The fields to collect.
+     * @return The latest lines of each buffer. Default is 100 lines per
+     *         buffer, use "-t", "300" in
      *         {@link ReportsCrashes#logcatArguments()} if you want 300 lines.
      *         You should be aware that increasing this value causes a longer
      *         report generation time and a bigger footprint on the device data
      *         plan consumption.
      */
-    public static String collectLogCat(String bufferName) {
-        final int myPid = android.os.Process.myPid();
-        String myPidStr = null;
-        if (ACRA.getConfig().logcatFilterByPid() && myPid > 0) {
-            myPidStr = Integer.toString(myPid) +"):";
-        }
-
-        final List<String> commandLine = new ArrayList<String>();
-        commandLine.add("logcat");
-        if (bufferName != null) {
-            commandLine.add("-b");
-            commandLine.add(bufferName);
+    public static Map<ReportField, String> collectLogCat(List<ReportField> fields) {
+        if (fields.isEmpty()) {
+            return new EnumMap<ReportField, String>(ReportField.class);
         }
+        final int myPid = android.os.Process.myPid();
+        final int filterPid = ACRA.getConfig().logcatFilterByPid() && myPid > 0 ? myPid : 0;
 
-        // "-t n" argument has been introduced in FroYo (API level 8). For
-        // devices with lower API level, we will have to emulate its job.
-        final int tailCount;
         final List<String> logcatArgumentsList = new ArrayList<String>(
                 Arrays.asList(ACRA.getConfig().logcatArguments()));
-
         final int tailIndex = logcatArgumentsList.indexOf("-t");
-        if (tailIndex > -1 && tailIndex < logcatArgumentsList.size()) {
+        final int tailCount;
+        if (tailIndex > -1 && tailIndex < logcatArgumentsList.size() - 1) {
             tailCount = Integer.parseInt(logcatArgumentsList.get(tailIndex + 1));
-            if (Compatibility.getAPILevel() < 8) {
-                logcatArgumentsList.remove(tailIndex + 1);
-                logcatArgumentsList.remove(tailIndex);
-                logcatArgumentsList.add("-d");
-            }
         } else {
             tailCount = -1;
         }
 
-        final LinkedList<String> logcatBuf = new BoundedLinkedList<String>(tailCount > 0 ? tailCount
-                : DEFAULT_TAIL_COUNT);
+        if (LogdReader.isAvailable()) {
+            final String format = getLogdFormat(logcatArgumentsList);
+            if (format != null) {
+                try {
+                    return collectFromLogd(fields, tailCount > 0 ? tailCount : DEFAULT_TAIL_COUNT, filterPid, format);
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Could not read logs from logd, starting logcat", e);
+                }
+            }
+        }
+        if (fields.size() > 1 && Compatibility.getAPILevel() >= 21) {
+            // logd interleaves the entries of the buffers by time, without
+            // separators unless -D is given (API level 24), and -t counts
+            // the lines over all of them: give each field its own process.
+            final Map<ReportField, String> result = new EnumMap<ReportField, String>(ReportField.class);
+            for (ReportField field : fields) {
+                result.putAll(collectFromLogcat(Collections.singletonList(field), new ArrayList<String>(
+                        logcatArgumentsList), tailIndex, tailCount, filterPid));
+            }
+            return result;
+        }
+        return collectFromLogcat(fields, logcatArgumentsList, tailIndex, tailCount, filterPid);
+    }
+
+    private static Map<ReportField, String> collectFromLogd(List<ReportField> fields, int tailCount, int pid,
+            String format) throws IOException {
+        final int[][] groups = new int[fields.size()][];
+        for (int i = 0; i < groups.length; i++) {
+            switch (fields.get(i)) {
+            case EVENTSLOG:
+                groups[i] = new int[] { LogdReader.LOG_ID_EVENTS };
+                break;
+            case RADIOLOG:
+                groups[i] = new int[] { LogdReader.LOG_ID_RADIO };
+                break;
+            default:
+                // The default buffers of logcat.
+                groups[i] = new int[] { LogdReader.LOG_ID_MAIN, LogdReader.LOG_ID_SYSTEM, LogdReader.LOG_ID_CRASH };
+            }
+        }
+
+        Log.d(LOG_TAG, "Retrieving logcat output from logd...");
+        final String[] logs = LogdReader.read(groups, tailCount, pid, format);
+        final Map<ReportField, String> result = new EnumMap<ReportField, String>(ReportField.class);
+        for (int i = 0; i < logs.length; i++) {
+            result.put(fields.get(i), logs[i]);
+        }
+        return result;
+    }
+
+    private static Map<ReportField, String> collectFromLogcat(List<ReportField> fields,
+            List<String> logcatArgumentsList, int tailIndex, int tailCount, int pid) {
+        final List<String> commandLine = new ArrayList<String>();
+        commandLine.add("logcat");
+        final Map<String, ReportField> fieldByBuffer = new HashMap<String, ReportField>();
+        for (ReportField field : fields) {
+            for (String bufferName : getBufferNames(field)) {
+                commandLine.add("-b");
+                commandLine.add(bufferName);
+                fieldByBuffer.put(bufferName, field);
+            }
+        }
+
+        // "-t n" argument has been introduced in FroYo (API level 8), and it
+        // counts the lines over all the buffers. For devices with lower API
+        // level, or for several fields, we will have to emulate its job: the
+        // latest lines of each field are kept below.
+        if (tailCount > 0 && (Compatibility.getAPILevel() < 8 || fields.size() > 1)) {
+            logcatArgumentsList.remove(tailIndex + 1);
+            logcatArgumentsList.remove(tailIndex);
+            logcatArgumentsList.add("-d");
+        }
         commandLine.addAll(logcatArgumentsList);
 
+        final Map<ReportField, BoundedLineBuffer> logcatBufs = new EnumMap<ReportField, BoundedLineBuffer>(
+                ReportField.class);
+        for (ReportField field : fields) {
+            logcatBufs.put(field, new BoundedLineBuffer(tailCount > 0 ? tailCount : DEFAULT_TAIL_COUNT,
+                    ReportSizeBudget.getMaxLogLength()));
+        }
+
+        Process process = null;
         try {
-            final Process process = Runtime.getRuntime().exec(commandLine.toArray(new String[commandLine.size()]));
-            final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+            process = ACRA.getConfig().processFactory().start(commandLine);
+            final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()),
+                    ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
 
             Log.d(LOG_TAG, "Retrieving logcat output...");
 
-            // Dump stderr to null
-            new Thread(new Runnable() {
-                public void run() {
-                    try {
-                        InputStream stderr = process.getErrorStream();
-                        byte[] dummy = new byte[ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES];
-                        while (stderr.read(dummy) >= 0)
-                            ;
-                    } catch (IOException e) {
-                    }
-                }
-            }).start();
-
+            // Without separators, all the lines come from the first buffer.
+            BoundedLineBuffer logcatBuf = logcatBufs.get(fields.get(0));
             while (true) {
                 final String line = bufferedReader.readLine();
                 if (line == null) {
                     break;
                 }
-                if (myPidStr == null || line.contains(myPidStr)) {
-                    logcatBuf.add(line + "\n");
+                if (line.startsWith(BUFFER_SEPARATOR)) {
+                    final ReportField field = fieldByBuffer.get(getSeparatorBufferName(line));
+                    if (field != null) {
+                        logcatBuf = logcatBufs.get(field);
+                        continue;
+                    }
+                }
+                if (pid <= 0 || parsePid(line) == pid) {
+                    logcatBuf.add(line);
                 }
             }
 
         } catch (IOException e) {
             Log.e(ACRA.LOG_TAG, "LogCatCollector.collectLogCat could not retrieve data.", e);
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+
+        final Map<ReportField, String> result = new EnumMap<ReportField, String>(ReportField.class);
+        for (Map.Entry<ReportField, BoundedLineBuffer> logcatBuf : logcatBufs.entrySet()) {
+            result.put(logcatBuf.getKey(), logcatBuf.getValue().toString());
+        }
+        return result;
+    }
+
+    /**
+     * @return The logcat buffers of a report field.
+     */
+    private static List<String> getBufferNames(ReportField field) {
+        final List<String> bufferNames = new ArrayList<String>();
+        switch (field) {
+        case EVENTSLOG:
+            bufferNames.add("events");
+            break;
+        case RADIOLOG:
+            bufferNames.add("radio");
+            break;
+        default:
+            // The default buffers of logcat, depending on the Android version.
+            bufferNames.add("main");
+            if (Compatibility.getAPILevel() >= 14) {
+                bufferNames.add("system");
+            }
+            if (Compatibility.getAPILevel() >= 21) {
+                bufferNames.add("crash");
+            }
+        }
+        return bufferNames;
+    }
+
+    /**
+     * @param separator
+     *            A line such as "--------- beginning of main" or, before
+     *            Android 5.0, "--------- switch to /dev/log/main".
+     * @return The name of the buffer which follows the separator.
+     */
+    private static String getSeparatorBufferName(String separator) {
+        final String device = separator.substring(separator.lastIndexOf(' ') + 1);
+        return device.substring(device.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return The arguments as a logd output format, null if they have no
+     *         equivalent without logcat.
+     */
+    private static String getLogdFormat(List<String> logcatArgumentsList) {
+        // Default format of logcat.
+        String format = Compatibility.getAPILevel() >= 24 ? LogdReader.FORMAT_THREADTIME : LogdReader.FORMAT_BRIEF;
+        for (int i = 0; i < logcatArgumentsList.size(); i++) {
+            final String argument = logcatArgumentsList.get(i);
+            if ("-t".equals(argument)) {
+                i++;
+            } else if ("-v".equals(argument) && i + 1 < logcatArgumentsList.size()) {
+                format = logcatArgumentsList.get(++i);
+                if (!LogdReader.FORMAT_BRIEF.equals(format) && !LogdReader.FORMAT_TIME.equals(format)
+                        && !LogdReader.FORMAT_THREADTIME.equals(format)) {
+                    return null;
+                }
+            } else if (!"-d".equals(argument)) {
+                return null;
+            }
+        }
+        return format;
+    }
+
+    /**
+     * Extracts the process id of a logcat line, in the threadtime ("date time
+     * 1234 5678 D Tag: message"), brief, process or time ("D/Tag( 1234):
+     * message") formats. The threadtime layout is recognized first, as its
+     * message may itself contain "(1234):".
+     * 
+     * @return The process id, -1 if it could not be found.
+     */
+    static int parsePid(String line) {
+        final String[] tokens = line.trim().split(" +", 4);
+        if (tokens.length == 4 && tokens[0].length() == 5 && tokens[0].charAt(2) == '-'
+                && isDigits(tokens[2])) {
+            try {
+                return Integer.parseInt(tokens[2]);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
         }
 
-        return logcatBuf.toString();
+        for (int end = line.indexOf("):"); end >= 0; end = line.indexOf("):", end + 1)) {
+            int start = end;
+            while (start > 0 && Character.isDigit(line.charAt(start - 1))) {
+                start--;
+            }
+            final int digitsStart = start;
+            while (start > 0 && line.charAt(start - 1) == ' ') {
+                start--;
+            }
+            if (digitsStart < end && start > 0 && line.charAt(start - 1) == '(') {
+                try {
+                    return Integer.parseInt(line.substring(digitsStart, end));
+                } catch (NumberFormatException e) {
+                    // Not a process id, look further.
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigits(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return token.length() > 0;
     }
 }
@@ -21,7 +21,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
-import org.acra.util.BoundedLinkedList;
+import org.acra.util.BoundedLineBuffer;
 
 import android.app.Application;
 import android.content.Context;
@@ -53,7 +53,7 @@ class LogFileCollector {
      * @throws IOException
      */
     public static String collectLogFile(Context context, String fileName, int numberOfLines) throws IOException {
-        BoundedLinkedList<String> resultBuffer = new BoundedLinkedList<String>(numberOfLines);
+        final BoundedLineBuffer resultBuffer = new BoundedLineBuffer(numberOfLines, ReportSizeBudget.getMaxLogLength());
         final BufferedReader reader;
         if (fileName.contains("/")) {
             reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)), 1024);
@@ -63,7 +63,7 @@ class LogFileCollector {
         try {
             String line = reader.readLine();
             while (line != null) {
-                resultBuffer.add(line + "\n");
+                resultBuffer.add(line);
                 line = reader.readLine();
             }
         } finally {
@@ -0,0 +1,398 @@
+package org.acra.collector;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+/**
+ * Reads log buffers straight from the logd daemon (Android 5.0 and above),
+ * without starting a logcat process.
+ * <p>
+ * Each group of buffers is read with its own request on the
+ * <code>logdr</code> socket, so that each group gets its own tail. Each entry
+ * is received as one packet in the binary logger format, its process id is
+ * compared numerically and it is kept as raw bytes in a fixed size ring. Only
+ * the retained entries are formatted, in the brief, time or threadtime format
+ * of logcat.
+ * </p>
+ */
+final class LogdReader {
+
+    /** Log ids of the logd buffers. */
+    static final int LOG_ID_MAIN = 0;
+    static final int LOG_ID_RADIO = 1;
+    static final int LOG_ID_EVENTS = 2;
+    static final int LOG_ID_SYSTEM = 3;
+    static final int LOG_ID_CRASH = 4;
+    private static final int LOG_ID_COUNT = 5;
+
+    /** Output formats, named after the logcat -v options. */
+    static final String FORMAT_BRIEF = "brief";
+    static final String FORMAT_TIME = "time";
+    static final String FORMAT_THREADTIME = "threadtime";
+
+    private static final String SOCKET_NAME = "logdr";
+    private static final int SOCKET_TIMEOUT = 3000;
+
+    /** Largest packet sent by logd, LOGGER_ENTRY_MAX_LEN. */
+    private static final int MAX_PACKET_SIZE = 5 * 1024;
+
+    /** Size of the version 1 header, which has no header size field. */
+    private static final int V1_HEADER_SIZE = 20;
+    private static final int LID_OFFSET = 20;
+
+    private static final int EVENT_TYPE_INT = 0;
+    private static final int EVENT_TYPE_LONG = 1;
+    private static final int EVENT_TYPE_STRING = 2;
+    private static final int EVENT_TYPE_LIST = 3;
+    private static final int EVENT_TYPE_FLOAT = 4;
+
+    private static final String EVENT_LOG_TAGS_FILE = "/system/etc/event-log-tags";
+    private static final String PRIORITIES = "??VDIWEFS";
+
+    private LogdReader() {
+    }
+
+    /**
+     * @return true if the logd socket can be used on this device.
+     */
+    static boolean isAvailable() {
+        return Compatibility.getAPILevel() >= 21;
+    }
+
+    /**
+     * Reads the latest entries of several buffers.
+     *
+     * @param groups
+     *            The buffers to read, LOG_ID_* constants. The entries of the
+     *            buffers of a group are merged, as logcat does when it is
+     *            given several buffers.
+     * @param tailCount
+     *            Maximum number of entries kept for each group.
+     * @param pid
+     *            Only the entries of this process are kept, none if 0 or
+     *            less.
+     * @param format
+     *            One of the FORMAT_* constants.
+     * @return The formatted entries of each group, oldest first.
+     * @throws IOException
+     *             If logd could not be queried.
+     */
+    static String[] read(int[][] groups, int tailCount, int pid, String format) throws IOException {
+        final EntryRing[] rings = new EntryRing[groups.length];
+        boolean events = false;
+        for (int group = 0; group < groups.length; group++) {
+            rings[group] = new EntryRing(tailCount);
+            readGroup(groups[group], rings[group], tailCount, pid);
+            for (int lid : groups[group]) {
+                events |= lid == LOG_ID_EVENTS;
+            }
+        }
+
+        final Map<Integer, String> eventTags = events ? readEventTags() : null;
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        final String[] result = new String[groups.length];
+        for (int group = 0; group < groups.length; group++) {
+            final EntryRing ring = rings[group];
+            final StringBuilder text = new StringBuilder();
+            for (int i = 0; i < ring.size(); i++) {
+                final ByteBuffer entry = ByteBuffer.wrap(ring.get(i), 0, ring.length(i)).order(ByteOrder.LITTLE_ENDIAN);
+                final int lid = getHeaderSize(entry) > LID_OFFSET ? entry.getInt(LID_OFFSET) : LOG_ID_MAIN;
+                appendEntry(text, entry, lid == LOG_ID_EVENTS ? eventTags : null, format, dateFormat);
+            }
+            result[group] = text.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Reads the latest entries of a group of buffers with one request, so
+     * that the tail is counted over the buffers of this group only.
+     */
+    private static void readGroup(int[] lids, EntryRing ring, int tailCount, int pid) throws IOException {
+        final boolean[] requested = new boolean[LOG_ID_COUNT];
+        final StringBuilder command = new StringBuilder("dumpAndClose lids=");
+        for (int i = 0; i < lids.length; i++) {
+            requested[lids[i]] = true;
+            command.append(i > 0 ? "," : "").append(lids[i]);
+        }
+        command.append(" tail=").append(tailCount);
+        if (pid > 0) {
+            command.append(" pid=").append(pid);
+        }
+
+        final LocalSocket socket = createSeqPacketSocket();
+        try {
+            socket.connect(new LocalSocketAddress(SOCKET_NAME, LocalSocketAddress.Namespace.RESERVED));
+            socket.setSoTimeout(SOCKET_TIMEOUT);
+            final OutputStream out = socket.getOutputStream();
+            out.write(command.toString().getBytes("US-ASCII"));
+            out.flush();
+
+            // Each read returns exactly one entry.
+            final InputStream in = socket.getInputStream();
+            final byte[] packet = new byte[MAX_PACKET_SIZE];
+            final ByteBuffer header = ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN);
+            int length;
+            while ((length = in.read(packet)) > 0) {
+                if (length < V1_HEADER_SIZE) {
+                    continue;
+                }
+                final int headerSize = getHeaderSize(header);
+                final int lid = headerSize > LID_OFFSET ? header.getInt(LID_OFFSET) : LOG_ID_MAIN;
+                if (lid < 0 || lid >= LOG_ID_COUNT || !requested[lid]) {
+                    continue;
+                }
+                if (pid > 0 && header.getInt(4) != pid) {
+                    continue;
+                }
+                ring.add(packet, length);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * LocalSocket(int) and SOCKET_SEQPACKET are only public since API level
+     * 19: logd needs a packet socket to send one entry per read.
+     */
+    private static LocalSocket createSeqPacketSocket() throws IOException {
+        try {
+            final int seqPacket = LocalSocket.class.getField("SOCKET_SEQPACKET").getInt(null);
+            final Constructor<LocalSocket> constructor = LocalSocket.class.getConstructor(int.class);
+            return constructor.newInstance(seqPacket);
+        } catch (Exception e) {
+            final IOException ioe = new IOException("Could not create a SEQPACKET LocalSocket");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private static int getHeaderSize(ByteBuffer entry) {
+        final int headerSize = entry.getShort(2) & 0xffff;
+        return headerSize < V1_HEADER_SIZE ? V1_HEADER_SIZE : headerSize;
+    }
+
+    private static void appendEntry(StringBuilder text, ByteBuffer entry, Map<Integer, String> eventTags,
+            String format, SimpleDateFormat dateFormat) {
+        final int payloadLength = entry.getShort(0) & 0xffff;
+        final int pid = entry.getInt(4);
+        final int tid = entry.getInt(8);
+        final long time = entry.getInt(12) * 1000L + entry.getInt(16) / 1000000;
+        final int payloadStart = getHeaderSize(entry);
+        final int payloadEnd = Math.min(entry.limit(), payloadStart + payloadLength);
+        if (payloadStart >= payloadEnd) {
+            return;
+        }
+
+        final char priority;
+        final String tag;
+        final String message;
+        if (eventTags != null) {
+            if (payloadEnd - payloadStart < 4) {
+                return;
+            }
+            final int tagNumber = entry.getInt(payloadStart);
+            final String tagName = eventTags.get(tagNumber);
+            priority = 'I';
+            tag = tagName != null ? tagName : Integer.toString(tagNumber);
+            entry.position(payloadStart + 4);
+            entry.limit(payloadEnd);
+            final StringBuilder values = new StringBuilder();
+            appendEventValue(values, entry);
+            message = values.toString();
+        } else {
+            final byte[] payload = entry.array();
+            final int priorityIndex = payload[payloadStart];
+            priority = priorityIndex >= 0 && priorityIndex < PRIORITIES.length() ? PRIORITIES.charAt(priorityIndex)
+                    : '?';
+            final int tagEnd = indexOf(payload, (byte) 0, payloadStart + 1, payloadEnd);
+            tag = decode(payload, payloadStart + 1, tagEnd);
+            int messageEnd = tagEnd < payloadEnd ? indexOf(payload, (byte) 0, tagEnd + 1, payloadEnd) : payloadEnd;
+            // Like logcat, trailing new lines are not printed.
+            while (messageEnd > tagEnd + 1 && payload[messageEnd - 1] == '\n') {
+                messageEnd--;
+            }
+            message = tagEnd < payloadEnd ? decode(payload, tagEnd + 1, messageEnd) : "";
+        }
+
+        final String prefix = formatPrefix(format, dateFormat, time, priority, tag, pid, tid);
+        int lineStart = 0;
+        do {
+            int lineEnd = message.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = message.length();
+            }
+            text.append(prefix).append(message, lineStart, lineEnd).append('\n');
+            lineStart = lineEnd + 1;
+        } while (lineStart < message.length());
+    }
+
+    private static String formatPrefix(String format, SimpleDateFormat dateFormat, long time, char priority,
+            String tag, int pid, int tid) {
+        if (FORMAT_THREADTIME.equals(format)) {
+            return String.format(Locale.US, "%s %5d %5d %c %-8s: ", dateFormat.format(new Date(time)), pid, tid,
+                    priority, tag);
+        }
+        final String brief = String.format(Locale.US, "%c/%-8s(%5d): ", priority, tag, pid);
+        return FORMAT_BRIEF.equals(format) ? brief : dateFormat.format(new Date(time)) + " " + brief;
+    }
+
+    /**
+     * Appends a binary event value the way logcat prints it.
+     */
+    private static void appendEventValue(StringBuilder text, ByteBuffer entry) {
+        if (!entry.hasRemaining()) {
+            return;
+        }
+        final int type = entry.get();
+        switch (type) {
+        case EVENT_TYPE_INT:
+            if (entry.remaining() >= 4) {
+                text.append(entry.getInt());
+            }
+            break;
+        case EVENT_TYPE_LONG:
+            if (entry.remaining() >= 8) {
+                text.append(entry.getLong());
+            }
+            break;
+        case EVENT_TYPE_FLOAT:
+            if (entry.remaining() >= 4) {
+                text.append(entry.getFloat());
+            }
+            break;
+        case EVENT_TYPE_STRING:
+            if (entry.remaining() >= 4) {
+                final int length = Math.min(entry.getInt(), entry.remaining());
+                if (length > 0) {
+                    text.append(decode(entry.array(), entry.position(), entry.position() + length));
+                    entry.position(entry.position() + length);
+                }
+            }
+            break;
+        case EVENT_TYPE_LIST:
+            if (entry.hasRemaining()) {
+                final int count = entry.get() & 0xff;
+                text.append('[');
+                for (int i = 0; i < count && entry.hasRemaining(); i++) {
+                    if (i > 0) {
+                        text.append(',');
+                    }
+                    appendEventValue(text, entry);
+                }
+                text.append(']');
+            }
+            break;
+        default:
+            // Unknown type, the rest of the payload can't be decoded.
+            entry.position(entry.limit());
+        }
+    }
+
+    /**
+     * @return The names of the event log tags by number, empty if the tags
+     *         file can't be read.
+     */
+    private static Map<Integer, String> readEventTags() {
+        final Map<Integer, String> tags = new HashMap<Integer, String>();
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(EVENT_LOG_TAGS_FILE), 8192);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.trim().split("\\s+", 3);
+                    if (fields.length >= 2 && !fields[0].startsWith("#")) {
+                        try {
+                            tags.put(Integer.valueOf(fields[0]), fields[1]);
+                        } catch (NumberFormatException e) {
+                            // Not a tag definition.
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // Tags will be printed as numbers.
+        }
+        return tags;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static String decode(byte[] bytes, int from, int to) {
+        try {
+            return new String(bytes, from, to - from, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return new String(bytes, from, to - from);
+        }
+    }
+
+    /**
+     * The latest raw entries of a buffer. The slots are reused when they are
+     * large enough, so reading a long buffer does not allocate an array per
+     * entry.
+     */
+    private static final class EntryRing {
+        private final byte[][] entries;
+        private final int[] lengths;
+        private int next;
+        private int size;
+
+        EntryRing(int capacity) {
+            entries = new byte[Math.max(1, capacity)][];
+            lengths = new int[entries.length];
+        }
+
+        void add(byte[] entry, int length) {
+            if (entries[next] == null || entries[next].length < length) {
+                entries[next] = new byte[length];
+            }
+            System.arraycopy(entry, 0, entries[next], 0, length);
+            lengths[next] = length;
+            next = (next + 1) % entries.length;
+            if (size < entries.length) {
+                size++;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param index
+         *            0 for the oldest entry.
+         */
+        byte[] get(int index) {
+            return entries[(next - size + index + entries.length) % entries.length];
+        }
+
+        int length(int index) {
+            return lengths[(next - size + index + entries.length) % entries.length];
+        }
+    }
+}
@@ -19,18 +19,38 @@ package org.acra.collector;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Tools to retrieve key/value pairs from static fields and getters of any
  * class. Reflection API usage allows to retrieve data without having to
  * implement a class for each android version of each interesting class.
  * It can also help find hidden properties.
+ * <p>
+ * The fields and getters of a class are looked up on its first inspection
+ * only, later collections just read them. Instance members are ignored as
+ * they can't be read without an instance.
+ * </p>
  * 
  * @author Kevin Gaudin
  * 
  */
 final class ReflectionCollector {
 
+    /**
+     * Static fields of the inspected classes, looked up once per class.
+     */
+    private static final Map<Class<?>, Field[]> STATIC_FIELDS = new HashMap<Class<?>, Field[]>();
+
+    /**
+     * Static getters of the inspected classes, looked up once per class.
+     */
+    private static final Map<Class<?>, Method[]> STATIC_GETTERS = new HashMap<Class<?>, Method[]>();
+
     /**
      * Retrieves key/value pairs from static fields of a class.
      *
@@ -42,7 +62,7 @@ final class ReflectionCollector {
 
         final StringBuilder result = new StringBuilder();
 
-        final Field[] fields = someClass.getFields();
+        final Field[] fields = getStaticFields(someClass);
         for (final Field field : fields) {
             if (prefix != null && prefix.length() > 0) {
                 result.append(prefix).append('.');
@@ -72,23 +92,19 @@ final class ReflectionCollector {
      */
     public static String collectStaticGettersResults(Class<?> someClass) {
         final StringBuilder result = new StringBuilder();
-        final Method[] methods = someClass.getMethods();
+        final Method[] methods = getStaticGetters(someClass);
         for (final Method method : methods) {
-            if (method.getParameterTypes().length == 0
-                    && (method.getName().startsWith("get") || method.getName().startsWith("is"))
-                    && !method.getName().equals("getClass")) {
-                try {
-                    result.append(method.getName());
-                    result.append('=');
-                    result.append(method.invoke(null, (Object[]) null));
-                    result.append("\n");
-                } catch (IllegalArgumentException e) {
-                    // NOOP
-                } catch (IllegalAccessException e) {
-                    // NOOP
-                } catch (InvocationTargetException e) {
-                    // NOOP
-                }
+            try {
+                result.append(method.getName());
+                result.append('=');
+                result.append(method.invoke(null, (Object[]) null));
+                result.append("\n");
+            } catch (IllegalArgumentException e) {
+                // NOOP
+            } catch (IllegalAccessException e) {
+                // NOOP
+            } catch (InvocationTargetException e) {
+                // NOOP
             }
         }
 
@@ -98,4 +114,40 @@ final class ReflectionCollector {
     public static String collectConstants(Class<?> someClass) {
         return collectConstants(someClass, "");
     }
+
+    private static Field[] getStaticFields(Class<?> someClass) {
+        synchronized (STATIC_FIELDS) {
+            Field[] staticFields = STATIC_FIELDS.get(someClass);
+            if (staticFields == null) {
+                final List<Field> fields = new ArrayList<Field>();
+                for (final Field field : someClass.getFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        fields.add(field);
+                    }
+                }
+                staticFields = fields.toArray(new Field[fields.size()]);
+                STATIC_FIELDS.put(someClass, staticFields);
+            }
+            return staticFields;
+        }
+    }
+
+    private static Method[] getStaticGetters(Class<?> someClass) {
+        synchronized (STATIC_GETTERS) {
+            Method[] staticGetters = STATIC_GETTERS.get(someClass);
+            if (staticGetters == null) {
+                final List<Method> methods = new ArrayList<Method>();
+                for (final Method method : someClass.getMethods()) {
+                    if (Modifier.isStatic(method.getModifiers()) && method.getParameterTypes().length == 0
+                            && (method.getName().startsWith("get") || method.getName().startsWith("is"))
+                            && !method.getName().equals("getClass")) {
+                        methods.add(method);
+                    }
+                }
+                staticGetters = methods.toArray(new Method[methods.size()]);
+                STATIC_GETTERS.put(someClass, staticGetters);
+            }
+            return staticGetters;
+        }
+    }
 }
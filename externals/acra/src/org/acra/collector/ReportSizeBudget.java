@@ -0,0 +1,137 @@
+package org.acra.collector;
+
+import static org.acra.ACRA.LOG_TAG;
+import static org.acra.ReportField.*;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.acra.ACRA;
+import org.acra.ReportField;
+import org.acra.annotation.ReportsCrashes;
+import org.acra.util.BoundedLineBuffer;
+
+import android.util.Log;
+
+/**
+ * Enforces {@link ReportsCrashes#maxFieldSize()} and
+ * {@link ReportsCrashes#maxReportSize()} on the collected data.
+ * <p>
+ * Fields are truncated on line boundaries when possible. Logs keep their most
+ * recent lines, the other fields keep their beginning. The original length of
+ * each truncated field is reported in {@link ReportField#TRUNCATED_FIELDS}.
+ * </p>
+ */
+final class ReportSizeBudget {
+
+    /**
+     * Fields truncated when the report is too large, the most expendable
+     * first. The other fields are expected to be small and are never
+     * truncated for the report size.
+     */
+    private static final ReportField[] TRUNCATION_ORDER = { DROPBOX, RADIOLOG, EVENTSLOG, MEDIA_CODEC_LIST,
+            SETTINGS_GLOBAL, SETTINGS_SECURE, SETTINGS_SYSTEM, ENVIRONMENT, DEVICE_FEATURES, SHARED_PREFERENCES,
+            DUMPSYS_MEMINFO, THREAD_DETAILS, APPLICATION_LOG, LOGCAT, BUILD, CUSTOM_DATA, STACK_TRACE };
+
+    /**
+     * Fields of which the most recent lines, at the end, are kept.
+     */
+    private static final Set<ReportField> TAIL_FIELDS = EnumSet.of(LOGCAT, EVENTSLOG, RADIOLOG, APPLICATION_LOG);
+
+    private ReportSizeBudget() {
+    }
+
+    /**
+     * @return The maximum length of a log read by a collector.
+     */
+    static int getMaxLogLength() {
+        final int maxFieldSize = ACRA.getConfig().maxFieldSize();
+        return maxFieldSize > 0 ? maxFieldSize : BoundedLineBuffer.DEFAULT_MAX_LENGTH;
+    }
+
+    /**
+     * Truncates the fields exceeding the field size, then the most expendable
+     * fields until the report fits the report size.
+     *
+     * @param crashReportData
+     *            The collected data.
+     * @param crashReportFields
+     *            The fields of the report, {@link ReportField#TRUNCATED_FIELDS}
+     *            is only added if it is one of them.
+     */
+    static void enforce(CrashReportData crashReportData, Set<ReportField> crashReportFields) {
+        final ReportsCrashes config = ACRA.getConfig();
+        final int maxFieldSize = config.maxFieldSize();
+        final int maxReportSize = config.maxReportSize();
+        final Map<ReportField, Integer> originalLengths = new EnumMap<ReportField, Integer>(ReportField.class);
+
+        int reportSize = 0;
+        for (Map.Entry<ReportField, String> field : crashReportData.entrySet()) {
+            final String value = field.getValue();
+            if (value == null) {
+                continue;
+            }
+            if (maxFieldSize > 0 && value.length() > maxFieldSize) {
+                originalLengths.put(field.getKey(), value.length());
+                field.setValue(truncate(field.getKey(), value, maxFieldSize));
+            }
+            reportSize += field.getValue().length();
+        }
+
+        for (int i = 0; maxReportSize > 0 && reportSize > maxReportSize && i < TRUNCATION_ORDER.length; i++) {
+            final ReportField field = TRUNCATION_ORDER[i];
+            final String value = crashReportData.get(field);
+            if (value == null || value.length() == 0) {
+                continue;
+            }
+            final String truncated = truncate(field, value, Math.max(0, value.length() - (reportSize - maxReportSize)));
+            if (!originalLengths.containsKey(field)) {
+                originalLengths.put(field, value.length());
+            }
+            crashReportData.put(field, truncated);
+            reportSize -= value.length() - truncated.length();
+        }
+
+        if (!originalLengths.isEmpty()) {
+            Log.w(LOG_TAG, "Truncated report fields " + originalLengths.keySet() + " to " + reportSize + " characters");
+            if (crashReportFields.contains(TRUNCATED_FIELDS)) {
+                final StringBuilder truncatedFields = new StringBuilder();
+                for (Map.Entry<ReportField, Integer> originalLength : originalLengths.entrySet()) {
+                    truncatedFields.append(originalLength.getKey()).append('=').append(originalLength.getValue())
+                            .append('\n');
+                }
+                crashReportData.put(TRUNCATED_FIELDS, truncatedFields.toString());
+            }
+        }
+    }
+
+    /**
+     * @return The end of a log or the beginning of another field, cut on a
+     *         line boundary unless it has no line separator in the kept part.
+     */
+    private static String truncate(ReportField field, String value, int maxLength) {
+        if (value.length() <= maxLength) {
+            return value;
+        }
+        if (TAIL_FIELDS.contains(field)) {
+            int start = value.length() - maxLength;
+            if (value.charAt(start - 1) != '\n') {
+                final int lineEnd = value.indexOf('\n', start);
+                if (lineEnd >= 0) {
+                    start = lineEnd + 1;
+                }
+            }
+            return value.substring(start);
+        }
+        int end = maxLength;
+        if (end > 0 && value.charAt(end - 1) != '\n') {
+            final int lineEnd = value.lastIndexOf('\n', end - 1);
+            if (lineEnd >= 0) {
+                end = lineEnd + 1;
+            }
+        }
+        return value.substring(0, end);
+    }
+}
@@ -19,8 +19,16 @@ package org.acra.collector;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.acra.ACRA;
+import org.acra.annotation.ReportsCrashes;
 
 import android.content.ContentResolver;
 import android.content.Context;
@@ -32,12 +40,31 @@ import android.util.Log;
 /**
  * Helper to collect data from {@link System} and {@link Secure} Settings
  * classes.
+ * <p>
+ * The setting keys of each class and the exclusion patterns are resolved
+ * once, later collections only query the values.
+ * </p>
  * 
  * @author Kevin Gaudin
  * 
  */
 final class SettingsCollector {
 
+    /**
+     * Names and keys of the settings of each Settings class, looked up once
+     * per class.
+     */
+    private static final Map<Class<?>, SettingKeys> SETTING_KEYS = new HashMap<Class<?>, SettingKeys>();
+
+    private static Method globalGetString;
+
+    /**
+     * Last value of {@link ReportsCrashes#excludeMatchingSettingsKeys()} and
+     * its compiled patterns.
+     */
+    private static String[] excludedKeyRegexes;
+    private static Pattern[] excludedKeyPatterns;
+
     /**
      * Collect data from {@link android.provider.Settings.System}. This
      * collector uses reflection to be sure to always get the most accurate data
@@ -49,22 +76,11 @@ final class SettingsCollector {
      */
     public static String collectSystemSettings(Context ctx) {
         final StringBuilder result = new StringBuilder();
-        final Field[] keys = Settings.System.class.getFields();
-        for (final Field key : keys) {
-            // Avoid retrieving deprecated fields... it is useless, has an
-            // impact on perfs, and the system writes many warnings in the
-            // logcat.
-            if (!key.isAnnotationPresent(Deprecated.class) && key.getType() == String.class) {
-                try {
-                    final Object value = Settings.System.getString(ctx.getContentResolver(), (String) key.get(null));
-                    if (value != null) {
-                        result.append(key.getName()).append("=").append(value).append("\n");
-                    }
-                } catch (IllegalArgumentException e) {
-                    Log.w(ACRA.LOG_TAG, "Error : ", e);
-                } catch (IllegalAccessException e) {
-                    Log.w(ACRA.LOG_TAG, "Error : ", e);
-                }
+        final SettingKeys keys = getSettingKeys(Settings.System.class);
+        for (int i = 0; i < keys.names.length; i++) {
+            final Object value = Settings.System.getString(ctx.getContentResolver(), keys.keys[i]);
+            if (value != null) {
+                result.append(keys.names[i]).append("=").append(value).append("\n");
             }
         }
 
@@ -82,18 +98,13 @@ final class SettingsCollector {
      */
     public static String collectSecureSettings(Context ctx) {
         final StringBuilder result = new StringBuilder();
-        final Field[] keys = Settings.Secure.class.getFields();
-        for (final Field key : keys) {
-            if (!key.isAnnotationPresent(Deprecated.class) && key.getType() == String.class && isAuthorized(key)) {
-                try {
-                    final Object value = Settings.Secure.getString(ctx.getContentResolver(), (String) key.get(null));
-                    if (value != null) {
-                        result.append(key.getName()).append("=").append(value).append("\n");
-                    }
-                } catch (IllegalArgumentException e) {
-                    Log.w(ACRA.LOG_TAG, "Error : ", e);
-                } catch (IllegalAccessException e) {
-                    Log.w(ACRA.LOG_TAG, "Error : ", e);
+        final SettingKeys keys = getSettingKeys(Settings.Secure.class);
+        final Pattern[] excludedKeys = getExcludedKeyPatterns();
+        for (int i = 0; i < keys.names.length; i++) {
+            if (isAuthorized(keys.names[i], excludedKeys)) {
+                final Object value = Settings.Secure.getString(ctx.getContentResolver(), keys.keys[i]);
+                if (value != null) {
+                    result.append(keys.names[i]).append("=").append(value).append("\n");
                 }
             }
         }
@@ -118,13 +129,14 @@ final class SettingsCollector {
         final StringBuilder result = new StringBuilder();
         try {
             final Class<?> globalClass = Class.forName("android.provider.Settings$Global");
-            final Field[] keys = globalClass.getFields();
-            final Method getString = globalClass.getMethod("getString", ContentResolver.class, String.class);
-            for (final Field key : keys) {
-                if (!key.isAnnotationPresent(Deprecated.class) && key.getType() == String.class && isAuthorized(key)) {
-                    final Object value = getString.invoke(null, ctx.getContentResolver(), (String) key.get(null));
+            final SettingKeys keys = getSettingKeys(globalClass);
+            final Method getString = getGlobalGetString(globalClass);
+            final Pattern[] excludedKeys = getExcludedKeyPatterns();
+            for (int i = 0; i < keys.names.length; i++) {
+                if (isAuthorized(keys.names[i], excludedKeys)) {
+                    final Object value = getString.invoke(null, ctx.getContentResolver(), keys.keys[i]);
                     if (value != null) {
-                        result.append(key.getName()).append("=").append(value).append("\n");
+                        result.append(keys.names[i]).append("=").append(value).append("\n");
                     }
                 }
             }
@@ -145,16 +157,87 @@ final class SettingsCollector {
         return result.toString();
     }
 
-    private static boolean isAuthorized(Field key) {
-        if (key == null || key.getName().startsWith("WIFI_AP")) {
+    private static boolean isAuthorized(String keyName, Pattern[] excludedKeys) {
+        if (keyName.startsWith("WIFI_AP")) {
             return false;
         }
-        for (String regex : ACRA.getConfig().excludeMatchingSettingsKeys()) {
-            if(key.getName().matches(regex)) {
-               return false; 
+        for (Pattern pattern : excludedKeys) {
+            if (pattern.matcher(keyName).matches()) {
+                return false;
             }
         }
         return true;
     }
 
+    /**
+     * @return The compiled patterns of
+     *         {@link ReportsCrashes#excludeMatchingSettingsKeys()}, compiled
+     *         again only if the configuration has changed.
+     */
+    private static synchronized Pattern[] getExcludedKeyPatterns() {
+        final String[] regexes = ACRA.getConfig().excludeMatchingSettingsKeys();
+        if (excludedKeyPatterns == null || !Arrays.equals(regexes, excludedKeyRegexes)) {
+            final Pattern[] patterns = new Pattern[regexes.length];
+            for (int i = 0; i < regexes.length; i++) {
+                patterns[i] = Pattern.compile(regexes[i]);
+            }
+            excludedKeyRegexes = regexes.clone();
+            excludedKeyPatterns = patterns;
+        }
+        return excludedKeyPatterns;
+    }
+
+    private static synchronized Method getGlobalGetString(Class<?> globalClass) throws NoSuchMethodException {
+        if (globalGetString == null) {
+            globalGetString = globalClass.getMethod("getString", ContentResolver.class, String.class);
+        }
+        return globalGetString;
+    }
+
+    /**
+     * Avoid retrieving deprecated fields... it is useless, has an impact on
+     * perfs, and the system writes many warnings in the logcat.
+     * 
+     * @return The non deprecated String constants of a Settings class.
+     */
+    private static SettingKeys getSettingKeys(Class<?> settingsClass) {
+        synchronized (SETTING_KEYS) {
+            SettingKeys settingKeys = SETTING_KEYS.get(settingsClass);
+            if (settingKeys == null) {
+                final List<String> names = new ArrayList<String>();
+                final List<String> keys = new ArrayList<String>();
+                for (final Field key : settingsClass.getFields()) {
+                    if (!key.isAnnotationPresent(Deprecated.class) && key.getType() == String.class
+                            && Modifier.isStatic(key.getModifiers())) {
+                        try {
+                            keys.add((String) key.get(null));
+                            names.add(key.getName());
+                        } catch (IllegalArgumentException e) {
+                            Log.w(ACRA.LOG_TAG, "Error : ", e);
+                        } catch (IllegalAccessException e) {
+                            Log.w(ACRA.LOG_TAG, "Error : ", e);
+                        }
+                    }
+                }
+                settingKeys = new SettingKeys(names.toArray(new String[names.size()]), keys.toArray(new String[keys
+                        .size()]));
+                SETTING_KEYS.put(settingsClass, settingKeys);
+            }
+            return settingKeys;
+        }
+    }
+
+    /**
+     * Names of the constants of a Settings class and the setting keys they
+     * hold, in the same order.
+     */
+    private static final class SettingKeys {
+        final String[] names;
+        final String[] keys;
+
+        SettingKeys(String[] names, String[] keys) {
+            this.names = names;
+            this.keys = keys;
+        }
+    }
 }
@@ -17,6 +17,7 @@ package org.acra.collector;
 
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import org.acra.ACRA;
 import org.acra.annotation.ReportsCrashes;
@@ -29,6 +30,8 @@ import android.preference.PreferenceManager;
  * Collects the content (key/value pairs) of SharedPreferences, from the
  * application default preferences or any other preferences asked by the
  * application developer.
+ * 
+ * @see SharedPreferencesSnapshot
  */
 final class SharedPreferencesCollector {
 
@@ -47,6 +50,28 @@ final class SharedPreferencesCollector {
      */
     public static String collect(Context context) {
         final StringBuilder result = new StringBuilder();
+        final Pattern[] excludedKeys = getExcludedKeyPatterns();
+        final Map<String, SharedPreferences> shrdPrefs = getSharedPreferences(context);
+        for (final String prefsId : shrdPrefs.keySet()) {
+            final SharedPreferences prefs = shrdPrefs.get(prefsId);
+            if (prefs != null) {
+                appendPreferences(result, prefsId, prefs.getAll(), excludedKeys);
+            } else {
+                result.append("null\n");
+                result.append('\n');
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * @return The application default SharedPreferences, with the id
+     *         "default", and the ones named in
+     *         {@link ReportsCrashes#additionalSharedPreferences()}, sorted by
+     *         id.
+     */
+    static Map<String, SharedPreferences> getSharedPreferences(Context context) {
         final Map<String, SharedPreferences> shrdPrefs = new TreeMap<String, SharedPreferences>();
         shrdPrefs.put("default", PreferenceManager.getDefaultSharedPreferences(context));
         final String[] shrdPrefsIds = ACRA.getConfig().additionalSharedPreferences();
@@ -55,31 +80,49 @@ final class SharedPreferencesCollector {
                 shrdPrefs.put(shrdPrefId, context.getSharedPreferences(shrdPrefId, Context.MODE_PRIVATE));
             }
         }
+        return shrdPrefs;
+    }
 
-        for (final String prefsId : shrdPrefs.keySet()) {
-            final SharedPreferences prefs = shrdPrefs.get(prefsId);
-            if (prefs != null) {
-                final Map<String, ?> kv = prefs.getAll();
-                if (kv != null && kv.size() > 0) {
-                    for (final String key : kv.keySet()) {
-                        if (!filteredKey(key)) {
-                            if (kv.get(key) != null) {
-                                result.append(prefsId).append('.').append(key).append('=').append(kv.get(key).toString()).append("\n");
-                            } else {
-                                result.append(prefsId).append('.').append(key).append('=').append("null\n");
-                            }
-                        }
+    /**
+     * Writes the key/value pairs of a SharedPreferences.
+     * 
+     * @param result
+     *            Where the pairs are written.
+     * @param prefsId
+     *            Id of the SharedPreferences, prefix of the keys.
+     * @param kv
+     *            The content of the SharedPreferences.
+     * @param excludedKeys
+     *            Patterns of the keys not to write.
+     */
+    static void appendPreferences(StringBuilder result, String prefsId, Map<String, ?> kv, Pattern[] excludedKeys) {
+        if (kv != null && kv.size() > 0) {
+            for (final Map.Entry<String, ?> entry : kv.entrySet()) {
+                if (!filteredKey(entry.getKey(), excludedKeys)) {
+                    if (entry.getValue() != null) {
+                        result.append(prefsId).append('.').append(entry.getKey()).append('=').append(entry.getValue().toString()).append("\n");
+                    } else {
+                        result.append(prefsId).append('.').append(entry.getKey()).append('=').append("null\n");
                     }
-                } else {
-                    result.append(prefsId).append('=').append("empty\n");
                 }
-            } else {
-                result.append("null\n");
             }
-            result.append('\n');
+        } else {
+            result.append(prefsId).append('=').append("empty\n");
         }
+        result.append('\n');
+    }
 
-        return result.toString();
+    /**
+     * @return The compiled patterns of
+     *         {@link ReportsCrashes#excludeMatchingSharedPreferencesKeys()}.
+     */
+    static Pattern[] getExcludedKeyPatterns() {
+        final String[] regexes = ACRA.getConfig().excludeMatchingSharedPreferencesKeys();
+        final Pattern[] patterns = new Pattern[regexes.length];
+        for (int i = 0; i < regexes.length; i++) {
+            patterns[i] = Pattern.compile(regexes[i]);
+        }
+        return patterns;
     }
 
     /**
@@ -88,12 +131,14 @@ final class SharedPreferencesCollector {
      * 
      * @param key
      *            the name of the preference to be checked
+     * @param excludedKeys
+     *            the compiled patterns of the excluded keys
      * @return true if the key has to be excluded from reports.
      */
-    private static boolean filteredKey(String key) {
-        for (String regex : ACRA.getConfig().excludeMatchingSharedPreferencesKeys()) {
-            if(key.matches(regex)) {
-               return true; 
+    static boolean filteredKey(String key, Pattern[] excludedKeys) {
+        for (Pattern pattern : excludedKeys) {
+            if (pattern.matcher(key).matches()) {
+                return true;
             }
         }
         return false;
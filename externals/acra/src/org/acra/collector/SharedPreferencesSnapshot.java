@@ -0,0 +1,234 @@
+package org.acra.collector;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.acra.annotation.ReportsCrashes;
+import org.acra.util.ACRAExecutor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+
+/**
+ * Keeps in memory the content of the SharedPreferences collected by
+ * {@link SharedPreferencesCollector}, so that a crash report only has to
+ * serialize it. Enabled with
+ * {@link ReportsCrashes#snapshotSharedPreferences()}.
+ * <p>
+ * The preferences are read once in the background, then each change notified
+ * to the listeners updates the snapshot. The values of excluded keys are never
+ * stored. A changed value is read with the getter matching the type of its
+ * previous value, so that a change does not copy the whole preferences map.
+ * </p>
+ * <p>
+ * Before Android 11 (API level 30), {@link SharedPreferences.Editor#clear()}
+ * notifies no change. A clear is then detected at the next change of the same
+ * preferences, when some keys of the snapshot are missing, and the
+ * preferences are read again. Until then the snapshot holds the cleared
+ * values.
+ * </p>
+ */
+final class SharedPreferencesSnapshot {
+
+    private final Pattern[] excludedKeys = SharedPreferencesCollector.getExcludedKeyPatterns();
+    private final Map<String, Snapshot> snapshotsById = new TreeMap<String, Snapshot>();
+    private final Map<SharedPreferences, Snapshot> snapshotsByPrefs = new IdentityHashMap<SharedPreferences, Snapshot>();
+
+    /**
+     * SharedPreferences only keep weak references to their listeners.
+     */
+    private final OnSharedPreferenceChangeListener listener = new OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            final Snapshot snapshot;
+            synchronized (SharedPreferencesSnapshot.this) {
+                snapshot = snapshotsByPrefs.get(prefs);
+            }
+            if (snapshot == null) {
+                return;
+            }
+            if (key == null || hasMissingKeys(snapshot, key)) {
+                // The preferences have been cleared.
+                load(snapshot);
+            } else {
+                update(snapshot, key);
+            }
+        }
+    };
+
+    /**
+     * Registers the listeners and starts reading the preferences in the
+     * background.
+     *
+     * @param context
+     *            The application context.
+     */
+    SharedPreferencesSnapshot(Context context) {
+        for (Map.Entry<String, SharedPreferences> prefs : SharedPreferencesCollector.getSharedPreferences(context)
+                .entrySet()) {
+            final Snapshot snapshot = new Snapshot(prefs.getValue());
+            snapshotsById.put(prefs.getKey(), snapshot);
+            snapshotsByPrefs.put(prefs.getValue(), snapshot);
+            prefs.getValue().registerOnSharedPreferenceChangeListener(listener);
+        }
+        ACRAExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (Snapshot snapshot : snapshotsById.values()) {
+                    load(snapshot);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The snapshot in the format of
+     *         {@link SharedPreferencesCollector#collect(Context)}.
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Snapshot> snapshot : snapshotsById.entrySet()) {
+            final Snapshot current = snapshot.getValue();
+            if (current.loaded && current.values.isEmpty() && !current.excludedKeys.isEmpty()) {
+                // Like collect(), nothing but the separator when all the keys
+                // are excluded.
+                result.append('\n');
+                continue;
+            }
+            // Read the preferences if they have not been loaded in time.
+            final Map<String, ?> values = current.loaded ? current.values : current.prefs.getAll();
+            SharedPreferencesCollector.appendPreferences(result, snapshot.getKey(), values, excludedKeys);
+        }
+        return result.toString();
+    }
+
+    private void load(Snapshot snapshot) {
+        final Map<String, ?> all = snapshot.prefs.getAll();
+        synchronized (this) {
+            for (Map.Entry<String, ?> entry : all.entrySet()) {
+                // Values changed since the load started are more recent.
+                if (!snapshot.loaded && snapshot.changedBeforeLoad.contains(entry.getKey())) {
+                    continue;
+                }
+                if (SharedPreferencesCollector.filteredKey(entry.getKey(), excludedKeys)) {
+                    snapshot.excludedKeys.add(entry.getKey());
+                } else {
+                    snapshot.values.put(entry.getKey(), entry.getValue());
+                }
+            }
+            removeMissing(snapshot, snapshot.values.keySet(), all);
+            removeMissing(snapshot, snapshot.excludedKeys, all);
+            snapshot.changedBeforeLoad.clear();
+            snapshot.loaded = true;
+        }
+    }
+
+    private static void removeMissing(Snapshot snapshot, Set<String> keys, Map<String, ?> all) {
+        for (Iterator<String> iterator = keys.iterator(); iterator.hasNext();) {
+            final String key = iterator.next();
+            if (!all.containsKey(key) && (snapshot.loaded || !snapshot.changedBeforeLoad.contains(key))) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if a key of the loaded snapshot, other than the changed
+     *         one, is not in the preferences anymore: they have been cleared
+     *         without notification.
+     */
+    private boolean hasMissingKeys(Snapshot snapshot, String changedKey) {
+        final Set<String> keys;
+        synchronized (this) {
+            if (!snapshot.loaded) {
+                return false;
+            }
+            keys = new HashSet<String>(snapshot.values.keySet());
+            keys.addAll(snapshot.excludedKeys);
+        }
+        for (String key : keys) {
+            if (!key.equals(changedKey) && !snapshot.prefs.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void update(Snapshot snapshot, String key) {
+        final boolean removed = !snapshot.prefs.contains(key);
+        final boolean excluded = SharedPreferencesCollector.filteredKey(key, excludedKeys);
+        final Object value;
+        if (removed || excluded) {
+            value = null;
+        } else {
+            final Object previousValue;
+            synchronized (this) {
+                previousValue = snapshot.values.get(key);
+            }
+            value = read(snapshot.prefs, key, previousValue);
+        }
+
+        synchronized (this) {
+            if (!snapshot.loaded) {
+                snapshot.changedBeforeLoad.add(key);
+            }
+            if (excluded) {
+                if (removed) {
+                    snapshot.excludedKeys.remove(key);
+                } else {
+                    snapshot.excludedKeys.add(key);
+                }
+            } else if (removed) {
+                snapshot.values.remove(key);
+            } else {
+                snapshot.values.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Reads a single value, with the getter matching the type of its previous
+     * value if it is known.
+     */
+    private static Object read(SharedPreferences prefs, String key, Object previousValue) {
+        try {
+            if (previousValue instanceof String) {
+                return prefs.getString(key, null);
+            } else if (previousValue instanceof Integer) {
+                return prefs.getInt(key, 0);
+            } else if (previousValue instanceof Long) {
+                return prefs.getLong(key, 0);
+            } else if (previousValue instanceof Float) {
+                return prefs.getFloat(key, 0);
+            } else if (previousValue instanceof Boolean) {
+                return prefs.getBoolean(key, false);
+            }
+        } catch (ClassCastException e) {
+            // The type of the value has changed.
+        }
+        return prefs.getAll().get(key);
+    }
+
+    /**
+     * The values of one SharedPreferences.
+     */
+    private static final class Snapshot {
+        final SharedPreferences prefs;
+        final Map<String, Object> values = new TreeMap<String, Object>();
+        /** The excluded keys present, whose values are not stored. */
+        final Set<String> excludedKeys = new HashSet<String>();
+        final Set<String> changedBeforeLoad = new HashSet<String>();
+        boolean loaded;
+
+        Snapshot(SharedPreferences prefs) {
+            this.prefs = prefs;
+        }
+    }
+}
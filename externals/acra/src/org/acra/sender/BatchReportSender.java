@@ -0,0 +1,36 @@
+package org.acra.sender;
+
+import java.util.List;
+
+import org.acra.collector.CrashReportData;
+
+/**
+ * A {@link ReportSender} able to send several reports in a single operation.
+ * When such a sender is registered, ACRA hands it pending reports in batches
+ * of up to {@link #getMaxBatchSize()} reports instead of one by one.
+ * <p>
+ * Reports are acknowledged individually: only the reports for which the
+ * returned array holds false are kept for a later attempt.
+ * </p>
+ */
+public interface BatchReportSender extends ReportSender {
+
+    /**
+     * @return The maximum number of reports to pass to
+     *         {@link #send(List)} at once.
+     */
+    public int getMaxBatchSize();
+
+    /**
+     * Send several crash reports.
+     *
+     * @param reports
+     *            The reports to send, at most {@link #getMaxBatchSize()}.
+     * @return An array with one entry per report, in the same order, set to
+     *         true if the report has been handled and must not be sent
+     *         again.
+     * @throws ReportSenderException
+     *             If none of the reports could be sent.
+     */
+    public boolean[] send(List<CrashReportData> reports) throws ReportSenderException;
+}
@@ -0,0 +1,251 @@
+package org.acra.sender;
+
+import static org.acra.ACRA.LOG_TAG;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.acra.ACRA;
+import org.acra.ACRAConfiguration;
+import org.acra.collector.CrashReportData;
+import org.acra.sender.HttpSender.Method;
+import org.acra.util.HttpRequest;
+import org.acra.util.RequestBody;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * <p>
+ * A {@link BatchReportSender} posting several reports in a single gzip
+ * compressed HTTP request, each report being encoded as a JSON object (see
+ * {@link HttpSender.Type#JSON}). It is not installed by default, register it
+ * in place of the default {@link HttpSender}:
+ * </p>
+ *
+ * <pre>
+ * ACRA.init(this);
+ * ACRA.getErrorReporter().setReportSender(new HttpBatchSender(HttpBatchSender.Format.NDJSON));
+ * </pre>
+ *
+ * <p>
+ * The server acknowledges reports individually by answering with a JSON array
+ * holding one HTTP status code per report, in the order of the request. Each
+ * code is interpreted like the status of a single report request: reports
+ * with an error status are kept and sent again later, the others are
+ * discarded. If the response body is not such an array, the status of the
+ * response applies to the whole batch.
+ * </p>
+ */
+public class HttpBatchSender implements BatchReportSender {
+
+    /**
+     * Layout of the reports in the request body.
+     */
+    public enum Format {
+        /**
+         * A JSON array of report objects.
+         */
+        JSON_ARRAY {
+            @Override
+            public String getContentType() {
+                return "application/json";
+            }
+        },
+        /**
+         * Newline delimited JSON: one report object per line.
+         */
+        NDJSON {
+            @Override
+            public String getContentType() {
+                return "application/x-ndjson";
+            }
+        };
+
+        public abstract String getContentType();
+    }
+
+    /**
+     * Number of reports sent per request when not specified.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+    private final Format mFormat;
+    private final Uri mFormUri;
+    private final int mMaxBatchSize;
+    private final boolean mCompress;
+    private String mUsername;
+    private String mPassword;
+
+    /**
+     * Create a new HttpBatchSender posting compressed batches of up to
+     * {@link #DEFAULT_MAX_BATCH_SIZE} reports to
+     * {@link ACRAConfiguration#formUri()}.
+     *
+     * @param format
+     *            Layout of the reports in the request body.
+     */
+    public HttpBatchSender(Format format) {
+        this(format, null, DEFAULT_MAX_BATCH_SIZE, true);
+    }
+
+    /**
+     * @param format
+     *            Layout of the reports in the request body.
+     * @param formUri
+     *            The URL of your server-side batch collection script, null to
+     *            use {@link ACRAConfiguration#formUri()}.
+     * @param maxBatchSize
+     *            Maximum number of reports per request.
+     * @param compress
+     *            Whether the request body is gzip compressed. The server must
+     *            honor the Content-Encoding request header.
+     */
+    public HttpBatchSender(Format format, String formUri, int maxBatchSize, boolean compress) {
+        mFormat = format;
+        mFormUri = formUri == null ? null : Uri.parse(formUri);
+        mMaxBatchSize = Math.max(1, maxBatchSize);
+        mCompress = compress;
+    }
+
+    /**
+     * <p>
+     * Set credentials for this HttpBatchSender that override (if present) the
+     * ones set globally.
+     * </p>
+     *
+     * @param username
+     *            The username to set for HTTP Basic Auth.
+     * @param password
+     *            The password to set for HTTP Basic Auth.
+     */
+    public void setBasicAuth(String username, String password) {
+        mUsername = username;
+        mPassword = password;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return mMaxBatchSize;
+    }
+
+    @Override
+    public void send(CrashReportData report) throws ReportSenderException {
+        final boolean[] sent = send(Collections.singletonList(report));
+        if (!sent[0]) {
+            throw new ReportSenderException("Server refused the report");
+        }
+    }
+
+    @Override
+    public boolean[] send(List<CrashReportData> reports) throws ReportSenderException {
+        try {
+            final URL reportUrl = mFormUri == null ? new URL(ACRA.getConfig().formUri()) : new URL(
+                    mFormUri.toString());
+            Log.d(LOG_TAG, "Connect to " + reportUrl.toString() + " to send " + reports.size() + " reports");
+
+            final String login = mUsername != null ? mUsername : ACRAConfiguration.isNull(ACRA.getConfig()
+                    .formUriBasicAuthLogin()) ? null : ACRA.getConfig().formUriBasicAuthLogin();
+            final String password = mPassword != null ? mPassword : ACRAConfiguration.isNull(ACRA.getConfig()
+                    .formUriBasicAuthPassword()) ? null : ACRA.getConfig().formUriBasicAuthPassword();
+
+            final HttpRequest request = new HttpRequest();
+            request.setConnectionTimeOut(ACRA.getConfig().connectionTimeout());
+            request.setSocketTimeOut(ACRA.getConfig().socketTimeout());
+            request.setMaxNrRetries(ACRA.getConfig().maxNumberOfRequestRetries());
+            request.setLogin(login);
+            request.setPassword(password);
+            request.setHeaders(ACRA.getConfig().getHttpHeaders());
+
+            final String response = request.send(reportUrl, Method.POST, buildBody(reports));
+            return parseAcknowledgments(response, reports.size());
+
+        } catch (IOException e) {
+            throw new ReportSenderException("Error while sending a batch of " + reports.size()
+                    + " reports via Http POST", e);
+        }
+    }
+
+    /**
+     * Serializes and compresses the reports once, the resulting body can be
+     * sent again if the request is retried.
+     */
+    private RequestBody buildBody(List<CrashReportData> reports) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Writer writer = new OutputStreamWriter(mCompress ? new GZIPOutputStream(bytes) : bytes, "UTF-8");
+        try {
+            if (mFormat == Format.JSON_ARRAY) {
+                writer.write('[');
+            }
+            boolean first = true;
+            for (CrashReportData report : reports) {
+                if (!first) {
+                    writer.write(mFormat == Format.JSON_ARRAY ? ',' : '\n');
+                }
+                report.writeJSON(writer);
+                first = false;
+            }
+            writer.write(mFormat == Format.JSON_ARRAY ? "]" : "\n");
+        } finally {
+            writer.close();
+        }
+        return RequestBody.create(bytes.toByteArray(), mFormat.getContentType(), mCompress ? "gzip" : null);
+    }
+
+    /**
+     * @return For each report, whether it has been acknowledged by the
+     *         server. The request itself succeeded, so all reports are
+     *         acknowledged unless the response tells otherwise.
+     */
+    private static boolean[] parseAcknowledgments(String response, int reportCount) {
+        final boolean[] acknowledged = new boolean[reportCount];
+        final int[] statuses = parseStatuses(response, reportCount);
+        for (int i = 0; i < reportCount; i++) {
+            acknowledged[i] = statuses == null || !HttpRequest.isErrorStatus(statuses[i]);
+        }
+        return acknowledged;
+    }
+
+    /**
+     * @return The status code of each report, or null if the response is not
+     *         an array of exactly one integer code per report. A response is
+     *         only trusted as a whole: a single unexpected entry would
+     *         otherwise keep a received report in the queue forever.
+     */
+    private static int[] parseStatuses(String response, int reportCount) {
+        if (response == null || !response.trim().startsWith("[")) {
+            return null;
+        }
+        final JSONArray array;
+        try {
+            array = new JSONArray(response.trim());
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Could not parse batch acknowledgments, assuming all reports were received", e);
+            return null;
+        }
+        if (array.length() != reportCount) {
+            Log.w(LOG_TAG, "Expected " + reportCount + " batch acknowledgments but received " + array.length()
+                    + ", assuming all reports were received");
+            return null;
+        }
+        final int[] statuses = new int[reportCount];
+        for (int i = 0; i < reportCount; i++) {
+            final Object status = array.opt(i);
+            if (!(status instanceof Integer)) {
+                Log.w(LOG_TAG, "Unexpected batch acknowledgment " + status + " at " + i
+                        + ", assuming all reports were received");
+                return null;
+            }
+            statuses[i] = ((Integer) status).intValue();
+        }
+        return statuses;
+    }
+}
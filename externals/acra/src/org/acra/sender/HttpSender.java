@@ -17,7 +17,12 @@ package org.acra.sender;
 
 import static org.acra.ACRA.LOG_TAG;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -28,8 +33,9 @@ import org.acra.ACRAConstants;
 import org.acra.ReportField;
 import org.acra.annotation.ReportsCrashes;
 import org.acra.collector.CrashReportData;
+import org.acra.util.GzipRequestBody;
 import org.acra.util.HttpRequest;
-import org.acra.util.JSONReportBuilder.JSONReportException;
+import org.acra.util.RequestBody;
 
 import android.net.Uri;
 import android.util.Log;
@@ -108,6 +114,78 @@ public class HttpSender implements ReportSender {
         public abstract String getContentType();
     }
 
+    /**
+     * A report serialized while it is written. Its length is measured by a
+     * first serialization, so that it is not sent chunked.
+     */
+    private abstract static class ReportBody extends RequestBody {
+
+        private long mContentLength = -1;
+
+        @Override
+        public long getContentLength() {
+            if (mContentLength < 0) {
+                try {
+                    mContentLength = measureContentLength();
+                } catch (IOException e) {
+                    // Send it chunked, the error will show when it is written.
+                    return -1;
+                }
+            }
+            return mContentLength;
+        }
+    }
+
+    /**
+     * Writes the report as a URL encoded form.
+     */
+    private static final class FormReportBody extends ReportBody {
+
+        private final Map<String, String> mFields;
+
+        private FormReportBody(Map<String, String> fields) {
+            mFields = fields;
+        }
+
+        @Override
+        public String getContentType() {
+            return Type.FORM.getContentType();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            final BufferedOutputStream bufferedOut = new BufferedOutputStream(out,
+                    ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+            HttpRequest.writeParamsAsForm(mFields, bufferedOut);
+            bufferedOut.flush();
+        }
+    }
+
+    /**
+     * Writes the report as a JSON object.
+     */
+    private static final class JsonReportBody extends ReportBody {
+
+        private final CrashReportData mReport;
+
+        private JsonReportBody(CrashReportData report) {
+            mReport = report;
+        }
+
+        @Override
+        public String getContentType() {
+            return Type.JSON.getContentType();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"),
+                    ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+            mReport.writeJSON(writer);
+            writer.flush();
+        }
+    }
+
     private final Uri mFormUri;
     private final Map<ReportField, String> mMapping;
     private final Method mMethod;
@@ -219,20 +297,24 @@ public class HttpSender implements ReportSender {
             request.setPassword(password);
             request.setHeaders(ACRA.getConfig().getHttpHeaders());
 
-            String reportAsString = "";
-
-            // Generate report body depending on requested type
+            // Generate report body depending on requested type. The body
+            // is serialized while it is written to the connection, after a
+            // first pass measuring its length unless it is compressed: only
+            // compressed bodies are sent chunked.
+            RequestBody body;
             switch (mType) {
             case JSON:
-                reportAsString = report.toJSON().toString();
+                body = new JsonReportBody(report);
                 break;
             case FORM:
             default:
-                final Map<String, String> finalReport = remap(report);
-                reportAsString = HttpRequest.getParamsAsFormString(finalReport);
+                body = new FormReportBody(remap(report));
                 break;
 
             }
+            if (ACRA.getConfig().compressReports()) {
+                body = new GzipRequestBody(body);
+            }
 
             // Adjust URL depending on method
             switch (mMethod) {
@@ -244,14 +326,11 @@ public class HttpSender implements ReportSender {
             default:
                 throw new UnsupportedOperationException("Unknown method: " + mMethod.name());
             }
-            request.send(reportUrl, mMethod, reportAsString, mType);
+            request.send(reportUrl, mMethod, body);
 
         } catch (IOException e) {
             throw new ReportSenderException("Error while sending " + ACRA.getConfig().reportType()
                     + " report via Http " + mMethod.name(), e);
-        } catch (JSONReportException e) {
-            throw new ReportSenderException("Error while sending " + ACRA.getConfig().reportType()
-                    + " report via Http " + mMethod.name(), e);
         }
     }
 
@@ -0,0 +1,96 @@
+package org.acra.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.acra.collector.Compatibility;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * Background threads shared by all of ACRA's short lived tasks, so that a
+ * burst of reports does not start one thread per task.
+ * <p>
+ * Nothing is started until the first task is submitted. The pool holds at
+ * most {@link #MAX_THREADS} daemon threads, which are released after
+ * {@link #KEEP_ALIVE_SECONDS} seconds of inactivity on API level 9 and above.
+ * Tasks submitted while all threads are busy are queued.
+ * </p>
+ */
+public final class ACRAExecutor {
+
+    private static final int MAX_THREADS = 3;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor executor;
+    private static Handler looperHandler;
+
+    private ACRAExecutor() {
+    }
+
+    /**
+     * Runs a task on one of the pooled threads.
+     *
+     * @param task
+     *            The task to run. It must not wait for another task of this
+     *            executor, which could be queued behind it.
+     * @return A Future completed once the task has run.
+     */
+    public static Future<?> submit(Runnable task) {
+        return getExecutor().submit(task);
+    }
+
+    /**
+     * @return The pooled executor, started on first use.
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), newThreadFactory("ACRA-Worker"));
+            if (Compatibility.getAPILevel() >= 9) {
+                executor.allowCoreThreadTimeOut(true);
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @return A Handler on a background thread with a Looper, for the tasks
+     *         which need one such as displaying a Toast. The thread is
+     *         started on first use and kept for the life of the process.
+     */
+    public static synchronized Handler getLooperHandler() {
+        if (looperHandler == null) {
+            final HandlerThread thread = new HandlerThread("ACRA-Looper");
+            thread.setDaemon(true);
+            thread.start();
+            looperHandler = new Handler(thread.getLooper());
+        }
+        return looperHandler;
+    }
+
+    /**
+     * @param name
+     *            Prefix of the thread names.
+     * @return A factory of daemon threads, so that ACRA never keeps the
+     *         process alive.
+     */
+    public static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,289 @@
+package org.acra.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.util.Map;
+
+import org.acra.ACRA;
+import org.acra.sender.HttpSender.Method;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * {@link HttpTransport} based on the Apache HttpClient bundled with Android.
+ * <p>
+ * A single {@link DefaultHttpClient} backed by a
+ * {@link ThreadSafeClientConnManager} is created on first use and shared by
+ * all the requests, so that connections are kept alive and reused. Time outs
+ * and retries are applied per request. The SSL configuration (
+ * {@link org.acra.ACRAConfiguration#disableSSLCertValidation()} and
+ * {@link org.acra.ACRAConfiguration#keyStore()}) is read when the client is
+ * created.
+ * </p>
+ */
+public final class ApacheHttpTransport implements HttpTransport {
+
+    private static final int MAX_TOTAL_CONNECTIONS = 4;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 2;
+
+    /**
+     * How long an idle connection is kept in the pool when the server does not
+     * specify a Keep-Alive time out.
+     */
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+
+    private static final String CONTEXT_REQUEST_PARAMS = "org.acra.requestParams";
+    private static final String CONTEXT_MAX_NR_RETRIES = "org.acra.maxNrRetries";
+
+    /**
+     * Doubles the socket time out of the current request each time it fails
+     * with a {@link SocketTimeoutException}. As the handler is shared by all
+     * requests, the parameters it acts upon are read from the
+     * {@link HttpContext}.
+     */
+    private static class SocketTimeOutRetryHandler implements HttpRequestRetryHandler {
+
+        @Override
+        public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+            if (exception instanceof SocketTimeoutException) {
+                final Integer maxNrRetries = (Integer) context.getAttribute(CONTEXT_MAX_NR_RETRIES);
+                if (maxNrRetries != null && executionCount <= maxNrRetries) {
+
+                    final HttpParams httpParams = (HttpParams) context.getAttribute(CONTEXT_REQUEST_PARAMS);
+                    if (httpParams != null) {
+                        final int newSocketTimeOut = HttpConnectionParams.getSoTimeout(httpParams) * 2;
+                        HttpConnectionParams.setSoTimeout(httpParams, newSocketTimeOut);
+                        ACRA.log.d(ACRA.LOG_TAG, "SocketTimeOut - increasing time out to " + newSocketTimeOut
+                                + " millis and trying again");
+                    } else {
+                        ACRA.log.d(ACRA.LOG_TAG,
+                                "SocketTimeOut - no HttpParams, cannot increase time out. Trying again with current settings");
+                    }
+
+                    return true;
+                }
+
+                ACRA.log.d(ACRA.LOG_TAG, "SocketTimeOut but exceeded max number of retries : " + maxNrRetries);
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Caps the time an idle connection stays in the pool, so that a
+     * connection silently closed by a proxy is not reused days later.
+     */
+    private static class BoundedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+        private final ConnectionKeepAliveStrategy delegate = new DefaultConnectionKeepAliveStrategy();
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            final long duration = delegate.getKeepAliveDuration(response, context);
+            if (duration < 0 || duration > DEFAULT_KEEP_ALIVE_MILLIS) {
+                return DEFAULT_KEEP_ALIVE_MILLIS;
+            }
+            return duration;
+        }
+    }
+
+    /**
+     * Adapts a {@link RequestBody} to the HttpClient entity API. The body is
+     * written directly to the connection.
+     */
+    private static class RequestBodyEntity extends AbstractHttpEntity {
+
+        private final RequestBody body;
+
+        private RequestBodyEntity(RequestBody body) {
+            this.body = body;
+            setContentType(body.getContentType());
+            setContentEncoding(body.getContentEncoding());
+            setChunked(body.getContentLength() < 0);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.getContentLength();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            body.writeTo(content);
+            return new ByteArrayInputStream(content.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            body.writeTo(outstream);
+            outstream.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    private DefaultHttpClient httpClient;
+
+    @Override
+    public String send(HttpRequest request, URL url, Method method, RequestBody body) throws IOException {
+        final DefaultHttpClient client = getHttpClient();
+        final HttpEntityEnclosingRequestBase httpRequest = getHttpRequest(request, url, method, body);
+
+        final HttpParams requestParams = httpRequest.getParams();
+        HttpConnectionParams.setConnectionTimeout(requestParams, request.getConnectionTimeOut());
+        HttpConnectionParams.setSoTimeout(requestParams, request.getSocketTimeOut());
+
+        final HttpContext context = new BasicHttpContext();
+        context.setAttribute(CONTEXT_REQUEST_PARAMS, requestParams);
+        context.setAttribute(CONTEXT_MAX_NR_RETRIES, Integer.valueOf(request.getMaxNrRetries()));
+
+        // Connections whose keep-alive has expired are useless, free them
+        // before picking one from the pool.
+        client.getConnectionManager().closeExpiredConnections();
+
+        HttpResponse response = null;
+        try {
+            response = client.execute(httpRequest, context);
+            final StatusLine statusLine = response.getStatusLine();
+            final HttpEntity entity = response.getEntity();
+
+            // Reading the entity fully releases the connection to the pool.
+            final String respContent = (entity == null) ? null : EntityUtils.toString(entity);
+            if (ACRA.DEV_LOGGING) {
+                ACRA.log.d(ACRA.LOG_TAG, "HttpResponse Status : "
+                        + (statusLine != null ? statusLine.getStatusCode() : "NoStatusLine#noCode"));
+                if (respContent != null) {
+                    ACRA.log.d(ACRA.LOG_TAG,
+                            "HttpResponse Content : " + respContent.substring(0, Math.min(respContent.length(), 200)));
+                }
+            }
+            if (statusLine != null) {
+                HttpRequest.checkResponseStatus(statusLine.getStatusCode());
+            }
+            return respContent;
+        } finally {
+            if (response != null && response.getEntity() != null) {
+                response.getEntity().consumeContent();
+            }
+        }
+    }
+
+    /**
+     * @return The shared HttpClient, created on first call.
+     */
+    private synchronized DefaultHttpClient getHttpClient() {
+        if (httpClient == null) {
+            final HttpParams httpParams = new BasicHttpParams();
+            httpParams.setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.RFC_2109);
+            HttpConnectionParams.setSocketBufferSize(httpParams, 8192);
+            ConnManagerParams.setMaxTotalConnections(httpParams, MAX_TOTAL_CONNECTIONS);
+            ConnManagerParams.setMaxConnectionsPerRoute(httpParams, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+
+            final ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager(httpParams,
+                    getSchemeRegistry());
+            httpClient = new DefaultHttpClient(connectionManager, httpParams);
+            httpClient.setHttpRequestRetryHandler(new SocketTimeOutRetryHandler());
+            httpClient.setKeepAliveStrategy(new BoundedKeepAliveStrategy());
+        }
+        return httpClient;
+    }
+
+    private static SchemeRegistry getSchemeRegistry() {
+        final SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
+        if (ACRA.getConfig().disableSSLCertValidation()) {
+            registry.register(new Scheme("https", (new FakeSocketFactory()), 443));
+        } else if (ACRA.getConfig().keyStore() != null) {
+            try {
+                SSLSocketFactory sf = new SSLSocketFactory(ACRA.getConfig().keyStore());
+                sf.setHostnameVerifier(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER);
+                registry.register(new Scheme("https", sf, 443));
+            } catch (KeyManagementException e) {
+                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+            } catch (UnrecoverableKeyException e) {
+                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+            } catch (NoSuchAlgorithmException e) {
+                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+            } catch (KeyStoreException e) {
+                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+            }
+        } else {
+            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+        }
+        return registry;
+    }
+
+    private static HttpEntityEnclosingRequestBase getHttpRequest(HttpRequest request, URL url, Method method,
+            RequestBody body) {
+
+        final HttpEntityEnclosingRequestBase httpRequest;
+        switch (method) {
+        case POST:
+            httpRequest = new HttpPost(url.toString());
+            break;
+        case PUT:
+            httpRequest = new HttpPut(url.toString());
+            break;
+        default:
+            throw new UnsupportedOperationException("Unknown method: " + method.name());
+        }
+
+        if (request.getLogin() != null || request.getPassword() != null) {
+            final UsernamePasswordCredentials creds = new UsernamePasswordCredentials(request.getLogin(),
+                    request.getPassword());
+            httpRequest.addHeader(BasicScheme.authenticate(creds, "UTF-8", false));
+        }
+        for (Map.Entry<String, String> header : request.getRequestHeaders(body).entrySet()) {
+            httpRequest.setHeader(header.getKey(), header.getValue());
+        }
+
+        httpRequest.setEntity(new RequestBodyEntity(body));
+
+        return httpRequest;
+    }
+}
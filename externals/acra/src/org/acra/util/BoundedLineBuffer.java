@@ -0,0 +1,116 @@
+package org.acra.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Keeps the last lines of a text, up to a maximum number of lines and a
+ * maximum total length. When a line is added to a full buffer, the oldest
+ * lines are discarded.
+ * <p>
+ * The lines are held in a circular array, so adding a line allocates nothing
+ * but the line itself. Line separators are not stored, they are added back
+ * when the text is built.
+ * </p>
+ */
+public final class BoundedLineBuffer {
+
+    /**
+     * Maximum total length, in characters, of the lines kept when not
+     * specified.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 256 * 1024;
+
+    private final String[] lines;
+    private final int maxLength;
+    private int first;
+    private int size;
+    private int length;
+
+    /**
+     * @param maxLines
+     *            Maximum number of lines kept.
+     */
+    public BoundedLineBuffer(int maxLines) {
+        this(maxLines, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param maxLines
+     *            Maximum number of lines kept.
+     * @param maxLength
+     *            Maximum total length of the text, in characters including
+     *            the line separators.
+     */
+    public BoundedLineBuffer(int maxLines, int maxLength) {
+        lines = new String[Math.max(1, maxLines)];
+        this.maxLength = Math.max(1, maxLength);
+    }
+
+    /**
+     * Adds a line, discarding the oldest ones if needed. A line longer than
+     * the maximum length is cut, only its end is kept.
+     *
+     * @param line
+     *            A line without its line separator.
+     */
+    public void add(String line) {
+        if (line.length() + 1 > maxLength) {
+            line = line.substring(line.length() + 1 - maxLength);
+        }
+        while (size == lines.length || (size > 0 && length + line.length() + 1 > maxLength)) {
+            removeFirst();
+        }
+        lines[(first + size) % lines.length] = line;
+        size++;
+        length += line.length() + 1;
+    }
+
+    /**
+     * @return The number of lines kept.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The length of the text, line separators included.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Writes the lines, each one followed by a new line.
+     *
+     * @param writer
+     *            Where the text is written.
+     * @throws IOException
+     *             If the writer fails.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (int i = 0; i < size; i++) {
+            writer.write(lines[(first + i) % lines.length]);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * @return The lines, each one followed by a new line.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < size; i++) {
+            result.append(lines[(first + i) % lines.length]).append('\n');
+        }
+        return result.toString();
+    }
+
+    private void removeFirst() {
+        length -= lines[first].length() + 1;
+        lines[first] = null;
+        first = (first + 1) % lines.length;
+        size--;
+    }
+}
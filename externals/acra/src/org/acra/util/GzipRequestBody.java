@@ -0,0 +1,59 @@
+package org.acra.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses another {@link RequestBody} with gzip while it is written. The
+ * compressed length is not known in advance so the body is sent with chunked
+ * transfer encoding.
+ */
+public final class GzipRequestBody extends RequestBody {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final RequestBody body;
+
+    /**
+     * @param body
+     *            The body to compress.
+     */
+    public GzipRequestBody(RequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public String getContentType() {
+        return body.getContentType();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return "gzip";
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        // Closing the gzip stream releases its native deflater, but the
+        // connection stream must stay open.
+        final OutputStream nonClosingOut = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                out.write(buffer, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        final GZIPOutputStream gzip = new GZIPOutputStream(nonClosingOut, BUFFER_SIZE);
+        try {
+            body.writeTo(gzip);
+        } finally {
+            gzip.close();
+        }
+    }
+}
@@ -6,90 +6,23 @@
 package org.acra.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.acra.ACRA;
+import org.acra.collector.Compatibility;
 import org.acra.sender.HttpSender.Method;
 import org.acra.sender.HttpSender.Type;
-import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.HttpRequestRetryHandler;
-import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.client.params.CookiePolicy;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.SingleClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 
 public final class HttpRequest {
 
-    private static class SocketTimeOutRetryHandler implements HttpRequestRetryHandler {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
-        private final HttpParams httpParams;
-        private final int maxNrRetries;
-
-        /**
-         * @param httpParams
-         *            HttpParams that will be used in the HttpRequest.
-         * @param maxNrRetries
-         *            Max number of times to retry Request on failure due to
-         *            SocketTimeOutException.
-         */
-        private SocketTimeOutRetryHandler(HttpParams httpParams, int maxNrRetries) {
-            this.httpParams = httpParams;
-            this.maxNrRetries = maxNrRetries;
-        }
-
-        @Override
-        public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-            if (exception instanceof SocketTimeoutException) {
-                if (executionCount <= maxNrRetries) {
-
-                    if (httpParams != null) {
-                        final int newSocketTimeOut = HttpConnectionParams.getSoTimeout(httpParams) * 2;
-                        HttpConnectionParams.setSoTimeout(httpParams, newSocketTimeOut);
-                        ACRA.log.d(ACRA.LOG_TAG, "SocketTimeOut - increasing time out to " + newSocketTimeOut
-                                + " millis and trying again");
-                    } else {
-                        ACRA.log.d(ACRA.LOG_TAG,
-                                "SocketTimeOut - no HttpParams, cannot increase time out. Trying again with current settings");
-                    }
-
-                    return true;
-                }
-
-                ACRA.log.d(ACRA.LOG_TAG, "SocketTimeOut but exceeded max number of retries : " + maxNrRetries);
-            }
-
-            return false; // To change body of implemented methods use File |
-                          // Settings | File Templates.
-        }
-    }
+    private static HttpTransport defaultTransport;
 
     private String login;
     private String password;
@@ -130,6 +63,26 @@ public final class HttpRequest {
         this.maxNrRetries = maxNrRetries;
     }
 
+    public String getLogin() {
+        return login;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getConnectionTimeOut() {
+        return connectionTimeOut;
+    }
+
+    public int getSocketTimeOut() {
+        return socketTimeOut;
+    }
+
+    public int getMaxNrRetries() {
+        return maxNrRetries;
+    }
+
     /**
      * Posts to a URL.
      * 
@@ -142,151 +95,108 @@ public final class HttpRequest {
      */
     public void send(URL url, Method method, String content, Type type) throws IOException {
 
-        final HttpClient httpClient = getHttpClient();
-        final HttpEntityEnclosingRequestBase httpRequest = getHttpRequest(url, method, content, type);
-
-        ACRA.log.d(ACRA.LOG_TAG, "Sending request to " + url);
         if (ACRA.DEV_LOGGING)
             ACRA.log.d(ACRA.LOG_TAG, "Http " + method.name() + " content : ");
         if (ACRA.DEV_LOGGING)
             ACRA.log.d(ACRA.LOG_TAG, content);
 
-        HttpResponse response = null;
-        try {
-            response = httpClient.execute(httpRequest, new BasicHttpContext());
-            if (response != null) {
-                final StatusLine statusLine = response.getStatusLine();
-                if (statusLine != null) {
-                    final String statusCode = Integer.toString(response.getStatusLine().getStatusCode());
-    
-                    if (!statusCode.equals("409") // 409 return code means that the
-                                                  // report has been received
-                                                  // already. So we can discard it.
-                            && !statusCode.equals("403") // a 403 error code is an explicit data validation refusal
-                                                         // from the server. The request must not be repeated.
-                                                         // Discard it.
-                            && (statusCode.startsWith("4") || statusCode.startsWith("5"))) {
-                        if (ACRA.DEV_LOGGING) {
-                            ACRA.log.d(ACRA.LOG_TAG, "Could not send HttpPost : " + httpRequest);
-                            ACRA.log.d(ACRA.LOG_TAG, "HttpResponse Status : "
-                                    + (statusLine != null ? statusLine.getStatusCode() : "NoStatusLine#noCode"));
-                            final String respContent = EntityUtils.toString(response.getEntity());
-                            ACRA.log.d(ACRA.LOG_TAG,
-                                    "HttpResponse Content : " + respContent.substring(0, Math.min(respContent.length(), 200)));
-                        }
-                        throw new IOException("Host returned error code " + statusCode);
-                    }
-                }
-
-                if (ACRA.DEV_LOGGING)
-                    ACRA.log.d(ACRA.LOG_TAG, "HttpResponse Status : "
-                            + (statusLine != null ? statusLine.getStatusCode() : "NoStatusLine#noCode"));
-                final String respContent = EntityUtils.toString(response.getEntity());
-                if (ACRA.DEV_LOGGING)
-                    ACRA.log.d(ACRA.LOG_TAG,
-                            "HttpResponse Content : " + respContent.substring(0, Math.min(respContent.length(), 200)));
-
-            } else {
-                if (ACRA.DEV_LOGGING)
-                    ACRA.log.d(ACRA.LOG_TAG, "HTTP no Response!!");
-            }
-        } finally {
-            if (response != null) {
-				response.getEntity().consumeContent();
-			}
-        }
+        send(url, method, RequestBody.create(content.getBytes("UTF-8"), type.getContentType(), null));
     }
 
     /**
-     * @return HttpClient to use with this HttpRequest.
+     * Sends a request body to a URL.
+     * 
+     * @param url
+     *            URL to which to send the body.
+     * @param method
+     *            HTTP method to use.
+     * @param body
+     *            Body of the request.
+     * @return The response body, null if the server did not send any.
+     * @throws IOException
+     *             if the request could not be sent or if the server answered
+     *             with an error status.
      */
-    private HttpClient getHttpClient() {
-        final HttpParams httpParams = new BasicHttpParams();
-        httpParams.setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.RFC_2109);
-        HttpConnectionParams.setConnectionTimeout(httpParams, connectionTimeOut);
-        HttpConnectionParams.setSoTimeout(httpParams, socketTimeOut);
-        HttpConnectionParams.setSocketBufferSize(httpParams, 8192);
+    public String send(URL url, Method method, RequestBody body) throws IOException {
+        ACRA.log.d(ACRA.LOG_TAG, "Sending request to " + url);
+        return getTransport().send(this, url, method, body);
+    }
 
-        final SchemeRegistry registry = new SchemeRegistry();
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
-        if (ACRA.getConfig().disableSSLCertValidation()) {
-            registry.register(new Scheme("https", (new FakeSocketFactory()), 443));
-        } else if (ACRA.getConfig().keyStore() != null) {
-            try {
-                SSLSocketFactory sf = new SSLSocketFactory(ACRA.getConfig().keyStore());
-                sf.setHostnameVerifier(SSLSocketFactory.STRICT_HOSTNAME_VERIFIER);
-                registry.register(new Scheme("https", sf, 443));
-            } catch (KeyManagementException e) {
-                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-            } catch (UnrecoverableKeyException e) {
-                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-            } catch (NoSuchAlgorithmException e) {
-                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-            } catch (KeyStoreException e) {
-                registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
-            }
-        } else {
-            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+    /**
+     * @return Headers to send with the given body, authentication excepted.
+     */
+    Map<String, String> getRequestHeaders(RequestBody body) {
+        final Map<String, String> requestHeaders = new LinkedHashMap<String, String>();
+        requestHeaders.put("User-Agent", "Android");
+        requestHeaders.put("Accept",
+                "text/html,application/xml,application/json,application/xhtml+xml,text/html;q=0.9,text/plain;q=0.8,image/png,*/*;q=0.5");
+        requestHeaders.put("Content-Type", body.getContentType());
+        if (body.getContentEncoding() != null) {
+            requestHeaders.put("Content-Encoding", body.getContentEncoding());
         }
-
-        final ClientConnectionManager clientConnectionManager = new SingleClientConnManager(httpParams, registry);
-        final DefaultHttpClient httpClient = new DefaultHttpClient(clientConnectionManager, httpParams);
-
-        final HttpRequestRetryHandler retryHandler = new SocketTimeOutRetryHandler(httpParams, maxNrRetries);
-        httpClient.setHttpRequestRetryHandler(retryHandler);
-
-        return httpClient;
+        if (headers != null) {
+            requestHeaders.putAll(headers);
+        }
+        return requestHeaders;
     }
 
     /**
-     * @return Credentials to use with this HttpRequest or null if no
-     *         credentials were supplied.
+     * Checks the status code returned by the server.
+     * 
+     * @param statusCode
+     *            HTTP status code of the response.
+     * @throws IOException
+     *             if the status code is an error which means the report
+     *             should be sent again later.
      */
-    private UsernamePasswordCredentials getCredentials() {
-        if (login != null || password != null) {
-            return new UsernamePasswordCredentials(login, password);
+    public static void checkResponseStatus(int statusCode) throws IOException {
+        if (isErrorStatus(statusCode)) {
+            throw new IOException("Host returned error code " + statusCode);
         }
-
-        return null;
     }
 
-    private HttpEntityEnclosingRequestBase getHttpRequest(URL url, Method method, String content, Type type)
-            throws UnsupportedEncodingException, UnsupportedOperationException {
-
-        final HttpEntityEnclosingRequestBase httpRequest;
-        switch (method) {
-        case POST:
-            httpRequest = new HttpPost(url.toString());
-            break;
-        case PUT:
-            httpRequest = new HttpPut(url.toString());
-            break;
-        default:
-            throw new UnsupportedOperationException("Unknown method: " + method.name());
-        }
+    /**
+     * @param statusCode
+     *            HTTP status code of the response.
+     * @return true if the status code means that the report has not been
+     *         received and should be sent again later.
+     */
+    public static boolean isErrorStatus(int statusCode) {
+        return statusCode != 409 // 409 return code means that the
+                                 // report has been received
+                                 // already. So we can discard it.
+                && statusCode != 403 // a 403 error code is an explicit data validation refusal
+                                     // from the server. The request must not be repeated.
+                                     // Discard it.
+                && statusCode >= 400 && statusCode < 600;
+    }
 
-        final UsernamePasswordCredentials creds = getCredentials();
-        if (creds != null) {
-            httpRequest.addHeader(BasicScheme.authenticate(creds, "UTF-8", false));
-        }
-        httpRequest.setHeader("User-Agent", "Android");
-        httpRequest
-                .setHeader("Accept",
-                        "text/html,application/xml,application/json,application/xhtml+xml,text/html;q=0.9,text/plain;q=0.8,image/png,*/*;q=0.5");
-        httpRequest.setHeader("Content-Type", type.getContentType());
+    /**
+     * @return The transport set with
+     *         {@link org.acra.ACRAConfiguration#setHttpTransport(HttpTransport)}
+     *         or the shared default one.
+     */
+    private static HttpTransport getTransport() {
+        final HttpTransport transport = ACRA.getConfig().httpTransport();
+        return transport != null ? transport : getDefaultTransport();
+    }
 
-        if(headers !=null) {
-           Iterator<String> headerIt = headers.keySet().iterator();
-           while(headerIt.hasNext()) {
-              String header = headerIt.next();
-              String value = headers.get(header);
-              httpRequest.setHeader(header, value);
-           }
+    /**
+     * HttpURLConnection is the recommended client from Gingerbread on. It had
+     * connection reuse bugs on older releases where the Apache client is used
+     * instead.
+     * 
+     * @return The default transport, shared by all requests.
+     */
+    private static synchronized HttpTransport getDefaultTransport() {
+        if (defaultTransport == null) {
+            if (Compatibility.getAPILevel() >= 9) {
+                defaultTransport = new UrlConnectionHttpTransport();
+            } else {
+                defaultTransport = new ApacheHttpTransport();
+            }
         }
-        
-        httpRequest.setEntity(new StringEntity(content, "UTF-8"));
-
-        return httpRequest;
+        return defaultTransport;
     }
 
     /**
@@ -314,4 +224,71 @@ public final class HttpRequest {
 
         return dataBfr.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes a Map of parameters as a URL encoded form, without building the
+     * whole String in memory. The output is the same as
+     * {@link #getParamsAsFormString(Map)}.
+     * 
+     * @param parameters
+     *            Map of parameters to convert.
+     * @param out
+     *            Stream to write the form to. It should be buffered as bytes
+     *            are written one by one.
+     * @throws IOException
+     *             if the form could not be written.
+     */
+    public static void writeParamsAsForm(Map<?, ?> parameters, OutputStream out) throws IOException {
+        boolean first = true;
+        for (final Map.Entry<?, ?> parameter : parameters.entrySet()) {
+            if (!first) {
+                out.write('&');
+            }
+            first = false;
+            final Object value = parameter.getValue();
+            writeFormEncoded(parameter.getKey().toString(), out);
+            out.write('=');
+            writeFormEncoded(value == null ? "" : value.toString(), out);
+        }
+    }
+
+    /**
+     * Same encoding as {@link URLEncoder#encode(String, String)} with UTF-8.
+     */
+    private static void writeFormEncoded(String text, OutputStream out) throws IOException {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-'
+                    || c == '*' || c == '_') {
+                out.write(c);
+            } else if (c == ' ') {
+                out.write('+');
+            } else if (c < 0x80) {
+                writePercentEncoded(c, out);
+            } else if (c < 0x800) {
+                writePercentEncoded(0xC0 | (c >> 6), out);
+                writePercentEncoded(0x80 | (c & 0x3F), out);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                writePercentEncoded(0xF0 | (codePoint >> 18), out);
+                writePercentEncoded(0x80 | ((codePoint >> 12) & 0x3F), out);
+                writePercentEncoded(0x80 | ((codePoint >> 6) & 0x3F), out);
+                writePercentEncoded(0x80 | (codePoint & 0x3F), out);
+            } else if (c >= '\uD800' && c <= '\uDFFF') {
+                // Malformed surrogate, replaced like the UTF-8 encoder does.
+                writePercentEncoded('?', out);
+            } else {
+                writePercentEncoded(0xE0 | (c >> 12), out);
+                writePercentEncoded(0x80 | ((c >> 6) & 0x3F), out);
+                writePercentEncoded(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    private static void writePercentEncoded(int b, OutputStream out) throws IOException {
+        out.write('%');
+        out.write(HEX_DIGITS[(b >> 4) & 0xF]);
+        out.write(HEX_DIGITS[b & 0xF]);
+    }
+}
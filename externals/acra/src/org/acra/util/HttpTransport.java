@@ -0,0 +1,40 @@
+package org.acra.util;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.acra.sender.HttpSender.Method;
+
+/**
+ * Performs the network exchange described by an {@link HttpRequest}.
+ * <p>
+ * A single transport instance is shared by all the requests issued by ACRA, so
+ * implementations must be thread safe. They are expected to keep connections
+ * alive and reuse them between consecutive requests to the same host instead
+ * of paying a TCP and TLS handshake for every report.
+ * </p>
+ *
+ * @see org.acra.ACRAConfiguration#setHttpTransport(HttpTransport)
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends a request and reads the whole response.
+     *
+     * @param request
+     *            Request settings (credentials, time outs, retries and
+     *            headers).
+     * @param url
+     *            URL to which to send the content.
+     * @param method
+     *            HTTP method to use.
+     * @param body
+     *            Body of the request.
+     * @return The response body, or null if the server did not send one.
+     * @throws IOException
+     *             if the request could not be sent or if the server answered
+     *             with an error status (see
+     *             {@link HttpRequest#checkResponseStatus(int)}).
+     */
+    String send(HttpRequest request, URL url, Method method, RequestBody body) throws IOException;
+}
@@ -1,11 +1,12 @@
 package org.acra.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
-import java.text.NumberFormat;
-import java.text.ParseException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.acra.ACRA;
 import org.acra.ReportField;
@@ -71,18 +72,7 @@ public class JSONReportBuilder {
                 // Each ReportField can be identified as a substructure and not
                 // a simple String value.
                 if (key.containsKeyValuePairs()) {
-                    JSONObject subObject = new JSONObject();
-                    String strContent = errorContent.getProperty(key);
-                    BufferedReader reader = new BufferedReader(new StringReader(strContent), 1024);
-                    String line = null;
-                    try {
-                        while ((line = reader.readLine()) != null) {
-                            addJSONFromProperty(subObject, line);
-                        }
-                    } catch (IOException e) {
-                        ACRA.log.e(ACRA.LOG_TAG, "Error while converting " + key.name() + " to JSON.", e);
-                    }
-                    jsonReport.accumulate(key.name(), subObject);
+                    jsonReport.accumulate(key.name(), toJSONObject(parseProperties(errorContent.getProperty(key))));
                 } else {
                     // This field is a simple String value, store it as it is
                     jsonReport.accumulate(key.name(), guessType(errorContent.getProperty(key)));
@@ -94,131 +84,411 @@ public class JSONReportBuilder {
         return jsonReport;
     }
 
+    /**
+     * Writes the same JSON structure as {@link #buildJSONReport(CrashReportData)}
+     * without building a JSONObject tree: simple fields are written as they
+     * are read, only the fields containing key/value pairs are structured
+     * before being written.
+     *
+     * @param errorContent
+     *            The ACRA report data structure.
+     * @param writer
+     *            Where the JSON text is written.
+     * @throws IOException
+     *             If the writer fails.
+     */
+    public static void writeJSONReport(CrashReportData errorContent, Writer writer) throws IOException {
+        writer.write('{');
+        boolean first = true;
+        for (Map.Entry<ReportField, String> field : errorContent.entrySet()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writeString(writer, field.getKey().name());
+            writer.write(':');
+            if (field.getKey().containsKeyValuePairs()) {
+                writeValue(writer, parseProperties(field.getValue()));
+            } else {
+                writeValue(writer, guessType(field.getValue()));
+            }
+        }
+        writer.write('}');
+    }
+
     /**
      * <p>
-     * Given a String containing key=value pairs on each line, adds a detailed
-     * JSON structure to an existing JSONObject, reusing intermediate subobjects
-     * if available when keys are composed of a succession of subkeys delimited
-     * by dots.
+     * Given a String containing key=value pairs on each line, builds a
+     * detailed structure, reusing intermediate subobjects if available when
+     * keys are composed of a succession of subkeys delimited by dots.
      * </p>
      *
      * <p>
-     * For example, adding the string "metrics.xdpi=160.0" to an object
-     * containing
-     *
-     * <pre>
-     * {
-     *   "metrics" : { "ydpi" : "160.0"},
-     *   "width" : "320",
-     *   "height" : "533"
-     * }
-     * </pre>
-     *
-     * results in
+     * For example, the lines "metrics.xdpi=160.0", "metrics.ydpi=160.0" and
+     * "width=320" result in
      *
      * <pre>
      * {
-     *   "metrics" : { "ydpi" : "160.0", "xdpi" : "160.0"},
-     *   "width" : "320",
-     *   "height" : "533"
+     *   "metrics" : { "xdpi" : "160.0", "ydpi" : "160.0"},
+     *   "width" : 320
      * }
      * </pre>
      *
      * </p>
      *
-     * @param destination
-     *            The JSONObject where the data must be inserted.
-     * @param propertyString
-     *            A string containing "some.key.name=Any value"
-     * @throws JSONException
+     * @param content
+     *            Lines containing "some.key.name=Any value".
+     * @return The structure, as nested maps. A key found several times holds
+     *         a list of its values.
      */
-    private static void addJSONFromProperty(JSONObject destination, String propertyString) throws JSONException {
-        int equalsIndex = propertyString.indexOf('=');
+    private static Map<String, Object> parseProperties(String content) {
+        final Map<String, Object> destination = new LinkedHashMap<String, Object>();
+        final int length = content.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            // Lines end like with BufferedReader#readLine()
+            int lineEnd = lineStart;
+            while (lineEnd < length && content.charAt(lineEnd) != '\n' && content.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            addProperty(destination, content.substring(lineStart, lineEnd));
+            lineStart = lineEnd + 1;
+            if (lineEnd + 1 < length && content.charAt(lineEnd) == '\r' && content.charAt(lineEnd + 1) == '\n') {
+                lineStart++;
+            }
+        }
+        return destination;
+    }
+
+    private static void addProperty(Map<String, Object> destination, String propertyString) {
+        final int equalsIndex = propertyString.indexOf('=');
         if (equalsIndex > 0) {
-            JSONObject finalObject = destination;
-            String currentKey = propertyString.substring(0, equalsIndex).trim();
-            String currentValue = propertyString.substring(equalsIndex + 1).trim();
+            final String currentKey = propertyString.substring(0, equalsIndex).trim();
+            final String currentValue = propertyString.substring(equalsIndex + 1).trim();
             Object value = guessType(currentValue);
-            if(value instanceof String) {
-                value = ((String) value).replaceAll("\\\\n","\n");
+            if (value instanceof String) {
+                value = unescapeNewLines((String) value);
+            }
+            final List<String> splitKey = splitKey(currentKey);
+            if (splitKey.size() > 1) {
+                addSubTree(destination, splitKey, value);
+            } else {
+                accumulate(destination, currentKey, value);
             }
-            String[] splitKey = currentKey.split("\\.");
-            if (splitKey.length > 1) {
-                addJSONSubTree(finalObject, splitKey, value);
+        } else {
+            destination.put(propertyString.trim(), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Deep insert a value inside a structure, reusing existing subobjects when
+     * available or creating them when necessary.
+     *
+     * @param destination
+     *            The structure which receives the additional subitem.
+     * @param keys
+     *            The path keys leading to where the value has to be inserted.
+     * @param value
+     *            The value to be inserted.
+     */
+    @SuppressWarnings("unchecked")
+    private static void addSubTree(Map<String, Object> destination, List<String> keys, Object value) {
+        for (int i = 0; i < keys.size(); i++) {
+            final String subKey = keys.get(i);
+            if (i < keys.size() - 1) {
+                Map<String, Object> intermediate = null;
+                final Object target = destination.get(subKey);
+                if (target == null) {
+                    intermediate = new LinkedHashMap<String, Object>();
+                    destination.put(subKey, intermediate);
+                } else if (target instanceof Map) {
+                    intermediate = (Map<String, Object>) target;
+                } else if (target instanceof List) {
+                    // Unexpected list, see issue #186
+                    for (Object item : (List<Object>) target) {
+                        if (item instanceof Map) {
+                            // Found the original object we were looking for
+                            intermediate = (Map<String, Object>) item;
+                            break;
+                        }
+                    }
+                }
+
+                if (intermediate == null) {
+                    ACRA.log.e(ACRA.LOG_TAG, "Unknown json subtree type, see issue #186");
+                    // We should never get here, but if we do, drop this value to still send the report
+                    return;
+                }
+                destination = intermediate;
             } else {
-                finalObject.accumulate(currentKey, value);
+                accumulate(destination, subKey, value);
             }
+        }
+    }
+
+    /**
+     * Same as {@link JSONObject#accumulate(String, Object)}: a key found
+     * several times holds the list of its values.
+     */
+    @SuppressWarnings("unchecked")
+    private static void accumulate(Map<String, Object> destination, String key, Object value) {
+        final Object current = destination.get(key);
+        if (current == null) {
+            destination.put(key, value);
+        } else if (current instanceof List) {
+            ((List<Object>) current).add(value);
         } else {
-            destination.put(propertyString.trim(), true);
+            final List<Object> values = new ArrayList<Object>();
+            values.add(current);
+            values.add(value);
+            destination.put(key, values);
         }
     }
 
+    /**
+     * Same as <code>key.split("\\.")</code>: trailing empty subkeys are
+     * dropped.
+     */
+    private static List<String> splitKey(String key) {
+        final List<String> subKeys = new ArrayList<String>();
+        int start = 0;
+        int dot;
+        while ((dot = key.indexOf('.', start)) >= 0) {
+            subKeys.add(key.substring(start, dot));
+            start = dot + 1;
+        }
+        subKeys.add(key.substring(start));
+        while (subKeys.size() > 1 && subKeys.get(subKeys.size() - 1).length() == 0) {
+            subKeys.remove(subKeys.size() - 1);
+        }
+        return subKeys;
+    }
+
+    /**
+     * Replaces the escaped "\\n" sequences by new lines.
+     */
+    private static String unescapeNewLines(String value) {
+        int escape = value.indexOf("\\n");
+        if (escape < 0) {
+            return value;
+        }
+        final StringBuilder result = new StringBuilder(value.length());
+        int start = 0;
+        while (escape >= 0) {
+            result.append(value, start, escape).append('\n');
+            start = escape + 2;
+            escape = value.indexOf("\\n", start);
+        }
+        return result.append(value, start, value.length()).toString();
+    }
+
+    /**
+     * @return A Boolean for "true" and "false" whatever their case, a Number
+     *         if the value is a number as described in
+     *         {@link #parseNumber(String)}, the value itself otherwise.
+     */
     private static Object guessType(String value) {
         if (value.equalsIgnoreCase("true"))
             return true;
         if (value.equalsIgnoreCase("false"))
             return false;
 
-        if (value.matches("(?:^|\\s)([1-9](?:\\d*|(?:\\d{0,2})(?:,\\d{3})*)(?:\\.\\d*[1-9])?|0?\\.\\d*[1-9]|0)(?:\\s|$)")) {
-            NumberFormat format = NumberFormat.getInstance(Locale.US);
-            try {
-                Number number = format.parse(value);
-                return number;
-            } catch (ParseException e) {
-                // never mind
-            }
-        }
-        return value;
+        final Number number = parseNumber(value);
+        return number != null ? number : value;
     }
 
     /**
-     * Deep insert a value inside a JSONObject, reusing existing subobjects when
-     * available or creating them when necessary.
+     * Single pass recognition of the positive numbers written in US format:
+     * "0", integers without leading zeros, optionally with thousands
+     * separators ("1,234,567"), and decimals ending with a non zero digit
+     * ("12.5", ".25", "0.25"). A value such as "1.0" is not a number, it is
+     * kept as it is written. One trailing white space is ignored.
      *
-     * @param destination
-     *            The JSONObject which receives the additional subitem.
-     * @param keys
-     *            An array containing the path keys leading to where the value
-     *            has to be inserted.
-     * @param value
-     *            The value to be inserted.
-     * @throws JSONException
+     * @return A Long, or a Double for decimals and integers too large for a
+     *         Long, null if the value is not such a number.
      */
-    private static void addJSONSubTree(JSONObject destination, String[] keys, Object value) throws JSONException {
-        for (int i = 0; i < keys.length; i++) {
-            String subKey = keys[i];
-            if (i < keys.length - 1) {
-                JSONObject intermediate = null;
-                if (destination.isNull(subKey)) {
-                    intermediate = new JSONObject();
-                    destination.accumulate(subKey, intermediate);
-                } else {
-                    Object target = destination.get(subKey);
-                    if (target instanceof JSONObject) {
-                        intermediate = destination.getJSONObject(subKey);
-                    } else if (target instanceof JSONArray) {
-                        // Unexpected JSONArray, see issue #186
-                        JSONArray wildCard = destination.getJSONArray(subKey);
-                        for (int j = 0; j < wildCard.length(); j++) {
-                            intermediate = wildCard.optJSONObject(j);
-                            if (intermediate != null) {
-                                // Found the original JSONObject we were looking for
-                                break;
-                            }
+    static Number parseNumber(String value) {
+        int length = value.length();
+        if (length > 0 && isWhitespace(value.charAt(length - 1))) {
+            length--;
+        }
+        if (length == 0) {
+            return null;
+        }
+
+        final StringBuilder digits = new StringBuilder(length);
+        int i = 0;
+        final char firstChar = value.charAt(0);
+        if (firstChar == '0') {
+            digits.append('0');
+            i = 1;
+        } else if (firstChar >= '1' && firstChar <= '9') {
+            while (i < length && isDigit(value.charAt(i))) {
+                digits.append(value.charAt(i++));
+            }
+            if (i < length && value.charAt(i) == ',') {
+                // At most 3 digits before the first separator, then groups
+                // of 3 digits.
+                if (digits.length() > 3) {
+                    return null;
+                }
+                while (i < length && value.charAt(i) == ',') {
+                    if (i + 3 >= length) {
+                        return null;
+                    }
+                    for (int j = i + 1; j <= i + 3; j++) {
+                        if (!isDigit(value.charAt(j))) {
+                            return null;
                         }
+                        digits.append(value.charAt(j));
                     }
+                    i += 4;
+                }
+            }
+        } else if (firstChar != '.') {
+            return null;
+        }
 
-                    if (intermediate == null) {
-                        ACRA.log.e(ACRA.LOG_TAG, "Unknown json subtree type, see issue #186");
-                        // We should never get here, but if we do, drop this value to still send the report
-                        return;
-                    }
+        if (i == length) {
+            return firstChar == '.' ? null : parseInteger(digits.toString());
+        }
+        // Decimals ending with a non zero digit.
+        if (value.charAt(i) != '.' || i + 1 == length || value.charAt(length - 1) == '0') {
+            return null;
+        }
+        digits.append('.');
+        for (i++; i < length; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return null;
+            }
+            digits.append(value.charAt(i));
+        }
+        return Double.valueOf(digits.toString());
+    }
+
+    private static Number parseInteger(String digits) {
+        try {
+            return Long.valueOf(digits);
+        } catch (NumberFormatException e) {
+            return Double.valueOf(digits);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return true for the characters of the \s regular expression class.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSONObject(Map<String, Object> map) throws JSONException {
+        final JSONObject object = new JSONObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            object.put(entry.getKey(), toJSON(entry.getValue()));
+        }
+        return object;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toJSON(Object value) throws JSONException {
+        if (value instanceof Map) {
+            return toJSONObject((Map<String, Object>) value);
+        }
+        if (value instanceof List) {
+            final JSONArray array = new JSONArray();
+            for (Object item : (List<Object>) value) {
+                array.put(toJSON(item));
+            }
+            return array;
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(Writer writer, Object value) throws IOException {
+        if (value instanceof Map) {
+            writer.write('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writeString(writer, entry.getKey());
+                writer.write(':');
+                writeValue(writer, entry.getValue());
+            }
+            writer.write('}');
+        } else if (value instanceof List) {
+            writer.write('[');
+            boolean first = true;
+            for (Object item : (List<Object>) value) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writeValue(writer, item);
+            }
+            writer.write(']');
+        } else if (value instanceof Double) {
+            // Like JSONObject, integral values are written without decimals.
+            final double d = (Double) value;
+            writer.write(d == (long) d ? Long.toString((long) d) : Double.toString(d));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writer.write(value.toString());
+        } else {
+            writeString(writer, String.valueOf(value));
+        }
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            final String escape;
+            switch (c) {
+            case '"':
+                escape = "\\\"";
+                break;
+            case '\\':
+                escape = "\\\\";
+                break;
+            case '\n':
+                escape = "\\n";
+                break;
+            case '\r':
+                escape = "\\r";
+                break;
+            case '\t':
+                escape = "\\t";
+                break;
+            case '\b':
+                escape = "\\b";
+                break;
+            case '\f':
+                escape = "\\f";
+                break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    escape = String.format(Locale.US, "\\u%04x", (int) c);
+                } else {
+                    continue;
                 }
-                destination = intermediate;
-            } else {
-                destination.accumulate(subKey, value);
             }
+            // Unescaped characters are written by runs.
+            writer.write(value, start, i - start);
+            writer.write(escape);
+            start = i + 1;
         }
+        writer.write(value, start, length - start);
+        writer.write('"');
     }
 
     public static class JSONReportException extends Exception {
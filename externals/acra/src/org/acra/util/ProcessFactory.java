@@ -0,0 +1,40 @@
+package org.acra.util;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Starts the processes run by the collectors, such as logcat and dumpsys.
+ * <p>
+ * It can be replaced to run the collectors outside of an Android device, in a
+ * benchmark for instance. Implementations must be thread safe.
+ * </p>
+ *
+ * @see org.acra.ACRAConfiguration#setProcessFactory(ProcessFactory)
+ */
+public interface ProcessFactory {
+
+    /**
+     * Starts processes with {@link ProcessBuilder}.
+     */
+    ProcessFactory DEFAULT = new ProcessFactory() {
+        @Override
+        public Process start(List<String> commandLine) throws IOException {
+            // stderr is merged with stdout so that no thread is needed to
+            // drain it.
+            return new ProcessBuilder(commandLine).redirectErrorStream(true).start();
+        }
+    };
+
+    /**
+     * Starts a process.
+     *
+     * @param commandLine
+     *            The command and its arguments.
+     * @return The started process, its error output merged with its standard
+     *         output.
+     * @throws IOException
+     *             if the process could not be started.
+     */
+    Process start(List<String> commandLine) throws IOException;
+}
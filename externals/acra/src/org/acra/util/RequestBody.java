@@ -0,0 +1,105 @@
+package org.acra.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Body of an HTTP request sent through an {@link HttpTransport}.
+ * <p>
+ * Bodies must be repeatable: {@link #writeTo(OutputStream)} may be called
+ * several times when a request is retried.
+ * </p>
+ */
+public abstract class RequestBody {
+
+    /**
+     * @return The value of the Content-Type header.
+     */
+    public abstract String getContentType();
+
+    /**
+     * @return The value of the Content-Encoding header, null if the body is
+     *         not encoded.
+     */
+    public String getContentEncoding() {
+        return null;
+    }
+
+    /**
+     * @return The number of bytes written by {@link #writeTo(OutputStream)},
+     *         or -1 if it is not known in advance. Bodies of unknown length are
+     *         sent with chunked transfer encoding.
+     */
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * Writes the whole body. The stream must not be closed.
+     *
+     * @param out
+     *            Stream to the server.
+     * @throws IOException
+     *             if the body could not be written.
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Writes the whole body to a stream discarding the bytes, to know its
+     * length without holding it in memory. Bodies serialized while they are
+     * written can use it to implement {@link #getContentLength()}, so that
+     * they are not sent chunked to servers which may not accept it.
+     *
+     * @return The number of bytes written by {@link #writeTo(OutputStream)}.
+     * @throws IOException
+     *             if the body could not be written.
+     */
+    protected final long measureContentLength() throws IOException {
+        final long[] length = new long[1];
+        writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                length[0]++;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int count) {
+                length[0] += count;
+            }
+        });
+        return length[0];
+    }
+
+    /**
+     * @param content
+     *            Bytes to send.
+     * @param contentType
+     *            Value of the Content-Type header.
+     * @param contentEncoding
+     *            Value of the Content-Encoding header, may be null.
+     * @return A body sending the given bytes.
+     */
+    public static RequestBody create(final byte[] content, final String contentType, final String contentEncoding) {
+        return new RequestBody() {
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+
+            @Override
+            public String getContentEncoding() {
+                return contentEncoding;
+            }
+
+            @Override
+            public long getContentLength() {
+                return content.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content);
+            }
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package org.acra.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.acra.ACRA;
+import org.acra.sender.HttpSender.Method;
+
+import android.util.Base64;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}.
+ * <p>
+ * HttpURLConnection keeps a pool of keep-alive connections per host, a
+ * connection being returned to the pool once its response has been fully read
+ * and its stream closed. This transport never calls
+ * {@link HttpURLConnection#disconnect()} for that reason. The SSL socket
+ * factory is built once from {@link org.acra.ACRAConfiguration} and shared by
+ * all requests so that TLS sessions can be resumed.
+ * </p>
+ * <p>
+ * HttpURLConnection had connection pooling bugs up to Android 2.2, this
+ * transport is only used by default from API 9.
+ * </p>
+ */
+public final class UrlConnectionHttpTransport implements HttpTransport {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final HostnameVerifier ALLOW_ALL_HOSTNAMES = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession session) {
+            return true;
+        }
+    };
+
+    private boolean sslConfigured;
+    private SSLSocketFactory sslSocketFactory;
+
+    @Override
+    public String send(HttpRequest request, URL url, Method method, RequestBody body) throws IOException {
+        int socketTimeOut = request.getSocketTimeOut();
+        int executionCount = 0;
+        while (true) {
+            executionCount++;
+            try {
+                return execute(request, url, method, body, socketTimeOut);
+            } catch (SocketTimeoutException e) {
+                if (executionCount > request.getMaxNrRetries()) {
+                    ACRA.log.d(ACRA.LOG_TAG,
+                            "SocketTimeOut but exceeded max number of retries : " + request.getMaxNrRetries());
+                    throw e;
+                }
+                socketTimeOut *= 2;
+                ACRA.log.d(ACRA.LOG_TAG, "SocketTimeOut - increasing time out to " + socketTimeOut
+                        + " millis and trying again");
+            }
+        }
+    }
+
+    private String execute(HttpRequest request, URL url, Method method, RequestBody body, int socketTimeOut)
+            throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            configureTls((HttpsURLConnection) connection);
+        }
+        connection.setConnectTimeout(request.getConnectionTimeOut());
+        connection.setReadTimeout(socketTimeOut);
+        connection.setRequestMethod(method.name());
+        connection.setDoOutput(true);
+        connection.setUseCaches(false);
+        final long contentLength = body.getContentLength();
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            connection.setFixedLengthStreamingMode((int) contentLength);
+        } else {
+            connection.setChunkedStreamingMode(0);
+        }
+
+        if (request.getLogin() != null || request.getPassword() != null) {
+            final String credentials = request.getLogin() + ":" + request.getPassword();
+            connection.setRequestProperty("Authorization",
+                    "Basic " + Base64.encodeToString(credentials.getBytes("UTF-8"), Base64.NO_WRAP));
+        }
+        for (Map.Entry<String, String> header : request.getRequestHeaders(body).entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        final OutputStream out = connection.getOutputStream();
+        try {
+            body.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        final int statusCode = connection.getResponseCode();
+        final String respContent = readResponse(connection, statusCode);
+        if (ACRA.DEV_LOGGING) {
+            ACRA.log.d(ACRA.LOG_TAG, "HttpResponse Status : " + statusCode);
+            if (respContent != null) {
+                ACRA.log.d(ACRA.LOG_TAG,
+                        "HttpResponse Content : " + respContent.substring(0, Math.min(respContent.length(), 200)));
+            }
+        }
+        HttpRequest.checkResponseStatus(statusCode);
+        return respContent;
+    }
+
+    /**
+     * Reads the response fully so that the connection can go back to the
+     * keep-alive pool.
+     */
+    private static String readResponse(HttpURLConnection connection, int statusCode) throws IOException {
+        final InputStream in = (statusCode >= 400) ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                response.write(buffer, 0, read);
+            }
+            return response.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private void configureTls(HttpsURLConnection connection) {
+        if (ACRA.getConfig().disableSSLCertValidation()) {
+            connection.setHostnameVerifier(ALLOW_ALL_HOSTNAMES);
+        }
+        final SSLSocketFactory factory = getSslSocketFactory();
+        if (factory != null) {
+            connection.setSSLSocketFactory(factory);
+        }
+    }
+
+    /**
+     * @return The SSLSocketFactory matching the ACRA configuration, or null if
+     *         the platform default should be used.
+     */
+    private synchronized SSLSocketFactory getSslSocketFactory() {
+        if (!sslConfigured) {
+            sslConfigured = true;
+            try {
+                if (ACRA.getConfig().disableSSLCertValidation()) {
+                    final SSLContext context = SSLContext.getInstance("TLS");
+                    context.init(null, new TrustManager[] { new NaiveTrustManager() }, null);
+                    sslSocketFactory = context.getSocketFactory();
+                } else if (ACRA.getConfig().keyStore() != null) {
+                    final KeyStore keyStore = ACRA.getConfig().keyStore();
+                    final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory
+                            .getDefaultAlgorithm());
+                    tmf.init(keyStore);
+                    final SSLContext context = SSLContext.getInstance("TLS");
+                    context.init(null, tmf.getTrustManagers(), null);
+                    sslSocketFactory = context.getSocketFactory();
+                }
+            } catch (GeneralSecurityException e) {
+                ACRA.log.w(ACRA.LOG_TAG, "Could not configure SSL, using the platform defaults", e);
+                sslSocketFactory = null;
+            }
+        }
+        return sslSocketFactory;
+    }
+}
@@ -0,0 +1,65 @@
+package com.util.log;
+
+import java.io.IOException;
+
+import org.acra.ACRA;
+import org.acra.ErrorReporter;
+import org.acra.ExceptionHandlerInitializer;
+
+/**
+ * Adds the flight recorder of the Logger to the ACRA reports. It is dumped to
+ * its file before each report, and the file is collected as the application
+ * log.
+ */
+public class ACRAFlightRecorder implements ExceptionHandlerInitializer {
+
+    /**
+     * The ExceptionHandlerInitializer set before, or null
+     */
+    private final ExceptionHandlerInitializer previous;
+
+    private ACRAFlightRecorder(ExceptionHandlerInitializer previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Attach the flight recorder to the ACRA reports. ACRA must be initialized
+     * and the flight recorder enabled with a dump path. The number of lines of
+     * the application log collected by ACRA is set by its configuration. The
+     * ExceptionHandlerInitializer of the ErrorReporter is still called, before
+     * the dump.
+     */
+    public static void attach() {
+        String path = Logger.getFlightRecorderPath();
+        if (path == null) {
+            throw new IllegalStateException("The flight recorder has no dump path");
+        }
+        ACRA.getConfig().setApplicationLogFile(path);
+        ErrorReporter reporter = ACRA.getErrorReporter();
+        ExceptionHandlerInitializer previous = reporter.getExceptionHandlerInitializer();
+        if (previous instanceof ACRAFlightRecorder) {
+            // Already attached
+            return;
+        }
+        reporter.setExceptionHandlerInitializer(new ACRAFlightRecorder(previous));
+    }
+
+    /**
+     * Call the previous initializer, so that the messages it logs are in the
+     * dump, then dump the flight recorder. A failed dump is counted in the
+     * Logger metrics.
+     */
+    public void initializeExceptionHandler(ErrorReporter reporter) {
+        try {
+            if (previous != null) {
+                previous.initializeExceptionHandler(reporter);
+            }
+        } finally {
+            try {
+                Logger.dumpFlightRecorder();
+            } catch (IOException e) {
+                // Counted in the Logger metrics
+            }
+        }
+    }
+}
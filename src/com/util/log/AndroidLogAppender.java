@@ -47,15 +47,22 @@ import java.io.InputStreamReader;
 /**
  * Default debugger to be used instea of System.out.println(msg);
  */
-public class AndroidLogAppender implements Appender {
+public class AndroidLogAppender implements Appender, Metered {
 
     // ---------------------------------------------------------------------------
 
     private String tag;
 
+    private final LogMetrics metrics;
+    private final LogMetrics.Counter messages;
+    private final LogMetrics.Counter chars;
+
     /** Default constructor */
     public AndroidLogAppender(String tag) {
         this.tag = tag;
+        metrics = new LogMetrics("AndroidLogAppender " + tag);
+        messages = metrics.counter("messages");
+        chars = metrics.counter("chars");
     }
 
     // ----------------------------------------------------------- Public
@@ -65,6 +72,8 @@ public class AndroidLogAppender implements Appender {
      */
     @Override
     public void writeLogMessage(String level, String msg) {
+        messages.increment();
+        chars.add(msg.length());
         if (level.equals("ERROR")) {
             Log.e(tag, msg);
         } else if (level.equals("INFO")) {
@@ -108,6 +117,15 @@ public class AndroidLogAppender implements Appender {
     public void setLogLevel(int i) {
     }
 
+    /**
+     * The metrics of this appender: the messages written and their length in
+     * chars.
+     */
+    @Override
+    public LogMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public LogContent getLogContent() throws IOException {
         StringBuffer log = new StringBuffer();
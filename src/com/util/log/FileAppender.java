@@ -49,7 +49,7 @@ import java.util.Date;
  * this is about 2 times the maxFileSize (this is not accurate as there is no
  * limit on the size of the single message printed).
  */
-public class FileAppender implements Appender {
+public class FileAppender implements Appender, Metered {
 
     private String allLogFileName = "allsynclog.txt";
     private String path = "file:///root1/";
@@ -67,6 +67,14 @@ public class FileAppender implements Appender {
 
     private Object lock = new Object();
 
+    private final LogMetrics metrics;
+    private final LogMetrics.Counter messages;
+    private final LogMetrics.Counter bytes;
+    private final LogMetrics.Counter errors;
+    private final LogMetrics.Counter dropped;
+    private final LogMetrics.Histogram flushes;
+    private final LogMetrics.Histogram rotations;
+
     /**
      * Default constructor
      */
@@ -84,6 +92,14 @@ public class FileAppender implements Appender {
             contentPath = this.path;
         }
         os = null;
+
+        metrics = new LogMetrics("FileAppender " + this.fileName);
+        messages = metrics.counter("messages");
+        bytes = metrics.counter("bytes");
+        errors = metrics.counter("errors");
+        dropped = metrics.counter("dropped");
+        flushes = metrics.histogram("flush");
+        rotations = metrics.histogram("rotation");
     }
 
     // ----------------------------------------------------------- Public
@@ -138,13 +154,19 @@ public class FileAppender implements Appender {
                     logMsg.append(" [").append(level).append("] ");
                     logMsg.append(msg);
                     logMsg.append("\r\n");
-                    os.write(logMsg.toString().getBytes());
+                    byte[] data = logMsg.toString().getBytes();
+                    os.write(data);
+                    long flushStart = System.nanoTime();
                     os.flush();
+                    flushes.recordSince(flushStart);
+                    messages.increment();
+                    bytes.add(data.length);
 
                     // If the file grows beyond the limit, we rename it and
                     // create a new
                     // one
                     if (file.getSize() > maxFileSize) {
+                        long rotationStart = System.nanoTime();
                         try {
                             String oldFileName = fileUrl + oldSuffix;
                             FileAdapter oldFile = new FileAdapter(oldFileName);
@@ -156,11 +178,17 @@ public class FileAppender implements Appender {
                             // Reopen the file
                             initLogFile();
                         } catch (Exception ioe) {
+                            errors.increment();
                             System.out.println("Exception while renaming " + ioe);
                         }
+                        rotations.recordSince(rotationStart);
                     }
+                } else {
+                    dropped.increment();
                 }
             } catch (Exception e) {
+                errors.increment();
+                dropped.increment();
                 System.out.println("Exception while logging. " + e);
                 e.printStackTrace();
                 // We try to close and reopen the log file. The message being
@@ -190,6 +218,7 @@ public class FileAppender implements Appender {
                 file = new FileAdapter(fileUrl);
                 os = file.openOutputStream(true);
             } catch (Exception e) {
+                errors.increment();
                 System.out.println("Cannot open or create file at: " + fileUrl);
                 e.printStackTrace();
             }
@@ -251,6 +280,21 @@ public class FileAppender implements Appender {
         }
     }
 
+    /**
+     * The metrics of this appender:
+     * <ul>
+     * <li>messages, bytes: the messages written and their size</li>
+     * <li>errors: the failures to write, rotate or open the file</li>
+     * <li>dropped: the messages lost, as the file was not open or could not be
+     * written</li>
+     * <li>flush, rotation: the duration of the flushes and rotations</li>
+     * </ul>
+     */
+    @Override
+    public LogMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public LogContent getLogContent() throws IOException {
         synchronized (lock) {
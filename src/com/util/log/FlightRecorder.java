@@ -0,0 +1,164 @@
+package com.util.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * A ring of the last log messages, kept in a direct ByteBuffer outside of the
+ * Java heap. The oldest messages are overwritten when the ring is full. See
+ * {@link Logger#enableFlightRecorder(int, String)}.
+ * <p>
+ * A message is recorded as:
+ * <ul>
+ * <li>its length in bytes, header included (int)</li>
+ * <li>its time in milliseconds (long)</li>
+ * <li>the length of its level label (byte), then the label</li>
+ * <li>the message in UTF-8, up to the end of the record</li>
+ * </ul>
+ * Records wrap around the end of the buffer.
+ * </p>
+ */
+class FlightRecorder {
+
+    private static final int HEADER_SIZE = 4 + 8 + 1;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    /**
+     * Maximum size of a record, longer messages are truncated
+     */
+    private final int maxRecordSize;
+
+    private final byte[] header = new byte[HEADER_SIZE];
+
+    /**
+     * Position of the oldest record
+     */
+    private int head = 0;
+
+    /**
+     * Position of the next record
+     */
+    private int tail = 0;
+
+    /**
+     * Bytes used by the records
+     */
+    private int used = 0;
+
+    /**
+     * @param capacity the size of the ring in bytes
+     */
+    FlightRecorder(int capacity) {
+        this.capacity = Math.max(1024, capacity);
+        buffer = ByteBuffer.allocateDirect(this.capacity);
+        maxRecordSize = this.capacity / 4;
+    }
+
+    /**
+     * Record a message, overwriting the oldest ones if needed.
+     */
+    synchronized void record(long time, String label, String msg) {
+        byte[] labelBytes = encode(label);
+        int labelLength = Math.min(labelBytes.length, 255);
+        byte[] msgBytes = encode(msg);
+        int msgLength = Math.min(msgBytes.length, maxRecordSize - HEADER_SIZE - labelLength);
+        int length = HEADER_SIZE + labelLength + msgLength;
+
+        while (capacity - used < length) {
+            int oldest = readInt(head);
+            head = (head + oldest) % capacity;
+            used -= oldest;
+        }
+
+        header[0] = (byte) (length >>> 24);
+        header[1] = (byte) (length >>> 16);
+        header[2] = (byte) (length >>> 8);
+        header[3] = (byte) length;
+        for (int i = 0; i < 8; i++) {
+            header[4 + i] = (byte) (time >>> (56 - 8 * i));
+        }
+        header[12] = (byte) labelLength;
+        write(header, HEADER_SIZE);
+        write(labelBytes, labelLength);
+        write(msgBytes, msgLength);
+        used += length;
+    }
+
+    /**
+     * Return a copy of the records, oldest first
+     */
+    synchronized byte[] snapshot() {
+        byte[] data = new byte[used];
+        int first = Math.min(used, capacity - head);
+        buffer.position(head);
+        buffer.get(data, 0, first);
+        if (first < used) {
+            buffer.position(0);
+            buffer.get(data, first, used - first);
+        }
+        return data;
+    }
+
+    /**
+     * Write records as text, in the format of the FileAppender.
+     *
+     * @param data records from snapshot
+     */
+    static void decode(byte[] data, OutputStream os) throws IOException {
+        int position = 0;
+        while (position + HEADER_SIZE <= data.length) {
+            int length = readInt(data, position);
+            long time = 0;
+            for (int i = 0; i < 8; i++) {
+                time = (time << 8) | (data[position + 4 + i] & 0xff);
+            }
+            int labelLength = data[position + 12] & 0xff;
+            int labelStart = position + HEADER_SIZE;
+            int msgStart = labelStart + labelLength;
+
+            StringBuffer line = new StringBuffer(new Date(time).toString());
+            line.append(" [").append(new String(data, labelStart, labelLength, "UTF-8")).append("] ");
+            line.append(new String(data, msgStart, position + length - msgStart, "UTF-8"));
+            line.append("\r\n");
+            os.write(line.toString().getBytes("UTF-8"));
+            position += length;
+        }
+    }
+
+    private void write(byte[] src, int length) {
+        int first = Math.min(length, capacity - tail);
+        buffer.position(tail);
+        buffer.put(src, 0, first);
+        if (first < length) {
+            buffer.position(0);
+            buffer.put(src, first, length - first);
+        }
+        tail = (tail + length) % capacity;
+    }
+
+    private int readInt(int position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (buffer.get((position + i) % capacity) & 0xff);
+        }
+        return value;
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return ((data[position] & 0xff) << 24) | ((data[position + 1] & 0xff) << 16)
+                | ((data[position + 2] & 0xff) << 8) | (data[position + 3] & 0xff);
+    }
+
+    private static byte[] encode(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return text.getBytes();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.util.log;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Samples the Java heap periodically from a background thread, without ever
+ * forcing a garbage collection. Started with
+ * {@link Logger#startHeapSampler(long)}, its values are reported by
+ * {@link Logger#logMetrics()}:
+ * <ul>
+ * <li>used, committed, max: the heap used, reserved and available at the last
+ * sample, in bytes</li>
+ * <li>peak: the highest heap used in a sample</li>
+ * <li>allocated: the growth of the heap used between samples. This is a lower
+ * bound of the allocations, as the objects allocated and collected between
+ * two samples are not seen.</li>
+ * <li>collections: the samples in which the heap used has decreased, a lower
+ * bound of the garbage collections</li>
+ * </ul>
+ */
+class HeapSampler {
+
+    private static final LogMetrics metrics = new LogMetrics("Heap");
+    private static final LogMetrics.Gauge used = metrics.gauge("used");
+    private static final LogMetrics.Gauge committed = metrics.gauge("committed");
+    private static final LogMetrics.Gauge max = metrics.gauge("max");
+    private static final LogMetrics.Gauge peak = metrics.gauge("peak");
+    private static final LogMetrics.Counter samples = metrics.counter("samples");
+    private static final LogMetrics.Counter allocated = metrics.counter("allocated");
+    private static final LogMetrics.Counter collections = metrics.counter("collections");
+
+    private static Timer timer;
+    private static long lastUsed = -1;
+
+    private HeapSampler() {
+    }
+
+    static LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    static synchronized void start(long period) {
+        stop();
+        timer = new Timer("HeapSampler", true);
+        timer.schedule(new TimerTask() {
+            public void run() {
+                sample();
+            }
+        }, 0, period);
+    }
+
+    static synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Take a sample now. The Runtime memory getters only read counters of the
+     * heap, they are cheap.
+     */
+    static synchronized void sample() {
+        Runtime runtime = Runtime.getRuntime();
+        long total = runtime.totalMemory();
+        long current = total - runtime.freeMemory();
+
+        samples.increment();
+        used.set(current);
+        committed.set(total);
+        max.set(runtime.maxMemory());
+        if (current > peak.get()) {
+            peak.set(current);
+        }
+        if (lastUsed >= 0) {
+            if (current >= lastUsed) {
+                allocated.add(current - lastUsed);
+            } else {
+                collections.increment();
+            }
+        }
+        lastUsed = current;
+    }
+}
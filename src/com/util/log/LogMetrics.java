@@ -0,0 +1,364 @@
+package com.util.log;
+
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, gauges and duration histograms of the Logger or of an appender.
+ * They are cheap enough to be recorded on every message: a counter is striped
+ * over several cache lines indexed by thread, so that concurrent threads
+ * seldom update the same memory, and a histogram only increments a power of
+ * two bucket.
+ * <p>
+ * The values are read as a {@link Snapshot}, which can be logged with
+ * {@link Logger#logMetrics()}.
+ * </p>
+ */
+public class LogMetrics {
+
+    private final String name;
+    private final Vector counters = new Vector();
+    private final Vector gauges = new Vector();
+    private final Vector histograms = new Vector();
+
+    /**
+     * @param name the name of the metered component, printed with its values
+     */
+    public LogMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Create a counter, reported in the snapshots in creation order.
+     */
+    public Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.addElement(counter);
+        return counter;
+    }
+
+    /**
+     * Create a gauge, reported in the snapshots after the counters.
+     */
+    public Gauge gauge(String name) {
+        Gauge gauge = new Gauge(name);
+        gauges.addElement(gauge);
+        return gauge;
+    }
+
+    /**
+     * Create a histogram, reported in the snapshots in creation order.
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        histograms.addElement(histogram);
+        return histogram;
+    }
+
+    /**
+     * @return the current values. The values are read one after the other
+     *         while they may be updated, they are not consistent with each
+     *         other.
+     */
+    public Snapshot snapshot() {
+        int counterCount = counters.size();
+        String[] counterNames = new String[counterCount + gauges.size()];
+        long[] counterValues = new long[counterNames.length];
+        for (int i = 0; i < counterCount; i++) {
+            Counter counter = (Counter) counters.elementAt(i);
+            counterNames[i] = counter.name;
+            counterValues[i] = counter.get();
+        }
+        for (int i = counterCount; i < counterNames.length; i++) {
+            Gauge gauge = (Gauge) gauges.elementAt(i - counterCount);
+            counterNames[i] = gauge.name;
+            counterValues[i] = gauge.get();
+        }
+        HistogramSnapshot[] histogramValues = new HistogramSnapshot[histograms.size()];
+        for (int i = 0; i < histogramValues.length; i++) {
+            histogramValues[i] = ((Histogram) histograms.elementAt(i)).snapshot();
+        }
+        return new Snapshot(name, counterNames, counterValues, histogramValues);
+    }
+
+    /**
+     * A counter striped over several cache lines.
+     */
+    public static class Counter {
+
+        /**
+         * Longs per cache line, a stripe is in its own cache line.
+         */
+        private static final int PADDING = 8;
+
+        /**
+         * Power of two number of stripes, twice the processors up to 64.
+         */
+        private static final int STRIPES;
+
+        static {
+            int stripes = 1;
+            int processors = Runtime.getRuntime().availableProcessors();
+            while (stripes < 2 * processors && stripes < 64) {
+                stripes <<= 1;
+            }
+            STRIPES = stripes;
+        }
+
+        private final String name;
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public void add(long value) {
+            cells.getAndAdd(stripe() * PADDING, value);
+        }
+
+        public long get() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+
+        /**
+         * @return the stripe of the current thread, from a hash of its id
+         */
+        private static int stripe() {
+            long id = Thread.currentThread().getId();
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & (STRIPES - 1);
+        }
+    }
+
+    /**
+     * A value which is set rather than incremented.
+     */
+    public static class Gauge {
+
+        private final String name;
+        private volatile long value;
+
+        Gauge(String name) {
+            this.name = name;
+        }
+
+        public void set(long value) {
+            this.value = value;
+        }
+
+        public long get() {
+            return value;
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds, with a bucket per power of two.
+     */
+    public static class Histogram {
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final Counter sum = new Counter(null);
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Record a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets.getAndIncrement(bucket(nanos));
+            sum.add(nanos);
+            long currentMax = max.get();
+            while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+                currentMax = max.get();
+            }
+        }
+
+        /**
+         * Record the duration since a start time.
+         *
+         * @param startNanos the start time from System.nanoTime()
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new HistogramSnapshot(name, counts, sum.get(), max.get());
+        }
+
+        /**
+         * @return the bucket of the values up to 2^bucket - 1, values above
+         *         2^62 are in the last bucket
+         */
+        static int bucket(long nanos) {
+            return Math.min(63, 64 - Long.numberOfLeadingZeros(nanos));
+        }
+    }
+
+    /**
+     * The values of a LogMetrics at a point in time.
+     */
+    public static class Snapshot {
+
+        private final String name;
+        private final String[] counterNames;
+        private final long[] counterValues;
+        private final HistogramSnapshot[] histograms;
+
+        Snapshot(String name, String[] counterNames, long[] counterValues, HistogramSnapshot[] histograms) {
+            this.name = name;
+            this.counterNames = counterNames;
+            this.counterValues = counterValues;
+            this.histograms = histograms;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the value of a counter or of a gauge, 0 if there is no such
+         *         counter
+         */
+        public long getCounter(String counterName) {
+            for (int i = 0; i < counterNames.length; i++) {
+                if (counterNames[i].equals(counterName)) {
+                    return counterValues[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return a histogram, null if there is no such histogram
+         */
+        public HistogramSnapshot getHistogram(String histogramName) {
+            for (int i = 0; i < histograms.length; i++) {
+                if (histograms[i].getName().equals(histogramName)) {
+                    return histograms[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the name followed by the non zero counters and the non empty
+         *         histograms
+         */
+        public String toString() {
+            StringBuffer result = new StringBuffer(name).append(':');
+            for (int i = 0; i < counterNames.length; i++) {
+                if (counterValues[i] != 0) {
+                    result.append(' ').append(counterNames[i]).append('=').append(counterValues[i]);
+                }
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                if (histograms[i].getCount() != 0) {
+                    result.append(' ').append(histograms[i]);
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * The values of a Histogram at a point in time.
+     */
+    public static class HistogramSnapshot {
+
+        private final String name;
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        HistogramSnapshot(String name, long[] buckets, long sum, long max) {
+            this.name = name;
+            this.buckets = buckets;
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                count += buckets[i];
+            }
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the total of the durations in nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return an upper bound of the percentile, the power of two above it
+         *         or the maximum
+         */
+        public long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @return the count and the durations in microseconds
+         */
+        public String toString() {
+            StringBuffer result = new StringBuffer(name);
+            result.append("{count=").append(count);
+            result.append(" mean=").append(getMean() / 1000).append("us");
+            result.append(" p99<=").append(getPercentile(99) / 1000).append("us");
+            result.append(" max=").append(max / 1000).append("us}");
+            return result.toString();
+        }
+    }
+}
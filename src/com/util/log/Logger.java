@@ -3,8 +3,13 @@ package com.util.log;
 
 import org.acra.log.ACRALog;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.Vector;
 
 /**
@@ -59,9 +64,14 @@ public class Logger implements ACRALog {
     private static int level = INFO;
 
     /**
-     * Last time stamp used to dump profiling information
+     * Time stamp of the first time statistics, from System.nanoTime()
      */
-    private static long initialTimeStamp = -1;
+    private static long initialTimeStamp;
+
+    /**
+     * Whether the time statistics have been started
+     */
+    private static boolean timeStatsStarted = false;
 
     /**
      * Default Log cache size
@@ -103,6 +113,76 @@ public class Logger implements ACRALog {
 
     private static Logger instance = null;
 
+    /**
+     * Metrics of the Logger: the messages accepted and filtered per level, the
+     * messages lost as the appender failed, the context messages evicted from
+     * the cache before an error, the time spent in the appender, and the dumps
+     * of the flight recorder and their failures.
+     */
+    private static final LogMetrics metrics = new LogMetrics("Logger");
+
+    /**
+     * The names of the levels in the metrics, indexed by level - PROFILING
+     */
+    private static final String[] LEVEL_NAMES = { "PROFILING", null, "ERROR", "INFO", "DEBUG",
+            "TRACE", "VERBOSE", "WARN" };
+
+    private static final LogMetrics.Counter[] accepted = new LogMetrics.Counter[LEVEL_NAMES.length];
+    private static final LogMetrics.Counter[] filtered = new LogMetrics.Counter[LEVEL_NAMES.length];
+
+    static {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i] != null) {
+                accepted[i] = metrics.counter("accepted." + LEVEL_NAMES[i]);
+            }
+        }
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i] != null) {
+                filtered[i] = metrics.counter("filtered." + LEVEL_NAMES[i]);
+            }
+        }
+    }
+
+    private static final LogMetrics.Counter dropped = metrics.counter("dropped");
+    private static final LogMetrics.Counter contextEvicted = metrics.counter("context.evicted");
+    private static final LogMetrics.Histogram appendTime = metrics.histogram("append");
+    private static final LogMetrics.Counter flightRecorderDumps = metrics.counter("flightRecorder.dumps");
+    private static final LogMetrics.Counter flightRecorderErrors = metrics.counter("flightRecorder.errors");
+
+    /**
+     * Timer logging the metrics periodically, null if it is not started
+     */
+    private static Timer metricsTimer;
+
+    /**
+     * The ring of all the messages, whatever their level, or null if the
+     * flight recorder is disabled
+     */
+    private static volatile FlightRecorder flightRecorder;
+
+    /**
+     * The file where the flight recorder is dumped, or null
+     */
+    private static volatile String flightRecorderPath;
+
+    /**
+     * Minimum time between two dumps of the flight recorder after errors, in
+     * milliseconds
+     */
+    private static final long FLIGHT_RECORDER_DUMP_INTERVAL = 5000;
+
+    /**
+     * Whether a dump of the flight recorder after an error is pending
+     */
+    private static boolean flightRecorderDumpPending = false;
+
+    /**
+     * The time of the last dump after an error
+     */
+    private static long flightRecorderLastDump = 0;
+
+    private static final Object flightRecorderDumpLock = new Object();
+
     // -------------------------------------------------------------
     // Constructors
     /**
@@ -181,6 +261,137 @@ public class Logger implements ACRALog {
         initLog(object, INFO);
     }
 
+    /**
+     * Enable the flight recorder: every message, whatever the Log level, is
+     * also kept in a ring outside of the Java heap, in a compact binary form.
+     * The Log level only applies to the appender, so the appender can receive
+     * only the important messages while the ring keeps the recent verbose
+     * context.
+     * <p>
+     * The ring is dumped to a file by dumpFlightRecorder, in the background
+     * after an error message but at most every 5 seconds, and before an ACRA
+     * report once {@link ACRAFlightRecorder#attach()} has been called.
+     * Contextual errors handling is not needed with the flight recorder.
+     * </p>
+     * 
+     * @param capacity the size of the ring in bytes, the oldest messages are
+     *            overwritten when it is full
+     * @param dumpPath the file where the ring is dumped, null to dump it in
+     *            memory only
+     */
+    public static synchronized void enableFlightRecorder(int capacity, String dumpPath) {
+        flightRecorder = new FlightRecorder(capacity);
+        flightRecorderPath = dumpPath;
+    }
+
+    /**
+     * Disable the flight recorder and release its ring.
+     */
+    public static synchronized void disableFlightRecorder() {
+        flightRecorder = null;
+        flightRecorderPath = null;
+    }
+
+    public static boolean isFlightRecorderEnabled() {
+        return flightRecorder != null;
+    }
+
+    /**
+     * Return the file where the flight recorder is dumped, or null
+     */
+    public static String getFlightRecorderPath() {
+        return flightRecorderPath;
+    }
+
+    /**
+     * Dump the flight recorder, oldest message first, in the format of the
+     * FileAppender. The ring is copied then decoded without holding the
+     * Logger lock, logging is only blocked for the copy.
+     * 
+     * @return the dump file if a dump path was given, the dump itself
+     *         otherwise
+     * @throws IOException if the flight recorder is disabled or the dump
+     *             cannot be written
+     */
+    public static LogContent dumpFlightRecorder() throws IOException {
+        FlightRecorder recorder = flightRecorder;
+        String path = flightRecorderPath;
+        if (recorder == null) {
+            flightRecorderErrors.increment();
+            throw new IOException("The flight recorder is disabled");
+        }
+        byte[] data = recorder.snapshot();
+        synchronized (flightRecorderDumpLock) {
+            flightRecorderDumps.increment();
+            if (path == null) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                FlightRecorder.decode(data, os);
+                return new LogContent(LogContent.STRING_CONTENT, os.toString("UTF-8"));
+            }
+            // Write a temporary file then rename it, so that the dump file
+            // being read, by ACRA for instance, is always complete
+            String tmpPath = path + ".tmp";
+            try {
+                FileAdapter file = new FileAdapter(tmpPath);
+                OutputStream os = file.openOutputStream();
+                try {
+                    FlightRecorder.decode(data, os);
+                } finally {
+                    os.close();
+                    file.close();
+                }
+                if (!new File(tmpPath).renameTo(new File(path))) {
+                    throw new IOException("Cannot rename " + tmpPath + " to " + path);
+                }
+            } catch (IOException e) {
+                flightRecorderErrors.increment();
+                throw e;
+            }
+            return new LogContent(LogContent.FILE_CONTENT, path);
+        }
+    }
+
+    /**
+     * Dump the flight recorder from a background thread. The dumps requested
+     * while one is pending are merged into it, and the dumps are spaced by
+     * FLIGHT_RECORDER_DUMP_INTERVAL, so that a burst of errors does not
+     * rewrite the whole ring again and again.
+     */
+    private static void dumpFlightRecorderInBackground() {
+        // Called with the Logger lock, which also guards the pending flag
+        if (flightRecorderDumpPending) {
+            return;
+        }
+        flightRecorderDumpPending = true;
+        Thread dumper = new Thread("FlightRecorderDump") {
+            public void run() {
+                try {
+                    long delay;
+                    synchronized (Logger.class) {
+                        delay = flightRecorderLastDump + FLIGHT_RECORDER_DUMP_INTERVAL
+                                - System.currentTimeMillis();
+                    }
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                } catch (InterruptedException e) {
+                    // Dump now
+                }
+                synchronized (Logger.class) {
+                    flightRecorderDumpPending = false;
+                    flightRecorderLastDump = System.currentTimeMillis();
+                }
+                try {
+                    dumpFlightRecorder();
+                } catch (IOException e) {
+                    // Counted in the metrics, we cannot log here
+                }
+            }
+        };
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
     /**
      * Return a reference to the current appender
      */
@@ -419,45 +630,72 @@ public class Logger implements ACRALog {
     }
 
     /**
-     * Dump memory statistics at this point. Dump if level >= DEBUG.
+     * Start a span of the current thread, to be closed at its end. Its duration
+     * is added to the histogram of its name, reported by logMetrics.
+     * 
+     * @param name the name of the span, the durations of the spans with the
+     *            same name are aggregated
+     */
+    public static Span startSpan(String name) {
+        return Span.start(name);
+    }
+
+    /**
+     * Sample the heap periodically, from a background thread. The samples are
+     * reported by logMetrics. The sampler never forces a garbage collection.
+     * 
+     * @param period the time between two samples, in milliseconds
+     */
+    public static void startHeapSampler(long period) {
+        HeapSampler.start(period);
+    }
+
+    /**
+     * Stop sampling the heap.
+     */
+    public static void stopHeapSampler() {
+        HeapSampler.stop();
+    }
+
+    /**
+     * Dump memory statistics at this point. The available memory includes the
+     * garbage not yet collected: no collection is forced, as it would pause
+     * the application. Use startHeapSampler to follow the heap.
      * 
      * @param msg message to be Logged
      */
     public static void memoryStats(String msg) {
-        // Try to force a garbage collection, so we get the real amount of
-        // available memory
         long available = Runtime.getRuntime().freeMemory();
-        Runtime.getRuntime().gc();
         writeLogMessage(PROFILING, "PROFILING-MEMORY", msg + ":" + available + " [bytes]");
     }
 
     /**
-     * Dump memory statistics at this point.
+     * Dump memory statistics at this point, without forcing a garbage
+     * collection.
      * 
      * @param obj caller object
      * @param msg message to be Logged
      */
     public static void memoryStats(Object obj, String msg) {
-        // Try to force a garbage collection, so we get the real amount of
-        // available memory
-        Runtime.getRuntime().gc();
         long available = Runtime.getRuntime().freeMemory();
         writeLogMessage(PROFILING, "PROFILING-MEMORY", obj.getClass().getName() + "::" + msg + ":"
                 + available + " [bytes]");
     }
 
     /**
-     * Dump time statistics at this point.
+     * Dump time statistics at this point: the time since the first time
+     * statistics. Use startSpan to measure a section of code.
      * 
      * @param msg message to be Logged
      */
     public static void timeStats(String msg) {
-        long time = System.currentTimeMillis();
-        if (initialTimeStamp == -1) {
+        long time = System.nanoTime();
+        if (!timeStatsStarted) {
             writeLogMessage(PROFILING, "PROFILING-TIME", msg + ": 0 [msec]");
             initialTimeStamp = time;
+            timeStatsStarted = true;
         } else {
-            long currentTime = time - initialTimeStamp;
+            long currentTime = (time - initialTimeStamp) / 1000000;
             writeLogMessage(PROFILING, "PROFILING-TIME", msg + ": " + currentTime + "[msec]");
         }
     }
@@ -469,15 +707,14 @@ public class Logger implements ACRALog {
      * @param msg message to be Logged
      */
     public static void timeStats(Object obj, String msg) {
-        // Try to force a garbage collection, so we get the real amount of
-        // available memory
-        long time = System.currentTimeMillis();
-        if (initialTimeStamp == -1) {
+        long time = System.nanoTime();
+        if (!timeStatsStarted) {
             writeLogMessage(PROFILING, "PROFILING-TIME", obj.getClass().getName() + "::" + msg
                     + ": 0 [msec]");
             initialTimeStamp = time;
+            timeStatsStarted = true;
         } else {
-            long currentTime = time - initialTimeStamp;
+            long currentTime = (time - initialTimeStamp) / 1000000;
             writeLogMessage(PROFILING, "PROFILING-TIME", obj.getClass().getName() + "::" + msg
                     + ":" + currentTime + " [msec]");
         }
@@ -511,7 +748,100 @@ public class Logger implements ACRALog {
         return out.getLogContent();
     }
 
+    /**
+     * Return the metrics of the Logger itself
+     */
+    public static LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Take a snapshot of the metrics of the Logger and of its appenders which
+     * are {@link Metered}, including the appenders of a MultipleAppender,
+     * followed by the span durations and the heap samples.
+     */
+    public static LogMetrics.Snapshot[] snapshotMetrics() {
+        Vector snapshots = new Vector();
+        snapshots.addElement(metrics.snapshot());
+        addMetricsSnapshots(out, snapshots);
+        snapshots.addElement(Span.getMetrics().snapshot());
+        snapshots.addElement(HeapSampler.getMetrics().snapshot());
+        LogMetrics.Snapshot[] result = new LogMetrics.Snapshot[snapshots.size()];
+        snapshots.copyInto(result);
+        return result;
+    }
+
+    private static void addMetricsSnapshots(Appender appender, Vector snapshots) {
+        if (appender instanceof Metered) {
+            snapshots.addElement(((Metered) appender).getMetrics().snapshot());
+        }
+        if (appender instanceof MultipleAppender) {
+            Vector appenders = ((MultipleAppender) appender).appenders;
+            for (int i = 0; i < appenders.size(); i++) {
+                addMetricsSnapshots((Appender) appenders.elementAt(i), snapshots);
+            }
+        }
+    }
+
+    /**
+     * Log a snapshot of the metrics at INFO level, one message per metered
+     * component.
+     */
+    public static void logMetrics() {
+        LogMetrics.Snapshot[] snapshots = snapshotMetrics();
+        for (int i = 0; i < snapshots.length; i++) {
+            writeLogMessage(INFO, "METRICS", snapshots[i].toString());
+        }
+    }
+
+    /**
+     * Log the metrics periodically, from a background thread, until
+     * stopMetricsLogging is called.
+     * 
+     * @param period the time between two logs, in milliseconds
+     */
+    public static synchronized void startMetricsLogging(long period) {
+        stopMetricsLogging();
+        metricsTimer = new Timer("LogMetrics", true);
+        metricsTimer.schedule(new TimerTask() {
+            public void run() {
+                logMetrics();
+            }
+        }, period, period);
+    }
+
+    /**
+     * Stop logging the metrics periodically.
+     */
+    public static synchronized void stopMetricsLogging() {
+        if (metricsTimer != null) {
+            metricsTimer.cancel();
+            metricsTimer = null;
+        }
+    }
+
     private static synchronized void writeLogMessage(int msgLevel, String levelMsg, String msg) {
+        int levelIndex = msgLevel - PROFILING;
+        if (levelIndex >= 0 && levelIndex < LEVEL_NAMES.length && LEVEL_NAMES[levelIndex] != null) {
+            if (level >= msgLevel) {
+                accepted[levelIndex].increment();
+            } else {
+                filtered[levelIndex].increment();
+            }
+        }
+
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            try {
+                recorder.record(System.currentTimeMillis(), levelMsg, String.valueOf(msg));
+                if (msgLevel == ERROR && flightRecorderPath != null) {
+                    dumpFlightRecorderInBackground();
+                }
+            } catch (Exception e) {
+                // Cannot record the Log message, just ignore the error
+            }
+        }
+
         if (contextLogging) {
             try {
                 cacheMessage(msgLevel, levelMsg, msg);
@@ -531,7 +861,9 @@ public class Logger implements ACRALog {
         if (level >= msgLevel) {
             try {
                 if (out != null) {
+                    long start = System.nanoTime();
                     out.writeLogMessage(levelMsg, msg);
+                    appendTime.recordSince(start);
                 }
 
                 if (!release) {
@@ -541,6 +873,7 @@ public class Logger implements ACRALog {
                     System.out.println(msg);
                 }
             } catch (Exception ex) {
+                dropped.increment();
                 ex.printStackTrace();
             }
         }
@@ -572,6 +905,7 @@ public class Logger implements ACRALog {
             if (next == first) {
                 // Make room for the next entry
                 first++;
+                contextEvicted.increment();
             }
             if (first == cacheSize) {
                 first = 0;
@@ -587,11 +921,12 @@ public class Logger implements ACRALog {
                     "==================================================");
         }
         while (i != next) {
+            writeLogMessageNoCache(ERROR, "[Error Context]", (String) cache.elementAt(i));
+            // Wrap before comparing with next, which may be 0
+            ++i;
             if (i == cacheSize) {
                 i = 0;
             }
-            writeLogMessageNoCache(ERROR, "[Error Context]", (String) cache.elementAt(i));
-            ++i;
         }
 
         if (first != next) {
@@ -0,0 +1,266 @@
+package com.util.log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.acra.ACRA;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Detects the stalls of the main thread, the cause of jank and of ANRs. A
+ * background thread posts a task to the main looper every threshold. When the
+ * task has not run after the threshold, the stack of the main thread is
+ * sampled several times and a stall record is logged with the distinct
+ * stacks, the most frequent first.
+ * <p>
+ * Stalls are deduplicated by the most frequent stack: the first stall with a
+ * stack is logged in full, the following ones in a single line with the
+ * number of occurrences. Optionally, the first stall with a stack is also
+ * sent as a silent ACRA report, and the flight recorder of the Logger, if
+ * enabled, is dumped.
+ * </p>
+ * <p>
+ * When the main thread is responsive, the watchdog only posts a task and
+ * sleeps once per threshold.
+ * </p>
+ */
+public class MainThreadWatchdog {
+
+    private static final String TAG = "MainThreadWatchdog";
+
+    /**
+     * Maximum number of frames of a stack in a stall record
+     */
+    private static final int MAX_FRAMES = 40;
+
+    private final long threshold;
+    private int sampleCount = 5;
+    private long sampleInterval = 100;
+    private boolean reportToACRA = false;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Thread mainThread = Looper.getMainLooper().getThread();
+
+    /**
+     * The number of stalls of each stack key
+     */
+    private final Hashtable stalls = new Hashtable();
+
+    private volatile boolean ticked;
+    private final Runnable ticker = new Runnable() {
+        public void run() {
+            ticked = true;
+        }
+    };
+
+    private Thread thread;
+
+    /**
+     * @param threshold the time after which an unprocessed task of the main
+     *            looper is a stall, in milliseconds
+     */
+    public MainThreadWatchdog(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Set the number of samples of the main thread stack taken during a
+     * stall, 5 by default.
+     */
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = Math.max(1, sampleCount);
+    }
+
+    /**
+     * Set the time between two samples of the main thread stack, 100
+     * milliseconds by default.
+     */
+    public void setSampleInterval(long sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Send the first stall of each stack as a silent ACRA report, false by
+     * default. ACRA must be initialized.
+     */
+    public void setReportToACRA(boolean reportToACRA) {
+        this.reportToACRA = reportToACRA;
+    }
+
+    /**
+     * Start watching the main thread, from a daemon thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(TAG) {
+            public void run() {
+                watch(this);
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the main thread.
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private synchronized boolean isWatching(Thread watcher) {
+        return thread == watcher;
+    }
+
+    private void watch(Thread watcher) {
+        try {
+            while (isWatching(watcher)) {
+                ticked = false;
+                long posted = SystemClock.uptimeMillis();
+                mainHandler.post(ticker);
+                Thread.sleep(threshold);
+                if (ticked) {
+                    continue;
+                }
+
+                onStall(posted);
+
+                // Wait for the end of the stall before watching again
+                while (!ticked && isWatching(watcher)) {
+                    Thread.sleep(threshold);
+                }
+                if (ticked) {
+                    Logger.info(TAG, "Main thread stall ended after "
+                            + (SystemClock.uptimeMillis() - posted) + " ms");
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private void onStall(long posted) throws InterruptedException {
+        // Distinct stacks, in order of first occurrence, and their counts
+        Vector stacks = new Vector();
+        Vector counts = new Vector();
+        for (int i = 0; i < sampleCount && !ticked; i++) {
+            if (i > 0) {
+                Thread.sleep(sampleInterval);
+            }
+            StackTraceElement[] stack = mainThread.getStackTrace();
+            int index = indexOf(stacks, stack);
+            if (index < 0) {
+                stacks.addElement(stack);
+                counts.addElement(Integer.valueOf(1));
+            } else {
+                int count = ((Integer) counts.elementAt(index)).intValue();
+                counts.setElementAt(Integer.valueOf(count + 1), index);
+            }
+        }
+        if (stacks.isEmpty()) {
+            // The stall ended before the first sample
+            return;
+        }
+
+        long duration = SystemClock.uptimeMillis() - posted;
+        int samples = 0;
+        int top = 0;
+        for (int i = 0; i < counts.size(); i++) {
+            int count = ((Integer) counts.elementAt(i)).intValue();
+            samples += count;
+            if (count > ((Integer) counts.elementAt(top)).intValue()) {
+                top = i;
+            }
+        }
+        StackTraceElement[] topStack = (StackTraceElement[]) stacks.elementAt(top);
+
+        String key = key(topStack);
+        Integer previous = (Integer) stalls.get(key);
+        int occurrences = previous == null ? 1 : previous.intValue() + 1;
+        stalls.put(key, Integer.valueOf(occurrences));
+        if (occurrences > 1) {
+            Logger.info(TAG, "Main thread blocked for at least " + duration + " ms at " + key
+                    + " (" + occurrences + " times)");
+            return;
+        }
+
+        StringBuffer record = new StringBuffer();
+        record.append("Main thread blocked for at least ").append(duration).append(" ms, ")
+                .append(samples).append(" samples\n");
+        appendStack(record, topStack, ((Integer) counts.elementAt(top)).intValue(), samples);
+        for (int i = 0; i < stacks.size(); i++) {
+            if (i != top) {
+                appendStack(record, (StackTraceElement[]) stacks.elementAt(i),
+                        ((Integer) counts.elementAt(i)).intValue(), samples);
+            }
+        }
+        String message = record.toString();
+        Logger.info(TAG, message);
+
+        if (Logger.isFlightRecorderEnabled()) {
+            try {
+                Logger.dumpFlightRecorder();
+            } catch (IOException e) {
+                Logger.info(TAG, "Cannot dump the flight recorder: " + e);
+            }
+        }
+
+        if (reportToACRA) {
+            Exception stall = new Exception(message);
+            stall.setStackTrace(topStack);
+            try {
+                ACRA.getErrorReporter().handleSilentException(stall);
+            } catch (IllegalStateException e) {
+                Logger.info(TAG, "Cannot report the stall, ACRA is not initialized");
+            }
+        }
+    }
+
+    private static int indexOf(Vector stacks, StackTraceElement[] stack) {
+        for (int i = 0; i < stacks.size(); i++) {
+            if (Arrays.equals((Object[]) stacks.elementAt(i), stack)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the frame identifying a stall: the top frame of the main thread
+     * in the application code, the top frame if there is none.
+     */
+    private static String key(StackTraceElement[] stack) {
+        for (int i = 0; i < stack.length; i++) {
+            String className = stack[i].getClassName();
+            if (!className.startsWith("java.") && !className.startsWith("javax.")
+                    && !className.startsWith("android.") && !className.startsWith("com.android.")
+                    && !className.startsWith("dalvik.") && !className.startsWith("libcore.")
+                    && !className.startsWith("sun.")) {
+                return stack[i].toString();
+            }
+        }
+        return stack.length > 0 ? stack[0].toString() : "unknown";
+    }
+
+    private static void appendStack(StringBuffer record, StackTraceElement[] stack, int count,
+            int samples) {
+        record.append(count).append('/').append(samples).append(" samples:\n");
+        int frames = Math.min(stack.length, MAX_FRAMES);
+        for (int i = 0; i < frames; i++) {
+            record.append("\tat ").append(stack[i]).append('\n');
+        }
+        if (frames < stack.length) {
+            record.append("\t... ").append(stack.length - frames).append(" more\n");
+        }
+    }
+}
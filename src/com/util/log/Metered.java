@@ -0,0 +1,14 @@
+package com.util.log;
+
+/**
+ * An appender keeping {@link LogMetrics}. Its metrics are reported by
+ * {@link Logger#snapshotMetrics()} when it is the Logger appender or one of the
+ * appenders of a {@link MultipleAppender}.
+ */
+public interface Metered {
+
+    /**
+     * @return the metrics of this appender
+     */
+    LogMetrics getMetrics();
+}
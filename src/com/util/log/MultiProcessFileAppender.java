@@ -0,0 +1,420 @@
+package com.util.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Date;
+
+/**
+ * This appender logs messages to a file shared by several processes of the
+ * application, such as a :remote and a :sync process. Like the FileAppender,
+ * it renames the log appending .sav.txt when it exceeds a maximum size.
+ * <p>
+ * The processes coordinate through a lock file next to the log, without any
+ * IPC call:
+ * <ul>
+ * <li>The log is opened in append mode (O_APPEND), and each message is
+ * written with a single write, so the messages of several processes never
+ * interleave.</li>
+ * <li>A message is written holding a shared lock on the lock file, a rotation
+ * holds an exclusive lock, so no message is written to the renamed log.</li>
+ * <li>The lock file holds a generation counter, incremented by each rotation
+ * and deletion. A process reopens the log when the counter has changed since
+ * it opened it.</li>
+ * </ul>
+ * Each message is prefixed with the id of the process which wrote it. A
+ * process must use a single instance of this appender per log file.
+ * </p>
+ */
+public class MultiProcessFileAppender implements Appender, Metered {
+
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private String allLogFileName = "allsynclog.txt";
+    private String path;
+    private String contentPath;
+    private String fileName;
+    private String oldSuffix = ".sav.txt";
+
+    private final File file;
+    private final File oldFile;
+    private final File lockFile;
+
+    private FileOutputStream os;
+    private FileChannel channel;
+    private RandomAccessFile lockRaf;
+    private FileChannel lockChannel;
+
+    /**
+     * The generation of the open log
+     */
+    private long generation = -1;
+    private final ByteBuffer generationBuffer = ByteBuffer.allocate(8);
+
+    private long maxFileSize = 512 * 1024;
+
+    private boolean generateContentInMemory = false;
+
+    private final String processPrefix;
+
+    private Object lock = new Object();
+
+    private final LogMetrics metrics;
+    private final LogMetrics.Counter messages;
+    private final LogMetrics.Counter bytes;
+    private final LogMetrics.Counter errors;
+    private final LogMetrics.Counter dropped;
+    private final LogMetrics.Counter reopens;
+    private final LogMetrics.Histogram lockWaits;
+    private final LogMetrics.Histogram rotations;
+
+    /**
+     * Default constructor
+     */
+    public MultiProcessFileAppender(String path, String fileName) {
+        this.path = path.endsWith("/") ? path : path + "/";
+        this.fileName = fileName;
+        // By default the contentPath is the same as the path
+        contentPath = this.path;
+        file = new File(this.path + fileName);
+        oldFile = new File(this.path + fileName + oldSuffix);
+        lockFile = new File(this.path + fileName + LOCK_SUFFIX);
+        processPrefix = " [" + android.os.Process.myPid() + "] [";
+
+        metrics = new LogMetrics("MultiProcessFileAppender " + fileName);
+        messages = metrics.counter("messages");
+        bytes = metrics.counter("bytes");
+        errors = metrics.counter("errors");
+        dropped = metrics.counter("dropped");
+        reopens = metrics.counter("reopens");
+        lockWaits = metrics.histogram("lock");
+        rotations = metrics.histogram("rotation");
+    }
+
+    /**
+     * Sets the maximum file size. Once this is size is reached, the current log
+     * file is renamed and a new one is created. All the processes must use the
+     * same size. The minimum file size is 1024.
+     *
+     * @param maxFileSize the max size in bytes
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        if (maxFileSize > 1024) {
+            this.maxFileSize = maxFileSize;
+        }
+    }
+
+    /**
+     * Sets the content path. This path is the directory where the combined log
+     * is placed so that the LogContent is accessible. By default this directory
+     * is the same as the log directory.
+     */
+    public void setContentPath(String path) {
+        contentPath = path;
+    }
+
+    /**
+     * Sets the content type of the log when it is retrieved via getLogContent:
+     * in memory rather than in a file.
+     */
+    public void setLogContentType(boolean memory) {
+        generateContentInMemory = memory;
+    }
+
+    /**
+     * Writes one message to the log file, reopening the file first if another
+     * process has rotated it, and rotating it afterwards if it has grown
+     * beyond the maximum size.
+     */
+    @Override
+    public void writeLogMessage(String level, String msg) {
+        synchronized (lock) {
+            if (lockChannel == null) {
+                dropped.increment();
+                return;
+            }
+            StringBuffer logMsg = new StringBuffer(new Date().toString());
+            logMsg.append(processPrefix).append(level).append("] ");
+            logMsg.append(msg);
+            logMsg.append("\r\n");
+            byte[] data = logMsg.toString().getBytes();
+
+            long size;
+            try {
+                FileLock shared = lock(true);
+                try {
+                    reopenIfRotated();
+                    os.write(data);
+                    size = channel.size();
+                } finally {
+                    shared.release();
+                }
+                messages.increment();
+                bytes.add(data.length);
+            } catch (Exception e) {
+                errors.increment();
+                dropped.increment();
+                System.out.println("Exception while logging. " + e);
+                // Reopen the log on the next message
+                generation = -1;
+                return;
+            }
+
+            if (size > maxFileSize) {
+                rotate();
+            }
+        }
+    }
+
+    /**
+     * Open the lock file and the log
+     */
+    @Override
+    public void initLogFile() {
+        synchronized (lock) {
+            try {
+                closeLogFile();
+                lockRaf = new RandomAccessFile(lockFile, "rw");
+                lockChannel = lockRaf.getChannel();
+                FileLock shared = lock(true);
+                try {
+                    reopenIfRotated();
+                } finally {
+                    shared.release();
+                }
+            } catch (Exception e) {
+                errors.increment();
+                System.out.println("Cannot open or create file at: " + file);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * MultiProcessFileAppender doesn't implement this method
+     */
+    @Override
+    public void openLogFile() {
+    }
+
+    /**
+     * Close the log and the lock file
+     */
+    @Override
+    public void closeLogFile() {
+        synchronized (lock) {
+            try {
+                closeLog();
+                if (lockRaf != null) {
+                    lockRaf.close();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                lockRaf = null;
+                lockChannel = null;
+            }
+        }
+    }
+
+    /**
+     * Perform additional actions needed when setting a new level.
+     * MultiProcessFileAppender doesn't implement this method
+     */
+    @Override
+    public void setLogLevel(int level) {
+    }
+
+    /**
+     * Delete the log file, the other processes then reopen a new one
+     */
+    @Override
+    public void deleteLogFile() {
+        synchronized (lock) {
+            if (lockChannel == null) {
+                file.delete();
+                return;
+            }
+            try {
+                FileLock exclusive = lock(false);
+                try {
+                    file.delete();
+                    writeGeneration(readGeneration() + 1);
+                    reopenIfRotated();
+                } finally {
+                    exclusive.release();
+                }
+            } catch (Exception e) {
+                // We cannot log here, so just print to stdout
+                errors.increment();
+                System.out.println("Cannot delete file at: " + file);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The metrics of this appender:
+     * <ul>
+     * <li>messages, bytes: the messages written and their size</li>
+     * <li>errors: the failures to write, rotate or open the file</li>
+     * <li>dropped: the messages lost</li>
+     * <li>reopens: the times the log was reopened, after it was rotated or
+     * deleted by another process</li>
+     * <li>lock: the time spent waiting for the lock file</li>
+     * <li>rotation: the duration of the rotations</li>
+     * </ul>
+     */
+    @Override
+    public LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Merge the renamed and the current log, holding a shared lock so that no
+     * process rotates the log meanwhile.
+     */
+    @Override
+    public LogContent getLogContent() throws IOException {
+        synchronized (lock) {
+            if (lockChannel == null) {
+                throw new IOException("Cannot prepare log content, the log is not open");
+            }
+            OutputStream allOs;
+            if (generateContentInMemory) {
+                allOs = new ByteArrayOutputStream();
+            } else {
+                allOs = new FileOutputStream(contentPath + allLogFileName);
+            }
+            try {
+                FileLock shared = lock(true);
+                try {
+                    merge(oldFile, allOs);
+                    merge(file, allOs);
+                } finally {
+                    shared.release();
+                }
+            } catch (IOException e) {
+                // We cannot log here, so just print to stdout
+                System.out.println("Cannot prepare log content:" + e.toString());
+                throw new IOException("Cannot prepare log content");
+            } finally {
+                allOs.close();
+            }
+            if (generateContentInMemory) {
+                return new LogContent(LogContent.STRING_CONTENT, allOs.toString());
+            } else {
+                return new LogContent(LogContent.FILE_CONTENT, contentPath + allLogFileName);
+            }
+        }
+    }
+
+    /**
+     * Rename the log, unless another process has rotated it in the meantime.
+     */
+    private void rotate() {
+        long start = System.nanoTime();
+        try {
+            FileLock exclusive = lock(false);
+            try {
+                if (readGeneration() == generation && file.length() > maxFileSize) {
+                    closeLog();
+                    if (oldFile.exists()) {
+                        oldFile.delete();
+                    }
+                    if (!file.renameTo(oldFile)) {
+                        throw new IOException("Cannot rename " + file + " to " + oldFile);
+                    }
+                    writeGeneration(generation + 1);
+                }
+                reopenIfRotated();
+            } finally {
+                exclusive.release();
+            }
+        } catch (Exception e) {
+            errors.increment();
+            System.out.println("Exception while renaming " + e);
+            generation = -1;
+        }
+        rotations.recordSince(start);
+    }
+
+    /**
+     * Reopen the log if its generation has changed. The lock file must be
+     * locked.
+     */
+    private void reopenIfRotated() throws IOException {
+        long current = readGeneration();
+        if (current == generation && os != null) {
+            return;
+        }
+        if (os != null) {
+            reopens.increment();
+        }
+        closeLog();
+        os = new FileOutputStream(file, true);
+        channel = os.getChannel();
+        generation = current;
+    }
+
+    private void closeLog() throws IOException {
+        if (os != null) {
+            FileOutputStream toClose = os;
+            os = null;
+            channel = null;
+            toClose.close();
+        }
+    }
+
+    private FileLock lock(boolean shared) throws IOException {
+        long start = System.nanoTime();
+        FileLock fileLock = lockChannel.lock(0, Long.MAX_VALUE, shared);
+        lockWaits.recordSince(start);
+        return fileLock;
+    }
+
+    /**
+     * Return the generation in the lock file, 0 if it is empty
+     */
+    private long readGeneration() throws IOException {
+        generationBuffer.clear();
+        while (generationBuffer.hasRemaining()) {
+            if (lockChannel.read(generationBuffer, generationBuffer.position()) < 0) {
+                return 0;
+            }
+        }
+        return generationBuffer.getLong(0);
+    }
+
+    private void writeGeneration(long value) throws IOException {
+        generationBuffer.clear();
+        generationBuffer.putLong(0, value);
+        while (generationBuffer.hasRemaining()) {
+            lockChannel.write(generationBuffer, generationBuffer.position());
+        }
+    }
+
+    private void merge(File source, OutputStream os) throws IOException {
+        if (!source.exists()) {
+            return;
+        }
+        InputStream is = new FileInputStream(source);
+        try {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = is.read(buffer)) > 0) {
+                os.write(buffer, 0, length);
+            }
+        } finally {
+            is.close();
+        }
+    }
+}
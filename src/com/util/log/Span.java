@@ -0,0 +1,140 @@
+package com.util.log;
+
+import java.io.Closeable;
+import java.util.Hashtable;
+
+/**
+ * A timed section of code, started with {@link Logger#startSpan(String)} and
+ * ended with {@link #close()}:
+ *
+ * <pre>
+ * Span span = Logger.startSpan(&quot;sync&quot;);
+ * try {
+ *     ...
+ * } finally {
+ *     span.close();
+ * }
+ * </pre>
+ *
+ * The duration, measured with System.nanoTime(), is added to the histogram of
+ * the span name. The histograms are reported by {@link Logger#logMetrics()}.
+ * Nothing is logged per span, so spans can be left in the code.
+ * <p>
+ * The spans of a thread are nested: a span started while another one is open
+ * is its child. The open spans of the current thread are kept in a stack.
+ * </p>
+ */
+public class Span implements Closeable {
+
+    private static final LogMetrics metrics = new LogMetrics("Spans");
+
+    /**
+     * The histogram of each span name
+     */
+    private static final Hashtable histograms = new Hashtable();
+
+    /**
+     * The innermost open span of each thread
+     */
+    private static final ThreadLocal current = new ThreadLocal();
+
+    private final String name;
+    private final Span parent;
+    private final int depth;
+    private final LogMetrics.Histogram histogram;
+    private final long start;
+    private boolean closed;
+
+    private Span(String name) {
+        this.name = name;
+        parent = (Span) current.get();
+        depth = parent == null ? 0 : parent.depth + 1;
+        histogram = getHistogram(name);
+        current.set(this);
+        start = System.nanoTime();
+    }
+
+    /**
+     * Start a span in the current thread, as a child of its innermost open
+     * span.
+     */
+    static Span start(String name) {
+        return new Span(name);
+    }
+
+    /**
+     * Return the metrics holding the histogram of each span name
+     */
+    static LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the innermost open span of the current thread, or null
+     */
+    public static Span current() {
+        return (Span) current.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the span in which this one was started, or null
+     */
+    public Span getParent() {
+        return parent;
+    }
+
+    /**
+     * Return the number of enclosing spans
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Return the time since the start of the span, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * End the span and record its duration. A span is recorded once, further
+     * calls do nothing. Closing a span also pops the children left open from
+     * the stack of the thread, which are then recorded only when they are
+     * closed.
+     */
+    public void close() {
+        long duration = System.nanoTime() - start;
+        if (closed) {
+            return;
+        }
+        closed = true;
+        histogram.record(duration);
+
+        // Pop this span if it is open in the current thread
+        for (Span span = (Span) current.get(); span != null; span = span.parent) {
+            if (span == this) {
+                current.set(parent);
+                break;
+            }
+        }
+    }
+
+    private static LogMetrics.Histogram getHistogram(String name) {
+        LogMetrics.Histogram histogram = (LogMetrics.Histogram) histograms.get(name);
+        if (histogram == null) {
+            synchronized (histograms) {
+                histogram = (LogMetrics.Histogram) histograms.get(name);
+                if (histogram == null) {
+                    histogram = metrics.histogram(name);
+                    histograms.put(name, histogram);
+                }
+            }
+        }
+        return histogram;
+    }
+}